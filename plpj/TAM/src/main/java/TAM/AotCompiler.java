@@ -0,0 +1,253 @@
+package TAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.file.NoSuchFileException;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Compiles a TAM object program ahead of time into a runnable jar, so that
+ * the program neither starts out interpreted nor waits for the
+ * {@link JitCompiler} to warm up.
+ * <p/>
+ * Every routine, every loop and every point to which a call returns is
+ * translated into JVM bytecode by a {@link RoutineCompiler}, each region
+ * of code into a class of its own. The jar holds these classes, the object
+ * program itself, for the few instructions that are not translated, and
+ * the classes of the TAM, with {@link CompiledProgram} as its main class.
+ * It runs the program as {@link Interpreter} does, with the same output
+ * and the same status report.
+ * <p/>
+ * For example:
+ * <pre>
+ *   java TAM.AotCompiler obj.tam
+ *   java -jar obj.jar
+ * </pre>
+ * The -o option names the jar, which is otherwise named after the object
+ * program.
+ */
+public class AotCompiler {
+
+    // resources of the jar read by CompiledProgram: the object program, and
+    // the size of the code store followed by a line per compiled class
+    // with its name and entry points
+    final static String
+            programResource = "TAM/program.tam",
+            routinesResource = "TAM/routines";
+
+    private final static String classPrefix = "TAM/CompiledRoutine$Aot";
+
+
+// COMPILATION
+
+    // Returns the addresses from which to compile: the entry of the main
+    // program and of every routine called or taken as a closure relative to
+    // CB, every jump target, and every address to which a call returns.
+    static boolean[] startingPoints(TamVM vm) {
+        boolean[] starting = new boolean[vm.CT - TamVM.CB];
+        int op, target;
+
+        if (starting.length > 0)
+            starting[0] = true;
+        for (int addr = TamVM.CB; addr < vm.CT; addr++) {
+            op = vm.codeOp[addr];
+            target = vm.codeD[addr] + TamVM.CB;
+            if ((op == Machine.CALLop) || (op == Machine.CALLIop))
+                if (addr + 1 < vm.CT)
+                    starting[addr + 1 - TamVM.CB] = true;
+            if ((vm.codeR[addr] == Machine.CBr) && (TamVM.CB <= target) && (target < vm.CT)
+                    && ((op == Machine.CALLop) || (op == Machine.LOADAop)
+                    || (op == Machine.JUMPop) || (op == Machine.JUMPIFop)))
+                starting[target - TamVM.CB] = true;
+        }
+        return starting;
+    }
+
+    /**
+     * Compiles the program loaded into vm and writes the runnable jar to
+     * the given stream. Returns the number of regions compiled.
+     */
+    public static int compile(TamVM vm, OutputStream jarStream) throws IOException {
+        boolean[] starting = startingPoints(vm);
+        boolean[] covered = new boolean[starting.length];
+        ByteArrayOutputStream routines = new ByteArrayOutputStream();
+        PrintWriter table = new PrintWriter(routines);
+        ByteArrayOutputStream program = new ByteArrayOutputStream();
+        Instruction[] code = new Instruction[vm.CT - TamVM.CB];
+        int count = 0;
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "TAM.CompiledProgram");
+        JarOutputStream jar = new JarOutputStream(jarStream, manifest);
+
+        // primitive addresses are compiled in, so the code store size is too
+        table.println(vm.PB - TamVM.CB);
+
+        for (int addr = TamVM.CB; addr < vm.CT; addr++) {
+            if (!starting[addr - TamVM.CB] || covered[addr - TamVM.CB])
+                continue;
+
+            RoutineCompiler compiler = new RoutineCompiler(vm);
+            byte[] classFile;
+            if (!compiler.discover(addr))
+                continue;
+            try {
+                classFile = compiler.compile(classPrefix + addr);
+            } catch (IllegalStateException s) {
+                // region too large for one method
+                continue;
+            }
+
+            for (int i = TamVM.CB; i < vm.CT; i++)
+                if (compiler.inRegion(i))
+                    covered[i - TamVM.CB] = true;
+            table.print((classPrefix + addr).replace('/', '.'));
+            for (int entry : compiler.getEntryPoints())
+                table.print(" " + entry);
+            table.println();
+            write(jar, classPrefix + addr + ".class", classFile);
+            count = count + 1;
+        }
+        table.flush();
+        write(jar, routinesResource, routines.toByteArray());
+
+        for (int addr = TamVM.CB; addr < vm.CT; addr++) {
+            code[addr - TamVM.CB] = new Instruction();
+            code[addr - TamVM.CB].op = vm.codeOp[addr];
+            code[addr - TamVM.CB].r = vm.codeR[addr];
+            code[addr - TamVM.CB].n = vm.codeN[addr];
+            code[addr - TamVM.CB].d = vm.codeD[addr];
+        }
+        ObjectFile.write(code, code.length, program);
+        write(jar, programResource, program.toByteArray());
+
+        copyRuntime(jar);
+        jar.finish();
+        return count;
+    }
+
+    private static void write(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+
+// RUNTIME
+
+    // Copies the classes of the TAM package, from the directory or jar that
+    // this class was loaded from, into jar.
+    private static void copyRuntime(JarOutputStream jar) throws IOException {
+        File source;
+
+        try {
+            source = new File(AotCompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException s) {
+            throw new IOException("cannot locate the TAM classes: " + s);
+        }
+
+        if (source.isDirectory()) {
+            File[] classFiles = new File(source, "TAM").listFiles();
+            if (classFiles == null)
+                throw new IOException("cannot locate the TAM classes in " + source);
+            for (File classFile : classFiles)
+                if (classFile.getName().endsWith(".class")) {
+                    InputStream in = new FileInputStream(classFile);
+                    try {
+                        write(jar, "TAM/" + classFile.getName(), readAll(in));
+                    } finally {
+                        in.close();
+                    }
+                }
+        } else {
+            JarFile runtime = new JarFile(source);
+            try {
+                Enumeration<JarEntry> entries = runtime.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (entry.getName().startsWith("TAM/") && entry.getName().endsWith(".class")) {
+                        InputStream in = runtime.getInputStream(entry);
+                        try {
+                            write(jar, entry.getName(), readAll(in));
+                        } finally {
+                            in.close();
+                        }
+                    }
+                }
+            } finally {
+                runtime.close();
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+
+        while ((count = in.read(buffer)) != -1)
+            bytes.write(buffer, 0, count);
+        return bytes.toByteArray();
+    }
+
+
+// COMMAND LINE
+
+    public static void main(String[] args) {
+        System.out.println("********** TAM Ahead-of-Time Compiler (Java Version 2.1) **********");
+
+        int codeStoreSize = Machine.PB - Machine.CB;
+        String objectName = "obj.tam";
+        String jarName = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o") && i + 1 < args.length)
+                jarName = args[++i];
+            else if (args[i].equals("-code") && i + 1 < args.length)
+                codeStoreSize = Integer.parseInt(args[++i]);
+            else
+                objectName = args[i];
+        }
+        if (jarName == null)
+            jarName = (objectName.endsWith(".tam")
+                    ? objectName.substring(0, objectName.length() - ".tam".length()) : objectName) + ".jar";
+
+        TamVM vm = new TamVM(codeStoreSize, TamVM.defaultDataStoreSize);
+        try {
+            vm.load(new File(objectName));
+        } catch (NoSuchFileException s) {
+            System.err.println("Error opening object file: " + s);
+            System.exit(1);
+        } catch (IOException s) {
+            System.err.println("Error reading object file: " + s);
+            System.exit(1);
+        }
+
+        try {
+            FileOutputStream jar = new FileOutputStream(jarName);
+            int count;
+            try {
+                count = compile(vm, jar);
+            } finally {
+                jar.close();
+            }
+            System.out.println(count + " regions of " + vm.getCodeSize() + " instructions compiled to " + jarName);
+        } catch (IOException s) {
+            System.err.println("Error writing jar file: " + s);
+            System.exit(1);
+        }
+    }
+}
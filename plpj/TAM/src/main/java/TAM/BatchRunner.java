@@ -0,0 +1,245 @@
+package TAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many TAM object programs concurrently in one JVM, each on its own
+ * {@link TamVM}, and reports their termination status together with the
+ * overall throughput.
+ * <p/>
+ * The standard input of program <i>name</i>.tam is taken from the file
+ * <i>name</i>.in next to it, if there is one, otherwise it is empty.
+ * Programs are decoded through the shared {@link ProgramCache}, so one
+ * given several times is decoded only once.
+ * <p/>
+ * For example:
+ * <pre>
+ *   java TAM.BatchRunner tests/
+ *   java TAM.BatchRunner -threads 4 -steps 1000000 a.tam b.tam
+ * </pre>
+ * The -code and -data options size the stores of every machine, and -jit
+ * turns on compilation of hot code, as for {@link Interpreter}.
+ */
+public class BatchRunner {
+
+    /**
+     * The outcome of running one object program.
+     */
+    public static class Result {
+
+        public final File objectFile;
+
+        public int status;
+        public long instructions;
+        public long nanos;
+        public String output = "";
+
+        // set if the program could not be loaded
+        public String error;
+
+        Result(File objectFile) {
+            this.objectFile = objectFile;
+        }
+    }
+
+    /**
+     * How each program is run.
+     */
+    public static class Settings {
+
+        public int codeStoreSize = Machine.PB - Machine.CB;
+        public int dataStoreSize = TamVM.defaultDataStoreSize;
+
+        // maximum number of instructions per program
+        public long stepBudget = Long.MAX_VALUE;
+
+        // entries before code is compiled, 0 to only interpret
+        public int compilationThreshold = 0;
+    }
+
+    // Runs the programs of results[from..to) splitting the range in halves,
+    // so that idle workers can steal the other half.
+    private static class RunTask extends RecursiveAction {
+
+        private final static long serialVersionUID = 1L;
+
+        private final Result[] results;
+        private final int from, to;
+        private final Settings settings;
+
+        RunTask(Result[] results, int from, int to, Settings settings) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.settings = settings;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runProgram(results[from], settings);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RunTask(results, from, middle, settings),
+                        new RunTask(results, middle, to, settings));
+            }
+        }
+    }
+
+    /**
+     * Runs a single object program to completion, or until it has used up
+     * its step budget, and records the outcome in result.
+     */
+    static void runProgram(Result result, Settings settings) {
+        TamVM vm = new TamVM(settings.codeStoreSize, settings.dataStoreSize);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        vm.setCompilationThreshold(settings.compilationThreshold);
+
+        long start = System.nanoTime();
+        try {
+            vm.load(ProgramCache.getShared().get(result.objectFile, settings.codeStoreSize));
+            vm.setInput(fixtureFor(result.objectFile));
+            vm.setOutput(output);
+            vm.run(settings.stepBudget);
+
+            result.status = vm.getStatus();
+            result.instructions = vm.getInstructionCount();
+            result.output = output.toString();
+        } catch (IOException s) {
+            result.status = TamVM.failedIOError;
+            result.error = s.toString();
+        }
+        result.nanos = System.nanoTime() - start;
+    }
+
+    // Returns the standard input for the given object program.
+    private static byte[] fixtureFor(File objectFile) throws IOException {
+        String name = objectFile.getName();
+        if (name.endsWith(".tam"))
+            name = name.substring(0, name.length() - ".tam".length());
+
+        File fixture = new File(objectFile.getParentFile(), name + ".in");
+        if (!fixture.isFile())
+            return new byte[0];
+
+        FileInputStream in = new FileInputStream(fixture);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+                bytes.write(buffer, 0, count);
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Runs all the given object programs on pool and returns their
+     * outcomes, in the same order.
+     */
+    public static Result[] runAll(List<File> objectFiles, ForkJoinPool pool, Settings settings) {
+        Result[] results = new Result[objectFiles.size()];
+        for (int i = 0; i < results.length; i++)
+            results[i] = new Result(objectFiles.get(i));
+
+        if (results.length > 0)
+            pool.invoke(new RunTask(results, 0, results.length, settings));
+
+        return results;
+    }
+
+    // Expands directories into the .tam files they contain.
+    private static void collect(File file, List<File> objectFiles) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null)
+                return;
+            Arrays.sort(children);
+            for (File child : children)
+                if (child.isDirectory() || child.getName().endsWith(".tam"))
+                    collect(child, objectFiles);
+        } else {
+            objectFiles.add(file);
+        }
+    }
+
+    static void report(Result[] results, long wallNanos, boolean verbose, PrintStream out) {
+        long instructions = 0;
+        int halted = 0;
+
+        for (Result result : results) {
+            out.print(result.objectFile.getPath() + ": ");
+            if (result.error != null)
+                out.println(result.error);
+            else
+                out.println(TamVM.statusMessage(result.status)
+                        + " (" + result.instructions + " instructions, "
+                        + (result.nanos / 1000000) + " ms)");
+            if (verbose && result.output.length() > 0)
+                out.println(result.output);
+
+            instructions = instructions + result.instructions;
+            if (result.status == TamVM.halted)
+                halted = halted + 1;
+        }
+
+        double seconds = wallNanos / 1e9;
+        out.println("");
+        out.println(results.length + " programs, " + halted + " halted normally, "
+                + (results.length - halted) + " did not.");
+        out.println(instructions + " instructions in " + (wallNanos / 1000000) + " ms: "
+                + Math.round(results.length / seconds) + " programs/s, "
+                + Math.round(instructions / seconds) + " instructions/s.");
+    }
+
+    public static void main(String[] args) {
+        System.out.println("********** TAM Batch Runner (Java Version 2.1) **********");
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Settings settings = new Settings();
+        boolean verbose = false;
+        List<File> objectFiles = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-steps") && i + 1 < args.length)
+                settings.stepBudget = Long.parseLong(args[++i]);
+            else if (args[i].equals("-code") && i + 1 < args.length)
+                settings.codeStoreSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-data") && i + 1 < args.length)
+                settings.dataStoreSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-jit"))
+                settings.compilationThreshold = JitCompiler.defaultThreshold;
+            else if (args[i].equals("-v"))
+                verbose = true;
+            else
+                collect(new File(args[i]), objectFiles);
+        }
+
+        if (objectFiles.isEmpty()) {
+            System.out.println("Usage: BatchRunner [-threads n] [-steps n] [-code n] [-data n] [-jit] [-v] (directory | file.tam) ...");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Result[] results = runAll(objectFiles, pool, settings);
+        long wallNanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        report(results, wallNanos, verbose, System.out);
+        System.out.println(ProgramCache.getShared());
+    }
+}
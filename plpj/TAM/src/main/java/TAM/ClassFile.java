@@ -0,0 +1,394 @@
+package TAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes a JVM class file, just enough of it for the classes generated from
+ * TAM code: a constant pool, static or instance fields, and methods with
+ * their bytecode.
+ * <p/>
+ * Classes are written in version 49 (Java 5) format, which needs no stack
+ * map frames, so branches can be emitted freely.
+ */
+final class ClassFile {
+
+    // JVM OPCODES
+    final static int
+            ICONST_0 = 0x03, LCONST_0 = 0x09, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14,
+            ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19,
+            IALOAD = 0x2e,
+            ISTORE = 0x36, LSTORE = 0x37, ASTORE = 0x3a,
+            IASTORE = 0x4f,
+            POP = 0x57, POP2 = 0x58, DUP = 0x59, DUP2 = 0x5c, SWAP = 0x5f,
+            IADD = 0x60, LADD = 0x61, ISUB = 0x64, LSUB = 0x65,
+            IMUL = 0x68, LMUL = 0x69, IDIV = 0x6c, IREM = 0x70, INEG = 0x74,
+            IAND = 0x7e, IOR = 0x80, IXOR = 0x82, IINC = 0x84,
+            I2L = 0x85, L2I = 0x88, LCMP = 0x94,
+            IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e,
+            IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1,
+            IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4,
+            GOTO = 0xa7, LOOKUPSWITCH = 0xab,
+            IRETURN = 0xac, ARETURN = 0xb0, RETURN = 0xb1,
+            GETSTATIC = 0xb2, PUTSTATIC = 0xb3, GETFIELD = 0xb4, PUTFIELD = 0xb5,
+            INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+            NEW = 0xbb, NEWARRAY = 0xbc, ARRAYLENGTH = 0xbe, WIDE = 0xc4;
+
+    // ACCESS FLAGS
+    final static int
+            ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    // CONSTANT POOL TAGS
+    private final static int
+            CONSTANT_Utf8 = 1, CONSTANT_Integer = 3, CONSTANT_Long = 5, CONSTANT_Class = 7,
+            CONSTANT_String = 8, CONSTANT_Fieldref = 9, CONSTANT_Methodref = 10,
+            CONSTANT_NameAndType = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final int thisClass, superClass;
+    private final List<byte[]> fields = new ArrayList<byte[]>();
+    private final List<Code> methods = new ArrayList<Code>();
+
+    ClassFile(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+
+// CONSTANT POOL
+
+    private int entry(String key, int tag, Object a, Object b) {
+        Integer index = poolIndex.get(key);
+        if (index != null)
+            return index;
+
+        try {
+            pool.writeByte(tag);
+            switch (tag) {
+                case CONSTANT_Utf8:
+                    pool.writeUTF((String) a);
+                    break;
+                case CONSTANT_Integer:
+                    pool.writeInt((Integer) a);
+                    break;
+                case CONSTANT_Long:
+                    pool.writeLong((Long) a);
+                    break;
+                default:
+                    pool.writeShort((Integer) a);
+                    if (b != null)
+                        pool.writeShort((Integer) b);
+            }
+        } catch (IOException s) {
+            throw new IllegalStateException(s);
+        }
+        index = poolCount;
+        poolCount = poolCount + ((tag == CONSTANT_Long) ? 2 : 1);
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    int utf8(String s) {
+        return entry("U" + s, CONSTANT_Utf8, s, null);
+    }
+
+    int classRef(String name) {
+        return entry("C" + name, CONSTANT_Class, utf8(name), null);
+    }
+
+    int string(String s) {
+        return entry("S" + s, CONSTANT_String, utf8(s), null);
+    }
+
+    int integer(int value) {
+        return entry("I" + value, CONSTANT_Integer, value, null);
+    }
+
+    int longConst(long value) {
+        return entry("J" + value, CONSTANT_Long, value, null);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return entry("N" + name + ":" + descriptor, CONSTANT_NameAndType, utf8(name), utf8(descriptor));
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return entry("F" + owner + "." + name + ":" + descriptor, CONSTANT_Fieldref,
+                classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return entry("M" + owner + "." + name + ":" + descriptor, CONSTANT_Methodref,
+                classRef(owner), nameAndType(name, descriptor));
+    }
+
+
+// MEMBERS
+
+    void field(int access, String name, String descriptor) {
+        byte[] field = new byte[8];
+        int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+        field[0] = (byte) (access >> 8);
+        field[1] = (byte) access;
+        field[2] = (byte) (nameIndex >> 8);
+        field[3] = (byte) nameIndex;
+        field[4] = (byte) (descriptorIndex >> 8);
+        field[5] = (byte) descriptorIndex;
+        fields.add(field); // no attributes
+    }
+
+    Code method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), maxStack, maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        int codeAttribute = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+
+            out.writeShort(fields.size());
+            for (byte[] field : fields)
+                out.write(field);
+
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                byte[] code = method.bytes();
+                out.writeShort(method.access);
+                out.writeShort(method.name);
+                out.writeShort(method.descriptor);
+                out.writeShort(1);
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + code.length);
+                out.writeShort(method.maxStack);
+                out.writeShort(method.maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0);
+        } catch (IOException s) {
+            throw new IllegalStateException(s);
+        }
+        return bytes.toByteArray();
+    }
+
+
+// BYTECODE
+
+    /**
+     * A position in the bytecode of a method, possibly not yet known.
+     */
+    static final class Label {
+
+        private int position = -1;
+
+        // each reference is {instruction position, patch position, width}
+        private final List<int[]> references = new ArrayList<int[]>();
+    }
+
+    /**
+     * The bytecode of one method.
+     */
+    final class Code {
+
+        private final int access, name, descriptor, maxStack, maxLocals;
+        private byte[] code = new byte[256];
+        private int length;
+        private final List<Label> labels = new ArrayList<Label>();
+
+        Code(int access, int name, int descriptor, int maxStack, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        int length() {
+            return length;
+        }
+
+        private void put(int b) {
+            if (length == code.length)
+                code = Arrays.copyOf(code, 2 * code.length);
+            code[length] = (byte) b;
+            length = length + 1;
+        }
+
+        private void put2(int s) {
+            put(s >> 8);
+            put(s);
+        }
+
+        private void put4(int i) {
+            put2(i >> 16);
+            put2(i);
+        }
+
+        void op(int opcode) {
+            put(opcode);
+        }
+
+        void iconst(int value) {
+            if ((-1 <= value) && (value <= 5))
+                put(ICONST_0 + value);
+            else if ((Byte.MIN_VALUE <= value) && (value <= Byte.MAX_VALUE)) {
+                put(BIPUSH);
+                put(value);
+            } else if ((Short.MIN_VALUE <= value) && (value <= Short.MAX_VALUE)) {
+                put(SIPUSH);
+                put2(value);
+            } else
+                ldc(integer(value));
+        }
+
+        void lconst(long value) {
+            if ((value == 0) || (value == 1))
+                put(LCONST_0 + (int) value);
+            else {
+                put(LDC2_W);
+                put2(longConst(value));
+            }
+        }
+
+        void ldc(int index) {
+            if (index < 256) {
+                put(LDC);
+                put(index);
+            } else {
+                put(LDC_W);
+                put2(index);
+            }
+        }
+
+        void var(int opcode, int index) {
+            if (index < 256) {
+                put(opcode);
+                put(index);
+            } else {
+                put(WIDE);
+                put(opcode);
+                put2(index);
+            }
+        }
+
+        void iinc(int index, int delta) {
+            if ((index < 256) && (Byte.MIN_VALUE <= delta) && (delta <= Byte.MAX_VALUE)) {
+                put(IINC);
+                put(index);
+                put(delta);
+            } else if ((Short.MIN_VALUE <= delta) && (delta <= Short.MAX_VALUE)) {
+                put(WIDE);
+                put(IINC);
+                put2(index);
+                put2(delta);
+            } else {
+                var(ILOAD, index);
+                iconst(delta);
+                put(IADD);
+                var(ISTORE, index);
+            }
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            put(opcode);
+            put2(fieldRef(owner, name, descriptor));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            put(opcode);
+            put2(methodRef(owner, name, descriptor));
+        }
+
+        void type(int opcode, String name) {
+            put(opcode);
+            put2(classRef(name));
+        }
+
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        void mark(Label label) {
+            label.position = length;
+        }
+
+        private void reference(Label label, int instruction, int width) {
+            label.references.add(new int[]{instruction, length, width});
+            if (width == 2)
+                put2(0);
+            else
+                put4(0);
+        }
+
+        void jump(int opcode, Label target) {
+            int instruction = length;
+            put(opcode);
+            reference(target, instruction, 2);
+        }
+
+        void lookupswitch(int[] keys, Label[] targets, Label otherwise) {
+            // keys must be in ascending order
+            int instruction = length;
+            put(LOOKUPSWITCH);
+            while (length % 4 != 0)
+                put(0);
+            reference(otherwise, instruction, 4);
+            put4(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                put4(keys[i]);
+                reference(targets[i], instruction, 4);
+            }
+        }
+
+        byte[] bytes() {
+            if (length > 65535)
+                throw new IllegalStateException("method too large");
+            for (Label label : labels)
+                for (int[] reference : label.references) {
+                    if (label.position < 0)
+                        throw new IllegalStateException("unplaced label");
+                    int offset = label.position - reference[0];
+                    int at = reference[1];
+                    if (reference[2] == 2) {
+                        if ((offset < Short.MIN_VALUE) || (offset > Short.MAX_VALUE))
+                            throw new IllegalStateException("branch too far");
+                        code[at] = (byte) (offset >> 8);
+                        code[at + 1] = (byte) offset;
+                    } else {
+                        code[at] = (byte) (offset >> 24);
+                        code[at + 1] = (byte) (offset >> 16);
+                        code[at + 2] = (byte) (offset >> 8);
+                        code[at + 3] = (byte) offset;
+                    }
+                }
+            return Arrays.copyOf(code, length);
+        }
+    }
+}
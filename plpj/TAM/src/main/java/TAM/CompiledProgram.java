@@ -0,0 +1,115 @@
+package TAM;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * The main class of a jar written by the {@link AotCompiler}. Runs the
+ * object program in the jar, using standard input and output, with the
+ * code compiled ahead of time installed, just as {@link Interpreter}
+ * would run it.
+ * <p/>
+ * For example:
+ * <pre>
+ *   java -jar obj.jar
+ *   java -jar obj.jar -data 4194304 -gc
+ * </pre>
+ * The -data, -gc and -heapstats options are those of the Interpreter.
+ */
+public class CompiledProgram {
+
+    private static InputStream resource(String name) throws IOException {
+        InputStream in = CompiledProgram.class.getClassLoader().getResourceAsStream(name);
+        if (in == null)
+            throw new IOException("no " + name + " in the jar");
+        return in;
+    }
+
+    // Returns the size of the code store that the program was compiled for.
+    static int codeStoreSize() throws IOException {
+        BufferedReader table = new BufferedReader(new InputStreamReader(resource(AotCompiler.routinesResource)));
+        try {
+            return Integer.parseInt(table.readLine().trim());
+        } finally {
+            table.close();
+        }
+    }
+
+    /**
+     * Loads the object program of the jar into vm, and installs the code
+     * compiled from it. Returns the number of compiled regions installed.
+     */
+    static int load(TamVM vm) throws IOException {
+        BufferedReader table;
+        String line;
+        String[] fields;
+        int[] entryPoints;
+        int count = 0;
+
+        InputStream program = resource(AotCompiler.programResource);
+        try {
+            vm.load(program);
+        } finally {
+            program.close();
+        }
+
+        vm.jit = new JitCompiler(vm, 0);
+        table = new BufferedReader(new InputStreamReader(resource(AotCompiler.routinesResource)));
+        try {
+            table.readLine();
+            while ((line = table.readLine()) != null) {
+                fields = line.trim().split(" ");
+                entryPoints = new int[fields.length - 1];
+                for (int i = 1; i < fields.length; i++)
+                    entryPoints[i - 1] = Integer.parseInt(fields[i]);
+                try {
+                    vm.jit.install((CompiledRoutine) Class.forName(fields[0])
+                            .getDeclaredConstructor().newInstance(), entryPoints);
+                    count = count + 1;
+                } catch (ReflectiveOperationException s) {
+                    // leave it to the interpreter
+                } catch (LinkageError s) {
+                    // rejected by the verifier
+                }
+            }
+        } finally {
+            table.close();
+        }
+        return count;
+    }
+
+    public static void main(String[] args) {
+        System.out.println("********** TAM Interpreter (Java Version 2.1) **********");
+
+        int dataStoreSize = TamVM.defaultDataStoreSize;
+        boolean heapStats = false;
+        boolean garbageCollection = false;
+        TamVM vm;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-data") && i + 1 < args.length)
+                dataStoreSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-heapstats"))
+                heapStats = true;
+            else if (args[i].equals("-gc"))
+                garbageCollection = true;
+        }
+
+        try {
+            vm = new TamVM(codeStoreSize(), dataStoreSize);
+            load(vm);
+        } catch (IOException s) {
+            System.err.println("Error reading object program: " + s);
+            return;
+        }
+        vm.setGarbageCollection(garbageCollection);
+        if (vm.getCodeSize() != 0) {
+            vm.run();
+            vm.showStatus();
+            if (heapStats)
+                System.out.println(vm.getHeap());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package TAM;
+
+/**
+ * A region of TAM code translated into JVM bytecode by a
+ * {@link RoutineCompiler}. Subclasses are generated at run time.
+ */
+abstract class CompiledRoutine {
+
+    /**
+     * Executes the region on vm, starting at code address entry, which must
+     * be one of the region's entry points, with the registers of vm as they
+     * are. Returns as soon as control leaves the region, or the program
+     * halts or fails, or about budget instructions have been executed,
+     * leaving the registers of vm as the interpreter would have left them.
+     * Returns the number of instructions executed.
+     */
+    abstract int execute(TamVM vm, int entry, int budget);
+}
@@ -14,10 +14,9 @@
 
 package TAM;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 
 /**
  * Disassembles the TAM code in the given file, and displays the
@@ -353,27 +352,14 @@ public class Disassembler {
      */
     static void loadObjectProgram(String objectName) {
 
-        FileInputStream objectFile = null;
-        DataInputStream objectStream = null;
-
-        int addr;
-        boolean finished = false;
+        Instruction[] code;
 
         try {
-            objectFile = new FileInputStream(objectName);
-            objectStream = new DataInputStream(objectFile);
-
-            addr = Machine.CB;
-            while (!finished) {
-                Machine.code[addr] = Instruction.read(objectStream);
-                if (Machine.code[addr] == null)
-                    finished = true;
-                else
-                    addr = addr + 1;
-            }
-            CT = addr;
-            objectFile.close();
-        } catch (FileNotFoundException s) {
+            code = ObjectFile.read(new File(objectName));
+            Machine.ensureCodeCapacity(Machine.CB + code.length);
+            System.arraycopy(code, 0, Machine.code, Machine.CB, code.length);
+            CT = Machine.CB + code.length;
+        } catch (NoSuchFileException s) {
             CT = Machine.CB;
             System.err.println("Error opening object file: " + s);
         } catch (IOException s) {
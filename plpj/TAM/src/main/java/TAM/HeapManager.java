@@ -0,0 +1,358 @@
+package TAM;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Manages the heap of a {@link TamVM}, the region of the data store between
+ * HT and HB, on behalf of the primitive routines new and dispose.
+ * <p/>
+ * Disposed blocks are coalesced with free neighbours and kept on
+ * segregated free lists, one per power-of-two size class, from which
+ * later allocations are served before the heap is extended downwards.
+ * A free block that ends up at HT is given back to the stack by raising HT.
+ * <p/>
+ * Optionally, blocks that the program can no longer reach are reclaimed
+ * by {@link #collect}, a conservative mark-sweep collector.
+ */
+public class HeapManager {
+
+    private final static int sizeClasses = 31;
+
+    private final TamVM vm;
+
+    // live blocks and free blocks, address -> size in words
+    private final TreeMap<Integer, Integer> liveBlocks = new TreeMap<Integer, Integer>();
+    private final TreeMap<Integer, Integer> freeBlocks = new TreeMap<Integer, Integer>();
+
+    // addresses of the free blocks in each size class;
+    // class c holds the blocks of 2^c .. 2^(c+1)-1 words
+    private final List<TreeSet<Integer>> freeLists = new ArrayList<TreeSet<Integer>>(sizeClasses);
+
+    private long liveWords, freeWords;
+    private long allocations, disposals, allocatedWords;
+    private long collections, collectedWords;
+    private long startNanos;
+
+    HeapManager(TamVM vm) {
+        this.vm = vm;
+        for (int c = 0; c < sizeClasses; c++)
+            freeLists.add(new TreeSet<Integer>());
+        reset();
+    }
+
+    /**
+     * Forgets all blocks, for a heap that is empty again (HT = HB).
+     */
+    void reset() {
+        liveBlocks.clear();
+        freeBlocks.clear();
+        for (TreeSet<Integer> list : freeLists)
+            list.clear();
+        liveWords = freeWords = 0;
+        allocations = disposals = allocatedWords = 0;
+        collections = collectedWords = 0;
+        startNanos = System.nanoTime();
+    }
+
+    private static int sizeClass(int size) {
+        return 31 - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * Allocates a block of size words and returns its address. Signals
+     * failure through the machine status if the data store is full.
+     */
+    int allocate(int size) {
+        if (size <= 0)
+            return vm.HT;
+
+        int addr = takeFreeBlock(size);
+        if ((addr < 0) && (vm.HT - vm.ST < size) && vm.garbageCollection) {
+            collect();
+            addr = takeFreeBlock(size);
+        }
+        if (addr < 0) {
+            // garbage has been collected already if that could help
+            vm.reserveSpace(size);
+            if (vm.status != TamVM.running)
+                return vm.HT;
+            vm.HT = vm.HT - size;
+            addr = vm.HT;
+        }
+
+        liveBlocks.put(addr, size);
+        liveWords = liveWords + size;
+        allocations = allocations + 1;
+        allocatedWords = allocatedWords + size;
+        return addr;
+    }
+
+    // Removes a block of at least size words from the free lists, puts back
+    // what is left over, and returns the address of the block's top size
+    // words. Returns -1 if there is no such block.
+    private int takeFreeBlock(int size) {
+        int c = sizeClass(size);
+        Integer found = null;
+
+        // first fit within the request's own class ...
+        for (Integer addr : freeLists.get(c))
+            if (freeBlocks.get(addr) >= size) {
+                found = addr;
+                break;
+            }
+        // ... otherwise any block of a larger class will do
+        for (int k = c + 1; (found == null) && (k < sizeClasses); k++)
+            if (!freeLists.get(k).isEmpty())
+                found = freeLists.get(k).first();
+
+        if (found == null)
+            return -1;
+
+        int addr = found;
+        int blockSize = freeBlocks.get(addr);
+        removeFree(addr, blockSize);
+        if (blockSize > size)
+            addFree(addr, blockSize - size);
+        return addr + blockSize - size;
+    }
+
+    /**
+     * Releases the live block at addr. Addresses that are not the start of
+     * a live block are ignored.
+     */
+    void dispose(int addr) {
+        Integer size = liveBlocks.remove(addr);
+        if (size == null)
+            return;
+
+        liveWords = liveWords - size;
+        disposals = disposals + 1;
+        release(addr, size);
+    }
+
+    // Returns a block to the free lists, merging it with free neighbours,
+    // or to the stack if it lies at HT.
+    void release(int addr, int size) {
+        Map.Entry<Integer, Integer> below = freeBlocks.lowerEntry(addr);
+        if ((below != null) && (below.getKey() + below.getValue() == addr)) {
+            removeFree(below.getKey(), below.getValue());
+            addr = below.getKey();
+            size = size + below.getValue();
+        }
+        Integer above = freeBlocks.get(addr + size);
+        if (above != null) {
+            removeFree(addr + size, above);
+            size = size + above;
+        }
+
+        if (addr == vm.HT)
+            vm.HT = vm.HT + size;
+        else
+            addFree(addr, size);
+    }
+
+    private void addFree(int addr, int size) {
+        freeBlocks.put(addr, size);
+        freeLists.get(sizeClass(size)).add(addr);
+        freeWords = freeWords + size;
+    }
+
+    private void removeFree(int addr, int size) {
+        freeBlocks.remove(addr);
+        freeLists.get(sizeClass(size)).remove(addr);
+        freeWords = freeWords - size;
+    }
+
+
+// SNAPSHOTS
+
+    /**
+     * Writes the live and free blocks and the statistics to output, for
+     * {@link TamVM#snapshot}.
+     */
+    void write(DataOutputStream output) throws IOException {
+        output.writeInt(liveBlocks.size());
+        for (Map.Entry<Integer, Integer> block : liveBlocks.entrySet()) {
+            output.writeInt(block.getKey());
+            output.writeInt(block.getValue());
+        }
+        output.writeInt(freeBlocks.size());
+        for (Map.Entry<Integer, Integer> block : freeBlocks.entrySet()) {
+            output.writeInt(block.getKey());
+            output.writeInt(block.getValue());
+        }
+        output.writeLong(allocations);
+        output.writeLong(disposals);
+        output.writeLong(allocatedWords);
+        output.writeLong(collections);
+        output.writeLong(collectedWords);
+    }
+
+    /**
+     * Reads back what {@link #write} wrote, once the machine's HT and HB
+     * have been restored.
+     */
+    void read(ByteBuffer input) throws IOException {
+        int count, addr, size;
+
+        reset();
+        count = input.getInt();
+        for (int i = 0; i < count; i++) {
+            addr = input.getInt();
+            size = input.getInt();
+            if ((size <= 0) || (addr < vm.HT) || (addr + size > vm.HB))
+                throw new IOException("invalid heap block in snapshot");
+            liveBlocks.put(addr, size);
+            liveWords = liveWords + size;
+        }
+        count = input.getInt();
+        for (int i = 0; i < count; i++) {
+            addr = input.getInt();
+            size = input.getInt();
+            if ((size <= 0) || (addr < vm.HT) || (addr + size > vm.HB))
+                throw new IOException("invalid heap block in snapshot");
+            addFree(addr, size);
+        }
+        allocations = input.getLong();
+        disposals = input.getLong();
+        allocatedWords = input.getLong();
+        collections = input.getLong();
+        collectedWords = input.getLong();
+    }
+
+
+// GARBAGE COLLECTION
+
+    // Implementation notes:
+    // Data store words carry no type, so any word may be an address or just
+    // an integer that happens to look like one. The collector is therefore
+    // conservative: every word of the stack frames between SB and ST is
+    // taken as a possible pointer, as is every word of a block found to be
+    // reachable, and a word pointing anywhere inside a live block keeps
+    // that block. For the same reason blocks are never moved, since that
+    // would mean rewriting words that might not be pointers at all; instead
+    // unreachable blocks are swept onto the free lists, where they coalesce,
+    // and those at the bottom of the heap are given back by raising HT.
+
+    /**
+     * Reclaims every live block that cannot be reached from the stack.
+     */
+    public void collect() {
+        Set<Integer> marked = new HashSet<Integer>();
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+
+        // Roots: the stack frames, plus the word just above ST, which holds
+        // the operand of LOADI while it waits for checkSpace.
+        for (int addr = TamVM.SB; addr <= vm.ST; addr++)
+            mark(vm.data[addr & vm.mask], marked, pending);
+
+        while (!pending.isEmpty()) {
+            int block = pending.pop();
+            int size = liveBlocks.get(block);
+            for (int addr = block; addr < block + size; addr++)
+                mark(vm.data[addr & vm.mask], marked, pending);
+        }
+
+        Integer[] blocks = liveBlocks.keySet().toArray(new Integer[0]);
+        for (int i = blocks.length - 1; i >= 0; i--)
+            if (!marked.contains(blocks[i])) {
+                int size = liveBlocks.remove(blocks[i]);
+                liveWords = liveWords - size;
+                collectedWords = collectedWords + size;
+                release(blocks[i], size);
+            }
+        collections = collections + 1;
+    }
+
+    // Marks the live block that word points into, if any.
+    private void mark(int word, Set<Integer> marked, ArrayDeque<Integer> pending) {
+        if ((word < vm.HT) || (word >= vm.HB))
+            return;
+
+        Map.Entry<Integer, Integer> block = liveBlocks.floorEntry(word);
+        if ((block != null) && (word < block.getKey() + block.getValue())
+                && marked.add(block.getKey()))
+            pending.push(block.getKey());
+    }
+
+
+// STATISTICS
+
+    /**
+     * Returns the number of words in blocks that are allocated and not yet
+     * disposed.
+     */
+    public long getLiveWords() {
+        return liveWords;
+    }
+
+    /**
+     * Returns the number of words on the free lists, inside the heap.
+     */
+    public long getFreeWords() {
+        return freeWords;
+    }
+
+    /**
+     * Returns the fraction of free heap words that are not part of the
+     * largest free block: 0 when free space is contiguous, close to 1 when
+     * it is scattered over many small blocks.
+     */
+    public double getFragmentation() {
+        if (freeWords == 0)
+            return 0.0;
+
+        int largest = 0;
+        for (int size : freeBlocks.values())
+            largest = Math.max(largest, size);
+        return 1.0 - (double) largest / freeWords;
+    }
+
+    public long getAllocations() {
+        return allocations;
+    }
+
+    public long getDisposals() {
+        return disposals;
+    }
+
+    public long getAllocatedWords() {
+        return allocatedWords;
+    }
+
+    public long getCollections() {
+        return collections;
+    }
+
+    public long getCollectedWords() {
+        return collectedWords;
+    }
+
+    /**
+     * Returns the number of words allocated per second since the program
+     * was loaded.
+     */
+    public double getAllocationRate() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return (seconds > 0) ? allocatedWords / seconds : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "heap: " + (vm.HB - vm.HT) + " words, " + liveWords + " live, "
+                + freeWords + " free (fragmentation " + Math.round(100 * getFragmentation()) + "%); "
+                + allocations + " allocations of " + allocatedWords + " words, "
+                + disposals + " disposals, " + collections + " collections reclaiming "
+                + collectedWords + " words; " + Math.round(getAllocationRate()) + " words/s";
+    }
+}
@@ -0,0 +1,166 @@
+package TAM;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The standard input of a program running on a {@link TamVM}. Bytes are
+ * read from the underlying stream a buffer at a time, or taken straight
+ * from an array given in advance.
+ * <p/>
+ * Before the buffer is refilled the output channel tied to this one, if
+ * any, is flushed, so that prompts appear before the program waits.
+ * <p/>
+ * A channel made with no arguments is instead fed by other threads, with
+ * {@link #offer} and {@link #close}. A machine reading from it does not
+ * block when the bytes it needs have not arrived yet, but stops with the
+ * status {@link TamVM#waitingForInput}, so that a {@link Scheduler} can
+ * give its thread to another machine in the meantime.
+ */
+public final class InputChannel {
+
+    private final static int defaultBufferSize = 8192;
+
+    // returned by peek for bytes that have not arrived yet
+    final static int pending = -2;
+
+    // null if all the input is in buffer from the start, or if it is fed
+    private final InputStream in;
+    private byte[] buffer;
+    private int position, limit;
+
+    // true iff fed by offer, and until then close
+    final boolean fed;
+    private boolean open;
+
+    // told when bytes are offered or the channel is closed, or null
+    volatile Runnable listener;
+
+    OutputChannel tied;
+
+    public InputChannel(InputStream in) {
+        this(in, defaultBufferSize);
+    }
+
+    public InputChannel(InputStream in, int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("invalid buffer size " + bufferSize);
+        this.in = in;
+        buffer = new byte[bufferSize];
+        fed = false;
+    }
+
+    /**
+     * Creates a channel that reads the given bytes and then reaches the end
+     * of input.
+     */
+    public InputChannel(byte[] bytes) {
+        in = null;
+        buffer = bytes;
+        limit = bytes.length;
+        fed = false;
+    }
+
+    /**
+     * Creates a channel that reads the bytes offered to it, and reaches the
+     * end of input once it has been closed and they have all been read.
+     */
+    public InputChannel() {
+        in = null;
+        buffer = new byte[256];
+        fed = true;
+        open = true;
+    }
+
+    /**
+     * Returns the next byte of input, or -1 at the end of input.
+     */
+    int read() throws IOException {
+        if (fed)
+            return readFed();
+        if (position == limit) {
+            if (in == null)
+                return -1;
+            if (tied != null)
+                tied.flush();
+            int count = in.read(buffer, 0, buffer.length);
+            if (count <= 0)
+                return -1;
+            position = 0;
+            limit = count;
+        }
+        int b = buffer[position] & 0xFF;
+        position = position + 1;
+        return b;
+    }
+
+
+// FEEDING
+
+    /**
+     * Appends bytes to the input of a fed channel, waking the machine
+     * reading it if it waits for them.
+     */
+    public void offer(byte[] bytes) {
+        Runnable listener;
+
+        synchronized (this) {
+            if (!fed || !open)
+                throw new IllegalStateException("input channel is not open for offers");
+            if (limit + bytes.length > buffer.length) {
+                // drop what has been read, and grow if that is not enough
+                byte[] newBuffer = (limit - position + bytes.length > buffer.length)
+                        ? new byte[Math.max(2 * buffer.length, limit - position + bytes.length)]
+                        : buffer;
+                System.arraycopy(buffer, position, newBuffer, 0, limit - position);
+                buffer = newBuffer;
+                limit = limit - position;
+                position = 0;
+            }
+            System.arraycopy(bytes, 0, buffer, limit, bytes.length);
+            limit = limit + bytes.length;
+            listener = this.listener;
+        }
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * Marks the end of the input of a fed channel.
+     */
+    public void close() {
+        Runnable listener;
+
+        synchronized (this) {
+            if (!fed)
+                throw new IllegalStateException("input channel is not fed");
+            open = false;
+            listener = this.listener;
+        }
+        if (listener != null)
+            listener.run();
+    }
+
+    private synchronized int readFed() throws IOException {
+        if (position == limit) {
+            if (open)
+                // only reached if the machine did not ask first
+                throw new IOException("input has not arrived");
+            return -1;
+        }
+        int b = buffer[position] & 0xFF;
+        position = position + 1;
+        return b;
+    }
+
+    /**
+     * Returns the byte offset bytes after the next one to be read from a
+     * fed channel, -1 if the input ends before it, or pending if it may
+     * yet arrive.
+     */
+    synchronized int peek(int offset) {
+        if (position + offset < limit)
+            return buffer[position + offset] & 0xFF;
+        return open ? pending : -1;
+    }
+}
@@ -0,0 +1,144 @@
+package TAM;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The compiling tier of a {@link TamVM}. Counts how often each routine is
+ * entered, and each loop jumped back to, and once an address has been
+ * reached often enough translates the code from there into JVM bytecode
+ * with a {@link RoutineCompiler}. The interpreter hands control to the
+ * compiled code whenever it arrives at one of its entry points.
+ * <p/>
+ * Code can also be compiled ahead of time by the {@link AotCompiler}, and
+ * installed here when the program is loaded, with a threshold of 0 so
+ * that nothing more is compiled.
+ * <p/>
+ * Compiled code is defined as a hidden class next to this one, so that it
+ * can be unloaded with the machine. Where hidden classes are not available
+ * (before Java 15) an ordinary class is defined in their place, and before
+ * Java 9 nothing is compiled at all, so the interpreter does all the work.
+ */
+final class JitCompiler {
+
+    final static int defaultThreshold = 1000;
+
+    private final static AtomicInteger classNumber = new AtomicInteger();
+
+    // set once it is known that classes cannot be defined at run time
+    private static volatile boolean unsupported;
+
+    private final TamVM vm;
+    final int threshold;
+
+    // entries per code address, -1 where compilation has failed
+    private final int[] counters;
+
+    // compiled code to run from each code address, or null
+    private final CompiledRoutine[] compiled;
+
+    private int routinesCompiled;
+
+    JitCompiler(TamVM vm, int threshold) {
+        this.vm = vm;
+        this.threshold = threshold;
+        counters = new int[vm.CT - TamVM.CB];
+        compiled = new CompiledRoutine[vm.CT - TamVM.CB];
+    }
+
+    /**
+     * Called by the interpreter when it has just transferred control to CP.
+     * If counting, counts an entry to CP. Then runs compiled code for as long
+     * as there is some for the current CP, using at most about budget
+     * instructions, and returns the number of instructions executed.
+     */
+    long enter(boolean counting, long budget) {
+        long steps = 0;
+        int executed, lb;
+        CompiledRoutine routine;
+
+        if ((vm.CP < TamVM.CB) || (vm.CP >= vm.CT))
+            return 0;
+        if (counting && (threshold > 0)
+                && (compiled[vm.CP - TamVM.CB] == null) && (counters[vm.CP - TamVM.CB] >= 0)) {
+            counters[vm.CP - TamVM.CB] = counters[vm.CP - TamVM.CB] + 1;
+            if (counters[vm.CP - TamVM.CB] >= threshold)
+                compile(vm.CP);
+        }
+
+        while ((vm.status == TamVM.running) && (steps < budget)
+                && (vm.CP >= TamVM.CB) && (vm.CP < vm.CT)
+                && ((routine = compiled[vm.CP - TamVM.CB]) != null)) {
+            lb = vm.LB;
+            executed = routine.execute(vm, vm.CP, (int) Math.min(budget - steps, Integer.MAX_VALUE));
+            steps = steps + executed;
+            if (vm.LB != lb)
+                vm.returnDisplay(); // compiled code returned
+            if (executed == 0)
+                break;
+        }
+        return steps;
+    }
+
+    private void compile(int entry) {
+        RoutineCompiler compiler = new RoutineCompiler(vm);
+        CompiledRoutine routine = null;
+
+        if (!unsupported && compiler.discover(entry))
+            try {
+                byte[] classFile = compiler.compile("TAM/CompiledRoutine$" + classNumber.incrementAndGet());
+                routine = (CompiledRoutine) define(classFile).getDeclaredConstructor().newInstance();
+            } catch (NoSuchMethodException s) {
+                unsupported = true;
+            } catch (ReflectiveOperationException s) {
+                // leave it to the interpreter
+            } catch (IllegalStateException s) {
+                // region too large for one method
+            } catch (LinkageError s) {
+                // rejected by the verifier
+            }
+
+        if (routine == null) {
+            counters[entry - TamVM.CB] = -1;
+            return;
+        }
+        install(routine, compiler.getEntryPoints());
+    }
+
+    /**
+     * Runs routine from each of its entry points, except where code
+     * compiled before already runs.
+     */
+    void install(CompiledRoutine routine, int[] entryPoints) {
+        for (int addr : entryPoints)
+            if (compiled[addr - TamVM.CB] == null)
+                compiled[addr - TamVM.CB] = routine;
+        routinesCompiled = routinesCompiled + 1;
+    }
+
+    // Defines a class in this package from its class file, as a hidden class
+    // if possible. Reflection keeps this compatible with Java 8 sources.
+    private static Class<?> define(byte[] classFile) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Method defineHidden = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, Array.newInstance(option, 0).getClass());
+            Object hidden = defineHidden.invoke(lookup, classFile, true, Array.newInstance(option, 0));
+            return ((MethodHandles.Lookup) hidden).lookupClass();
+        } catch (ClassNotFoundException s) {
+            Method defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+            return (Class<?>) defineClass.invoke(lookup, (Object) classFile);
+        }
+    }
+
+    /**
+     * Returns the number of regions of code compiled so far.
+     */
+    int getRoutinesCompiled() {
+        return routinesCompiled;
+    }
+}
@@ -14,6 +14,8 @@
 
 package TAM;
 
+import java.util.Arrays;
+
 public final class Machine {
 
 
@@ -54,9 +56,11 @@ public final class Machine {
 
 
     // CODE STORE
+    // PB and PT are the defaults; a TamVM created with a larger code store
+    // relocates the primitive routines to just above it.
     public final static int
             CB = 0,
-            PB = 1024,  // = upper bound of code array + 1
+            PB = 1024,  // = default upper bound of code array + 1
             PT = 1052;  // = PB + 28
 
 
@@ -129,4 +133,14 @@ public final class Machine {
     // ADDRESSES OF PRIMITIVE ROUTINES
     public static Instruction[] code = new Instruction[1024];
 
+    // Makes room in code for at least size instructions, doubling it as needed.
+    public static void ensureCodeCapacity(int size) {
+        if (size > code.length) {
+            int capacity = code.length;
+            while (capacity < size)
+                capacity = 2 * capacity;
+            code = Arrays.copyOf(code, capacity);
+        }
+    }
+
 }
@@ -0,0 +1,156 @@
+package TAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes TAM object programs.
+ * <p/>
+ * The packed format starts with the magic word "TAM" 0, a version number
+ * and the number of instructions, followed by one 32-bit word per
+ * instruction: op in the top 4 bits, then r in 4 bits, n in 8 bits, and d
+ * in the bottom 16 bits, in two's complement. All words are big-endian.
+ * <p/>
+ * The legacy format, written by {@link Instruction#write}, has four 32-bit
+ * words per instruction and no header. It is still read, and written for
+ * programs with fields that do not fit into the packed format. The two
+ * can be told apart by the first word, which in the legacy format is an
+ * op code.
+ */
+public final class ObjectFile {
+
+    public final static int
+            magic = 0x54414D00,
+            version = 1;
+
+    private final static int headerSize = 12;
+
+    private ObjectFile() {
+    }
+
+
+// PACKING
+
+    /**
+     * Returns true iff the fields of instr fit into a packed word.
+     */
+    public static boolean fitsPacked(Instruction instr) {
+        return (instr.op >= 0) && (instr.op <= 15)
+                && (instr.r >= 0) && (instr.r <= 15)
+                && (instr.n >= 0) && (instr.n <= 255)
+                && (instr.d >= Short.MIN_VALUE) && (instr.d <= Short.MAX_VALUE);
+    }
+
+    static int pack(Instruction instr) {
+        return (instr.op << 28) | (instr.r << 24) | (instr.n << 16) | (instr.d & 0xFFFF);
+    }
+
+    static Instruction unpack(int word) {
+        Instruction instr = new Instruction();
+        instr.op = word >>> 28;
+        instr.r = (word >>> 24) & 0xF;
+        instr.n = (word >>> 16) & 0xFF;
+        instr.d = (short) word;
+        return instr;
+    }
+
+
+// READING
+
+    /**
+     * Reads an object program in either format from the given file, which
+     * is mapped into memory rather than read.
+     */
+    public static Instruction[] read(File objectFile) throws IOException {
+        FileChannel channel = FileChannel.open(objectFile.toPath(), StandardOpenOption.READ);
+        try {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads an object program in either format from the given stream, up to
+     * its end.
+     */
+    public static Instruction[] read(InputStream objectStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+
+        while ((count = objectStream.read(buffer)) != -1)
+            bytes.write(buffer, 0, count);
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Reads an object program in either format from the remaining bytes of
+     * the given buffer.
+     */
+    public static Instruction[] read(ByteBuffer bytes) throws IOException {
+        Instruction[] code;
+
+        if ((bytes.remaining() >= headerSize) && (bytes.getInt(bytes.position()) == magic)) {
+            bytes.getInt();
+            int objectVersion = bytes.getInt();
+            if (objectVersion != version)
+                throw new IOException("unsupported object format version " + objectVersion);
+            int length = bytes.getInt();
+            if ((length < 0) || (length > bytes.remaining() / 4))
+                throw new IOException("truncated object program");
+
+            code = new Instruction[length];
+            for (int addr = 0; addr < length; addr++)
+                code[addr] = unpack(bytes.getInt());
+        } else {
+            // Legacy format: a trailing partial instruction is ignored, as
+            // Instruction.read does.
+            code = new Instruction[bytes.remaining() / 16];
+            for (int addr = 0; addr < code.length; addr++) {
+                Instruction instr = new Instruction();
+                instr.op = bytes.getInt();
+                instr.r = bytes.getInt();
+                instr.n = bytes.getInt();
+                instr.d = bytes.getInt();
+                code[addr] = instr;
+            }
+        }
+        return code;
+    }
+
+
+// WRITING
+
+    /**
+     * Writes the first length instructions of code to the given stream, in
+     * the packed format if they all fit, otherwise in the legacy format.
+     * Returns true iff the packed format was used.
+     */
+    public static boolean write(Instruction[] code, int length, OutputStream objectStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(objectStream);
+        boolean packed = true;
+
+        for (int addr = 0; packed && (addr < length); addr++)
+            packed = fitsPacked(code[addr]);
+
+        if (packed) {
+            output.writeInt(magic);
+            output.writeInt(version);
+            output.writeInt(length);
+            for (int addr = 0; addr < length; addr++)
+                output.writeInt(pack(code[addr]));
+        } else
+            for (int addr = 0; addr < length; addr++)
+                code[addr].write(output);
+        output.flush();
+        return packed;
+    }
+}
@@ -0,0 +1,124 @@
+package TAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The standard output of a program running on a {@link TamVM}. Characters
+ * and integers written by the primitive routines are collected in a
+ * buffer, which is written to the underlying stream only when it is full
+ * or flushed: when the machine stops running, and before the program waits
+ * for input.
+ * <p/>
+ * Characters are encoded as by {@link java.io.PrintStream}, in the default
+ * charset.
+ */
+public final class OutputChannel {
+
+    private final static int defaultBufferSize = 8192;
+    private final static byte[] lineSeparator = System.lineSeparator().getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+
+    // digits of the integer being written, least significant first
+    private final byte[] digits = new byte[20];
+
+    public OutputChannel(OutputStream out) {
+        this(out, defaultBufferSize);
+    }
+
+    public OutputChannel(OutputStream out, int bufferSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("invalid buffer size " + bufferSize);
+        this.out = out;
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Creates a channel that collects the output in memory, to be fetched
+     * with {@link #toString}.
+     */
+    public OutputChannel() {
+        this(new ByteArrayOutputStream());
+    }
+
+    private void write(int b) throws IOException {
+        if (count == buffer.length)
+            flush();
+        buffer[count] = (byte) b;
+        count = count + 1;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        for (byte b : bytes)
+            write(b);
+    }
+
+    void put(char ch) throws IOException {
+        if (ch < 0x80)
+            write(ch);
+        else
+            write(String.valueOf(ch).getBytes());
+    }
+
+    void putInt(long value) throws IOException {
+        int length = 0;
+        boolean negative = value < 0;
+
+        do {
+            digits[length] = (byte) ('0' + Math.abs(value % 10));
+            value = value / 10;
+            length = length + 1;
+        } while (value != 0);
+
+        if (negative)
+            write('-');
+        while (length > 0) {
+            length = length - 1;
+            write(digits[length]);
+        }
+    }
+
+    void putEol() throws IOException {
+        write(lineSeparator);
+    }
+
+    void print(String s) throws IOException {
+        write(s.getBytes());
+    }
+
+    void println(String s) throws IOException {
+        print(s);
+        putEol();
+    }
+
+    /**
+     * Writes out everything buffered so far.
+     */
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns everything written so far, if this channel collects its output
+     * in memory, otherwise the usual description of the object.
+     */
+    @Override
+    public String toString() {
+        if (!(out instanceof ByteArrayOutputStream))
+            return super.toString();
+        try {
+            flush();
+        } catch (IOException s) {
+            // cannot happen in memory
+        }
+        return out.toString();
+    }
+}
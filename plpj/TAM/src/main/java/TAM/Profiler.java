@@ -0,0 +1,348 @@
+package TAM;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records where a program running on a {@link TamVM} spends its
+ * instructions: how often each op code is executed and each primitive
+ * routine called, how often each routine is entered, and how many
+ * instructions are executed inside each routine, including the routines
+ * it calls.
+ * <p/>
+ * Routines are identified by their code addresses, and named from a symbol
+ * table if one is given, such as the one the Triangle compiler writes next
+ * to the object program. The results can be written as a flat report, or
+ * as collapsed stacks, one line per call path, for flame graph tools.
+ * <p/>
+ * A machine with no profiler pays nothing for this, since profiling runs
+ * the program one instruction at a time outside the usual loop.
+ */
+public class Profiler {
+
+    private final static String[] opNames = {
+            "LOAD", "LOADA", "LOADI", "LOADL", "STORE", "STOREI", "CALL", "CALLI",
+            "RETURN", "", "PUSH", "POP", "JUMP", "JUMPI", "JUMPIF", "HALT"};
+
+    private final static String[] primitiveNames = {
+            "", "id", "not", "and", "or", "succ", "pred", "neg", "add", "sub", "mult",
+            "div", "mod", "lt", "le", "ge", "gt", "eq", "ne", "eol", "eof", "get",
+            "put", "geteol", "puteol", "getint", "putint", "new", "dispose"};
+
+    // A node of the call tree: one routine as called along one path from
+    // the main program.
+    private static class CallNode {
+
+        final int routine;
+        final CallNode parent;
+        final HashMap<Integer, CallNode> children = new HashMap<Integer, CallNode>();
+        long self;
+
+        CallNode(int routine, CallNode parent) {
+            this.routine = routine;
+            this.parent = parent;
+        }
+
+        CallNode child(int routine) {
+            CallNode child = children.get(routine);
+            if (child == null) {
+                child = new CallNode(routine, this);
+                children.put(routine, child);
+            }
+            return child;
+        }
+    }
+
+    private final long[] opCounts = new long[opNames.length];
+    private final long[] primitiveCounts = new long[primitiveNames.length];
+    private final TreeMap<Integer, Long> entries = new TreeMap<Integer, Long>();
+    private final CallNode root = new CallNode(TamVM.CB, null);
+    private CallNode current = root;
+    private long instructions;
+
+    private Map<Integer, String> names = new HashMap<Integer, String>();
+
+    // op code of the instruction being executed, and the routine it
+    // enters, or -1
+    private int executing, entering;
+
+
+// RECORDING
+
+    // Called before the machine executes the instruction at CP.
+    void before(TamVM vm) {
+        int op = vm.codeOp[vm.CP], addr;
+
+        instructions = instructions + 1;
+        opCounts[op] = opCounts[op] + 1;
+        executing = op;
+        current.self = current.self + 1;
+        entering = -1;
+
+        if ((op == Machine.CALLop) || (op == Machine.CALLIop)) {
+            if (op == Machine.CALLop)
+                addr = vm.codeD[vm.CP] + vm.content(vm.codeR[vm.CP]);
+            else
+                addr = vm.data[(vm.ST - 1) & vm.mask];
+            if (addr >= vm.PB) {
+                int displacement = addr - vm.PB;
+                if ((displacement >= 0) && (displacement < primitiveCounts.length))
+                    primitiveCounts[displacement] = primitiveCounts[displacement] + 1;
+            } else
+                entering = addr;
+        }
+    }
+
+    // Called after the machine has executed the instruction.
+    void after() {
+        if (entering >= 0) {
+            Long count = entries.get(entering);
+            entries.put(entering, (count == null) ? 1 : count + 1);
+            current = current.child(entering);
+        } else if ((executing == Machine.RETURNop) && (current.parent != null))
+            current = current.parent;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        Arrays.fill(opCounts, 0);
+        Arrays.fill(primitiveCounts, 0);
+        entries.clear();
+        root.children.clear();
+        root.self = 0;
+        current = root;
+        instructions = 0;
+    }
+
+
+// NAMES
+
+    /**
+     * Names the routines at the given code addresses.
+     */
+    public void setNames(Map<Integer, String> names) {
+        this.names = new HashMap<Integer, String>(names);
+    }
+
+    /**
+     * Reads a symbol table with one routine per line: its code address and
+     * its name, separated by white space.
+     */
+    public static Map<Integer, String> readSymbols(File symbolFile) throws IOException {
+        Map<Integer, String> symbols = new HashMap<Integer, String>();
+        BufferedReader in = new BufferedReader(new FileReader(symbolFile));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+", 2);
+                if (fields.length == 2)
+                    try {
+                        symbols.put(Integer.parseInt(fields[0]), fields[1]);
+                    } catch (NumberFormatException s) {
+                        // not a symbol
+                    }
+            }
+        } finally {
+            in.close();
+        }
+        return symbols;
+    }
+
+    private String nameOf(int routine) {
+        if (routine == TamVM.CB)
+            return "main";
+        String name = names.get(routine);
+        return (name != null) ? name : "routine@" + routine;
+    }
+
+
+// RESULTS
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getOpCount(int op) {
+        return opCounts[op];
+    }
+
+    public long getPrimitiveCount(int displacement) {
+        return primitiveCounts[displacement];
+    }
+
+    /**
+     * Returns the number of times the routine at the given code address was
+     * called.
+     */
+    public long getEntries(int routine) {
+        Long count = entries.get(routine);
+        return (count == null) ? 0 : count;
+    }
+
+    /**
+     * Returns the number of instructions executed while the routine at the
+     * given code address was active, in it or in routines it called.
+     * Recursive activations are counted once.
+     */
+    public long getInclusive(int routine) {
+        Long count = inclusiveCounts().get(routine);
+        return (count == null) ? 0 : count;
+    }
+
+    // Returns the instructions executed in each call subtree.
+    private static HashMap<CallNode, Long> subtreeTotals(CallNode root) {
+        HashMap<CallNode, Long> totals = new HashMap<CallNode, Long>();
+        ArrayDeque<CallNode> pending = new ArrayDeque<CallNode>();
+        List<CallNode> preorder = new ArrayList<CallNode>();
+
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            CallNode node = pending.pop();
+            preorder.add(node);
+            for (CallNode child : node.children.values())
+                pending.push(child);
+        }
+        for (int i = preorder.size() - 1; i >= 0; i--) {
+            CallNode node = preorder.get(i);
+            long total = node.self;
+            for (CallNode child : node.children.values())
+                total = total + totals.get(child);
+            totals.put(node, total);
+        }
+        return totals;
+    }
+
+    // Returns the inclusive instruction count of each routine: the total of
+    // the subtrees of its outermost activations, that is, those with no
+    // activation of the same routine further up the call path.
+    private Map<Integer, Long> inclusiveCounts() {
+        HashMap<CallNode, Long> totals = subtreeTotals(root);
+        HashMap<Integer, Long> inclusive = new HashMap<Integer, Long>();
+        HashMap<Integer, Integer> active = new HashMap<Integer, Integer>();
+        ArrayDeque<CallNode> pending = new ArrayDeque<CallNode>();
+        ArrayDeque<Boolean> leaving = new ArrayDeque<Boolean>();
+
+        // Walk the tree depth first, keeping count of the activations of
+        // each routine on the path from the root.
+        pending.push(root);
+        leaving.push(false);
+        while (!pending.isEmpty()) {
+            CallNode node = pending.pop();
+            Integer count = active.get(node.routine);
+            if (leaving.pop()) {
+                active.put(node.routine, count - 1);
+                continue;
+            }
+            if ((count == null) || (count == 0)) {
+                Long total = inclusive.get(node.routine);
+                inclusive.put(node.routine, ((total == null) ? 0 : total) + totals.get(node));
+                count = 0;
+            }
+            active.put(node.routine, count + 1);
+            pending.push(node);
+            leaving.push(true);
+            for (CallNode child : node.children.values()) {
+                pending.push(child);
+                leaving.push(false);
+            }
+        }
+        return inclusive;
+    }
+
+    /**
+     * Writes the counts of op codes, primitive routines and routines, each
+     * sorted by decreasing count.
+     */
+    public void writeReport(PrintStream out) {
+        out.println("Profile: " + instructions + " instructions");
+
+        out.println("");
+        out.println("Op code      Count       %");
+        for (Integer op : byDecreasing(opCounts))
+            out.println(row(opNames[op], opCounts[op]));
+
+        out.println("");
+        out.println("Primitive    Count       %");
+        for (Integer displacement : byDecreasing(primitiveCounts))
+            out.println(row(primitiveNames[displacement], primitiveCounts[displacement]));
+
+        final Map<Integer, Long> inclusive = inclusiveCounts();
+        HashMap<Integer, Long> self = new HashMap<Integer, Long>();
+        for (CallNode node : subtreeTotals(root).keySet()) {
+            Long count = self.get(node.routine);
+            self.put(node.routine, ((count == null) ? 0 : count) + node.self);
+        }
+        List<Integer> routines = new ArrayList<Integer>(inclusive.keySet());
+        Collections.sort(routines, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return inclusive.get(b).compareTo(inclusive.get(a));
+            }
+        });
+
+        out.println("");
+        out.println("Routine                   Entries    Inclusive       %         Self       %");
+        for (Integer routine : routines)
+            out.println(String.format("%-20s %12d %12d %6.2f %12d %6.2f",
+                    nameOf(routine), (routine == TamVM.CB) ? 1 : getEntries(routine),
+                    inclusive.get(routine), percent(inclusive.get(routine)),
+                    self.get(routine), percent(self.get(routine))));
+    }
+
+    /**
+     * Writes one line per call path, its routines separated by semicolons,
+     * followed by the number of instructions executed there.
+     */
+    public void writeCollapsedStacks(PrintStream out) {
+        ArrayDeque<CallNode> pending = new ArrayDeque<CallNode>();
+        HashMap<CallNode, String> paths = new HashMap<CallNode, String>();
+
+        pending.push(root);
+        paths.put(root, nameOf(root.routine));
+        while (!pending.isEmpty()) {
+            CallNode node = pending.pop();
+            String path = paths.remove(node);
+            if (node.self > 0)
+                out.println(path + " " + node.self);
+            for (CallNode child : node.children.values()) {
+                paths.put(child, path + ";" + nameOf(child.routine));
+                pending.push(child);
+            }
+        }
+    }
+
+    private String row(String name, long count) {
+        return String.format("%-8s %9d %7.2f", name, count, percent(count));
+    }
+
+    private double percent(long count) {
+        return (instructions > 0) ? 100.0 * count / instructions : 0.0;
+    }
+
+    // Returns the indexes of the non-zero counts, largest count first.
+    private static List<Integer> byDecreasing(final long[] counts) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < counts.length; i++)
+            if (counts[i] > 0)
+                indexes.add(i);
+        Collections.sort(indexes, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(counts[b], counts[a]);
+            }
+        });
+        return indexes;
+    }
+}
@@ -0,0 +1,155 @@
+package TAM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link TamProgram}s decoded from object programs, so that a
+ * program run over and over is decoded and verified only once.
+ * <p/>
+ * Programs are found by the SHA-256 digest of their object bytes, and the
+ * size of the code store they are verified for. The least recently used
+ * programs are evicted once the programs kept hold more than a given
+ * number of instructions in all. A program larger than that on its own is
+ * decoded but not kept.
+ * <p/>
+ * The cache is safe to use from any number of threads. {@link #getShared}
+ * returns one for the whole process.
+ */
+public final class ProgramCache {
+
+    public final static long defaultCapacity = 1 << 20;
+
+    private final static ProgramCache shared = new ProgramCache(defaultCapacity);
+
+    // maximum number of instructions in all the programs kept
+    private final long capacity;
+
+    // in order of use, the least recently used first
+    private final LinkedHashMap<String, TamProgram> programs =
+            new LinkedHashMap<String, TamProgram>(16, 0.75f, true);
+
+    private long instructions;
+    private long hits, misses, evictions;
+
+    public ProgramCache(long capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        this.capacity = capacity;
+    }
+
+    public static ProgramCache getShared() {
+        return shared;
+    }
+
+    private static String key(byte[] objectProgram, int codeStoreSize) {
+        StringBuilder key = new StringBuilder(72);
+        byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(objectProgram);
+        } catch (NoSuchAlgorithmException s) {
+            throw new IllegalStateException(s);
+        }
+        for (byte b : digest)
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return key.append(':').append(codeStoreSize).toString();
+    }
+
+    /**
+     * Returns the program decoded from the given object bytes for a code
+     * store of codeStoreSize instructions, decoding it only if it is not
+     * kept already.
+     */
+    public TamProgram get(byte[] objectProgram, int codeStoreSize) throws IOException {
+        String key = key(objectProgram, codeStoreSize);
+        TamProgram program;
+
+        synchronized (this) {
+            program = programs.get(key);
+            if (program != null) {
+                hits = hits + 1;
+                return program;
+            }
+            misses = misses + 1;
+        }
+
+        // Decode without holding the lock; should another thread decode the
+        // same program meanwhile, the first one kept wins.
+        program = TamProgram.decode(objectProgram, codeStoreSize);
+
+        synchronized (this) {
+            TamProgram kept = programs.get(key);
+            if (kept != null)
+                return kept;
+            if (program.getLength() > capacity)
+                return program;
+
+            programs.put(key, program);
+            instructions = instructions + program.getLength();
+            Iterator<Map.Entry<String, TamProgram>> eldest = programs.entrySet().iterator();
+            while (instructions > capacity) {
+                instructions = instructions - eldest.next().getValue().getLength();
+                eldest.remove();
+                evictions = evictions + 1;
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Returns the program in the given object file, as get(bytes) does.
+     */
+    public TamProgram get(File objectFile, int codeStoreSize) throws IOException {
+        return get(Files.readAllBytes(objectFile.toPath()), codeStoreSize);
+    }
+
+    /**
+     * Forgets all programs, but not the statistics.
+     */
+    public synchronized void clear() {
+        programs.clear();
+        instructions = 0;
+    }
+
+
+// STATISTICS
+
+    public synchronized int getPrograms() {
+        return programs.size();
+    }
+
+    /**
+     * Returns the number of instructions in all the programs kept.
+     */
+    public synchronized long getInstructions() {
+        return instructions;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "program cache: " + programs.size() + " programs of " + instructions + " instructions, "
+                + hits + " hits, " + misses + " misses ("
+                + ((lookups > 0) ? Math.round(100.0 * hits / lookups) : 0) + "% hit rate), "
+                + evictions + " evictions";
+    }
+}
@@ -0,0 +1,577 @@
+package TAM;
+
+import java.util.Arrays;
+
+/**
+ * The verified code of a {@link TamVM} translated into a register form,
+ * and interpreted in that form.
+ * <p/>
+ * The code is cut into blocks of straight-line code: loads, stores,
+ * literals, pushes and pops of single words, arithmetic, logical and
+ * comparison primitives, and a JUMP or JUMPIF to end with. Within a block
+ * each stack slot is a virtual register, so an operand pushed by one
+ * instruction is read back by the next from the register rather than from
+ * the data store, ST is set once at the end of the block, and a literal
+ * operand goes straight into the instruction that uses it.
+ * <p/>
+ * Words pushed onto the stack stay in their registers until the block
+ * ends, when those written in the block are written back to the data
+ * store, each once, with the value the interpreter would have left there.
+ * A load or store whose address turns out to lie among the slots of the
+ * block keeps the registers and the data store in step: a load writes the
+ * registers back before it reads, and a store updates the register too.
+ * <p/>
+ * Verified code has the stack space it needs, so a block runs without
+ * checks. Blocks run one after another for as long as one jumps or falls
+ * through to the next. If a primitive fails, or an address lies outside
+ * the data store, the registers are written back, and the machine is left
+ * exactly as the interpreter would have left it.
+ */
+final class RegisterCode {
+
+    // register op codes
+    private final static int
+            CONST = 0, LOAD = 1, LOADA = 2, LOADI = 3, STORE = 4, STOREI = 5,
+            RELOAD = 6, MOVE = 7, UNARY = 8, BINARY = 9, BINARYC = 10,
+            JUMP = 11, JUMPIF = 12, END = 13;
+
+    // largest block translated, in TAM instructions
+    private final static int maxBlockSize = 64;
+
+    // Each register instruction takes four ints: its op code and operands
+    // a, b and c. Registers are numbered from the lowest stack slot the
+    // block touches, which is at address ST + bases[block start]. steps is
+    // the number of TAM instructions done once the instruction is, and
+    // depth the stack depth in registers after it.
+    private int[] code = new int[256];
+    private int[] steps = new int[64], depth = new int[64], addrs = new int[64];
+    private int length;
+
+    // The registers that an instruction writes back to the data store,
+    // when it leaves the block or its address lies among the slots of the
+    // block, are spills[spillFrom[i]] to spills[spillTo[i] - 1].
+    private int[] spillFrom = new int[64], spillTo = new int[64];
+    private int[] spills = new int[256];
+    private int spillCount;
+
+    // start of the block at each code address, or -1, the number of its
+    // lowest slot, and the number of slots it keeps in registers
+    private final int[] blockAt;
+    private final int[] bases;
+    private final int[] sizes;
+
+    // registers needed by the largest block; each machine running the code
+    // has its own, in TamVM.registerFile
+    final int registerCount;
+
+    // Translates the code loaded into vm. Nothing is changed once it has
+    // been translated, so machines with the same code can share it.
+    RegisterCode(TamVM vm) {
+        int length = vm.CT - TamVM.CB, size = 0;
+        boolean[] leader = leaders(vm);
+
+        blockAt = new int[length];
+        bases = new int[length];
+        sizes = new int[length];
+        Arrays.fill(blockAt, -1);
+        for (int addr = TamVM.CB; addr < vm.CT; addr++)
+            if (leader[addr - TamVM.CB])
+                size = Math.max(size, translate(vm, addr, leader));
+        registerCount = size;
+    }
+
+    /**
+     * Tests whether a block starts at addr.
+     */
+    boolean startsAt(int addr) {
+        return blockAt[addr - TamVM.CB] >= 0;
+    }
+
+
+// TRANSLATION
+
+    // Tests whether the instruction at addr can be translated, judging by
+    // itself and the one before, which eq and ne need to be LOADL 1.
+    private static boolean translatable(TamVM vm, int addr, boolean[] leader) {
+        int r = vm.codeR[addr], n = vm.codeN[addr], d = vm.codeD[addr];
+
+        if (vm.headroom[addr] < 0)
+            return false;
+        switch (vm.codeOp[addr]) {
+            case Machine.LOADop:
+            case Machine.STOREop:
+                return (n == 1) && (r != Machine.STr) && (r != Machine.CPr);
+            case Machine.LOADAop:
+                return (r != Machine.STr) && (r != Machine.CPr);
+            case Machine.LOADIop:
+            case Machine.STOREIop:
+                return n == 1;
+            case Machine.LOADLop:
+            case Machine.JUMPop:
+            case Machine.JUMPIFop:
+                return true;
+            case Machine.PUSHop:
+                return d >= 0;
+            case Machine.POPop:
+                return (n <= 1) && (d >= 0);
+            case Machine.CALLop:
+                if (r != Machine.PBr)
+                    return false;
+                if ((d == Machine.eqDisplacement) || (d == Machine.neDisplacement))
+                    return !leader[addr - TamVM.CB] && (vm.codeOp[addr - 1] == Machine.LOADLop)
+                            && (vm.codeD[addr - 1] == 1);
+                return (Machine.idDisplacement <= d) && (d <= Machine.gtDisplacement);
+            default:
+                return false;
+        }
+    }
+
+    // Marks the addresses where blocks start: routine entries, jump
+    // targets, code addresses taken by LOADA, and the instructions after
+    // those that end a block.
+    private static boolean[] leaders(TamVM vm) {
+        boolean[] leader = new boolean[vm.CT - TamVM.CB];
+        int op, r, target;
+
+        if (leader.length > 0)
+            leader[0] = true;
+        for (int addr = TamVM.CB; addr < vm.CT; addr++) {
+            op = vm.codeOp[addr];
+            r = vm.codeR[addr];
+            target = vm.codeD[addr] + TamVM.CB;
+            if ((r == Machine.CBr) && (TamVM.CB <= target) && (target < vm.CT)
+                    && ((op == Machine.CALLop) || (op == Machine.LOADAop)
+                    || (op == Machine.JUMPop) || (op == Machine.JUMPIFop)))
+                leader[target - TamVM.CB] = true;
+            // calls of primitives that are translated do not end a block
+            if ((op == Machine.CALLIop) || (op == Machine.RETURNop)
+                    || (op == Machine.JUMPop) || (op == Machine.JUMPIop) || (op == Machine.JUMPIFop))
+                if (addr + 1 < vm.CT)
+                    leader[addr + 1 - TamVM.CB] = true;
+        }
+        for (int addr = TamVM.CB; addr + 1 < vm.CT; addr++)
+            if (!translatable(vm, addr, leader))
+                leader[addr + 1 - TamVM.CB] = true;
+        return leader;
+    }
+
+    // Appends a register instruction, and returns its index.
+    private int emit(int op, int a, int b, int c) {
+        if (4 * length + 4 > code.length)
+            code = Arrays.copyOf(code, 2 * code.length);
+        if (length == steps.length) {
+            steps = Arrays.copyOf(steps, 2 * length);
+            depth = Arrays.copyOf(depth, 2 * length);
+            addrs = Arrays.copyOf(addrs, 2 * length);
+            spillFrom = Arrays.copyOf(spillFrom, 2 * length);
+            spillTo = Arrays.copyOf(spillTo, 2 * length);
+        }
+        code[4 * length] = op;
+        code[4 * length + 1] = a;
+        code[4 * length + 2] = b;
+        code[4 * length + 3] = c;
+        spillFrom[length] = spillCount;
+        spillTo[length] = spillCount;
+        length = length + 1;
+        return length - 1;
+    }
+
+    // Translates the block starting at start, and returns the number of
+    // registers it needs.
+    private int translate(TamVM vm, int start, boolean[] leader) {
+        int first = length, firstSpill = spillCount, addr = start, count = 0, top = 0, low = 0, high = 0;
+        int op, n, d, index;
+        // whether the register of each slot, from -origin up, holds its word,
+        // and whether the block has written it there and not to the data store
+        int origin = 4 * maxBlockSize;
+        boolean[] valid = new boolean[2 * origin], dirty = new boolean[2 * origin];
+        boolean ended = false;
+
+        while (!ended && (addr < vm.CT) && (count < maxBlockSize)
+                && ((addr == start) || !leader[addr - TamVM.CB]) && translatable(vm, addr, leader)) {
+            op = vm.codeOp[addr];
+            n = vm.codeN[addr];
+            d = vm.codeD[addr];
+            if ((op == Machine.PUSHop) || (op == Machine.POPop) ? Math.abs(top) + d + 4 > origin
+                    : Math.abs(top) + 4 > origin)
+                break;
+            count = count + 1;
+
+            switch (op) {
+                case Machine.LOADop:
+                    spill(dirty, origin, emit(LOAD, top, vm.codeR[addr], d));
+                    written(valid, dirty, origin, top);
+                    top = top + 1;
+                    break;
+                case Machine.LOADAop:
+                    emit(LOADA, top, vm.codeR[addr], d);
+                    written(valid, dirty, origin, top);
+                    top = top + 1;
+                    break;
+                case Machine.LOADLop:
+                    emit(CONST, top, d, 0);
+                    written(valid, dirty, origin, top);
+                    top = top + 1;
+                    break;
+                case Machine.LOADIop:
+                    reload(valid, origin, top - 1);
+                    spill(dirty, origin, emit(LOADI, top - 1, 0, 0));
+                    written(valid, dirty, origin, top - 1);
+                    break;
+                case Machine.STOREop:
+                    reload(valid, origin, top - 1);
+                    spill(dirty, origin, emit(STORE, top - 1, vm.codeR[addr], d));
+                    top = top - 1;
+                    break;
+                case Machine.STOREIop:
+                    reload(valid, origin, top - 2);
+                    reload(valid, origin, top - 1);
+                    spill(dirty, origin, emit(STOREI, top - 2, 0, 0));
+                    top = top - 2;
+                    break;
+                case Machine.PUSHop:
+                    // the words pushed are those left in their registers, or
+                    // else whatever the data store holds
+                    top = top + d;
+                    break;
+                case Machine.POPop:
+                    if ((n == 1) && (d > 0)) {
+                        reload(valid, origin, top - 1);
+                        emit(MOVE, top - 1 - d, top - 1, 0);
+                        written(valid, dirty, origin, top - 1 - d);
+                    }
+                    top = top - d;
+                    break;
+                case Machine.CALLop:
+                    if (d == Machine.idDisplacement)
+                        break;
+                    if ((d == Machine.notDisplacement) || (d == Machine.succDisplacement)
+                            || (d == Machine.predDisplacement) || (d == Machine.negDisplacement)) {
+                        reload(valid, origin, top - 1);
+                        index = emit(UNARY, top - 1, d, 0);
+                        written(valid, dirty, origin, top - 1);
+                        spill(dirty, origin, index);
+                    } else if ((d == Machine.eqDisplacement) || (d == Machine.neDisplacement)) {
+                        // size 1, already pushed by the LOADL before
+                        reload(valid, origin, top - 3);
+                        reload(valid, origin, top - 2);
+                        index = emit(BINARY, top - 3, d, 0);
+                        written(valid, dirty, origin, top - 3);
+                        spill(dirty, origin, index);
+                        top = top - 2;
+                    } else if ((length > first) && (code[4 * (length - 1)] == CONST)
+                            && (code[4 * (length - 1) + 1] == top - 1) && (addrs[length - 1] == addr - 1)) {
+                        // the right operand is the literal just pushed, which
+                        // the instruction puts in its register instead
+                        length = length - 1;
+                        n = code[4 * length + 2];
+                        reload(valid, origin, top - 2);
+                        index = emit(BINARYC, top - 2, d, n);
+                        written(valid, dirty, origin, top - 2);
+                        spill(dirty, origin, index);
+                        top = top - 1;
+                    } else {
+                        reload(valid, origin, top - 2);
+                        reload(valid, origin, top - 1);
+                        index = emit(BINARY, top - 2, d, 0);
+                        written(valid, dirty, origin, top - 2);
+                        spill(dirty, origin, index);
+                        top = top - 1;
+                    }
+                    break;
+                case Machine.JUMPop:
+                    spill(dirty, origin, emit(JUMP, d + TamVM.CB, 0, 0));
+                    ended = true;
+                    break;
+                case Machine.JUMPIFop:
+                    reload(valid, origin, top - 1);
+                    top = top - 1;
+                    spill(dirty, origin, emit(JUMPIF, top, n, d + TamVM.CB));
+                    ended = true;
+                    break;
+            }
+            if (length > first) {
+                steps[length - 1] = count;
+                depth[length - 1] = top;
+                addrs[length - 1] = addr;
+            }
+            addr = addr + 1;
+        }
+
+        if (count == 0) {
+            length = first;
+            spillCount = firstSpill;
+            return 0;
+        }
+        if (!ended) {
+            spill(dirty, origin, emit(END, addr, 0, 0));
+            steps[length - 1] = count;
+            depth[length - 1] = top;
+            addrs[length - 1] = addr - 1;
+            // carry on with another block if this one was cut short
+            if (addr < vm.CT)
+                leader[addr - TamVM.CB] = true;
+        }
+
+        // Number the registers from the lowest slot used.
+        for (index = first; index < length; index++) {
+            op = code[4 * index];
+            low = Math.min(low, depth[index]);
+            high = Math.max(high, depth[index]);
+            if ((op != JUMP) && (op != END)) {
+                low = Math.min(low, code[4 * index + 1]);
+                high = Math.max(high, code[4 * index + 1] + 2);
+            }
+        }
+        for (index = first; index < length; index++) {
+            op = code[4 * index];
+            if ((op != JUMP) && (op != END))
+                code[4 * index + 1] = code[4 * index + 1] - low;
+            if (op == MOVE)
+                code[4 * index + 2] = code[4 * index + 2] - low;
+            depth[index] = depth[index] - low;
+        }
+        for (index = firstSpill; index < spillCount; index++)
+            spills[index] = spills[index] - low;
+        blockAt[start - TamVM.CB] = first;
+        bases[start - TamVM.CB] = low;
+        sizes[start - TamVM.CB] = high - low;
+        return high - low;
+    }
+
+    // Makes sure that the register for slot holds its word, reading it
+    // from the data store if need be.
+    private void reload(boolean[] valid, int origin, int slot) {
+        if (!valid[origin + slot]) {
+            emit(RELOAD, slot, 0, 0);
+            valid[origin + slot] = true;
+        }
+    }
+
+    // Notes that an instruction has written the register for slot.
+    private static void written(boolean[] valid, boolean[] dirty, int origin, int slot) {
+        valid[origin + slot] = true;
+        dirty[origin + slot] = true;
+    }
+
+    // Makes the registers written back by the instruction at index those
+    // that the block has written so far.
+    private void spill(boolean[] dirty, int origin, int index) {
+        spillFrom[index] = spillCount;
+        for (int slot = 0; slot < dirty.length; slot++)
+            if (dirty[slot]) {
+                if (spillCount == spills.length)
+                    spills = Arrays.copyOf(spills, 2 * spillCount);
+                spills[spillCount] = slot - origin;
+                spillCount = spillCount + 1;
+            }
+        spillTo[index] = spillCount;
+    }
+
+
+// EXECUTION
+
+    /**
+     * Runs the block at the CP of vm, and those it leads to, for as long as
+     * the program is running and the budget lasts. Returns the number of
+     * TAM instructions executed.
+     */
+    long execute(TamVM vm, long budget) {
+        final int[] code = this.code;
+        final int[] registers = vm.registerFile;
+        int[] data = vm.data;
+        int mask = vm.mask;
+        long executed = 0;
+        int pc, bottom, size, lb, a, b, c, addr;
+
+        do {
+            pc = blockAt[vm.CP - TamVM.CB];
+            bottom = vm.ST + bases[vm.CP - TamVM.CB];
+            size = sizes[vm.CP - TamVM.CB];
+            // no block calls or returns, so LB holds for the whole of it
+            lb = vm.LB;
+            block:
+            for (; ; pc++) {
+                a = code[4 * pc + 1];
+                b = code[4 * pc + 2];
+                c = code[4 * pc + 3];
+                switch (code[4 * pc]) {
+                    case CONST:
+                        registers[a] = b;
+                        break;
+                    case LOAD:
+                        addr = c + ((b == Machine.LBr) ? lb : vm.content(b));
+                        if (!vm.addressable(addr, 1))
+                            return failed(vm, registers, pc, bottom, -1, executed);
+                        data = vm.data;
+                        mask = vm.mask;
+                        if ((bottom <= addr) && (addr < bottom + size))
+                            writeBack(vm, registers, pc, bottom);
+                        registers[a] = data[addr & mask];
+                        break;
+                    case LOADA:
+                        registers[a] = c + ((b == Machine.LBr) ? lb : vm.content(b));
+                        break;
+                    case LOADI:
+                        addr = registers[a];
+                        if (!vm.addressable(addr, 1))
+                            return failed(vm, registers, pc, bottom, 0, executed);
+                        data = vm.data;
+                        mask = vm.mask;
+                        if ((bottom <= addr) && (addr < bottom + size))
+                            writeBack(vm, registers, pc, bottom);
+                        registers[a] = data[addr & mask];
+                        break;
+                    case STORE:
+                        addr = c + ((b == Machine.LBr) ? lb : vm.content(b));
+                        if (!vm.addressable(addr, 1))
+                            return failed(vm, registers, pc, bottom, 1, executed);
+                        data = vm.data;
+                        mask = vm.mask;
+                        data[addr & mask] = registers[a];
+                        if ((bottom <= addr) && (addr < bottom + size))
+                            registers[addr - bottom] = registers[a];
+                        break;
+                    case STOREI:
+                        addr = registers[a + 1];
+                        if (!vm.addressable(addr, 1))
+                            return failed(vm, registers, pc, bottom, 2, executed);
+                        data = vm.data;
+                        mask = vm.mask;
+                        data[addr & mask] = registers[a];
+                        if ((bottom <= addr) && (addr < bottom + size))
+                            registers[addr - bottom] = registers[a];
+                        break;
+                    case RELOAD:
+                        registers[a] = data[(bottom + a) & mask];
+                        break;
+                    case MOVE:
+                        registers[a] = registers[b];
+                        break;
+                    case UNARY:
+                        switch (b) {
+                            case Machine.notDisplacement:
+                                registers[a] = vm.toInt(!vm.isTrue(registers[a]));
+                                break;
+                            case Machine.succDisplacement:
+                                registers[a] = vm.overflowChecked((long) registers[a] + 1);
+                                break;
+                            case Machine.predDisplacement:
+                                registers[a] = vm.overflowChecked((long) registers[a] - 1);
+                                break;
+                            case Machine.negDisplacement:
+                                registers[a] = -registers[a];
+                                break;
+                        }
+                        if (vm.status != TamVM.running)
+                            break block;
+                        break;
+                    case BINARYC:
+                        // the literal pushed by the LOADL
+                        registers[a + 1] = c;
+                        binary(vm, registers, b, a, c);
+                        if (vm.status != TamVM.running)
+                            break block;
+                        break;
+                    case BINARY:
+                        binary(vm, registers, b, a, registers[a + 1]);
+                        if (vm.status != TamVM.running)
+                            break block;
+                        break;
+                    case JUMP:
+                        vm.CP = a;
+                        break block;
+                    case JUMPIF:
+                        vm.CP = (registers[a] == b) ? c : addrs[pc] + 1;
+                        break block;
+                    case END:
+                        vm.CP = a;
+                        break block;
+                }
+            }
+            writeBack(vm, registers, pc, bottom);
+            vm.ST = bottom + depth[pc];
+            executed = executed + steps[pc];
+            if (vm.status != TamVM.running) {
+                // a primitive failed, after which the interpreter carries on
+                vm.CP = addrs[pc] + 1;
+                break;
+            }
+        } while ((executed < budget) && (vm.CP < vm.CT) && (blockAt[vm.CP - TamVM.CB] >= 0));
+        return executed;
+    }
+
+    // Writes the registers that the instruction at pc writes back to the
+    // data store, in the block whose lowest slot is at address bottom.
+    private void writeBack(TamVM vm, int[] registers, int pc, int bottom) {
+        final int[] data = vm.data;
+        final int mask = vm.mask;
+
+        for (int index = spillFrom[pc]; index < spillTo[pc]; index++)
+            data[(bottom + spills[index]) & mask] = registers[spills[index]];
+    }
+
+    // Leaves vm as the interpreter leaves it when the instruction of pc
+    // fails on an address outside the data store: at that instruction, with
+    // the words it would have popped still on the stack, or none of those it
+    // would have pushed. Returns the number of TAM instructions executed,
+    // counting the one that failed.
+    private long failed(TamVM vm, int[] registers, int pc, int bottom, int popped, long executed) {
+        writeBack(vm, registers, pc, bottom);
+        vm.CP = addrs[pc];
+        vm.ST = bottom + depth[pc] + popped;
+        return executed + steps[pc];
+    }
+
+    // Applies the binary primitive with the given displacement to register
+    // a and right, leaving the result in register a. Dividing by zero
+    // leaves register a as it was; on overflow the result is 0.
+    private static void binary(TamVM vm, int[] registers, int displacement, int a, int right) {
+        int left = registers[a];
+
+        switch (displacement) {
+            case Machine.andDisplacement:
+                registers[a] = vm.toInt(vm.isTrue(left) & vm.isTrue(right));
+                break;
+            case Machine.orDisplacement:
+                registers[a] = vm.toInt(vm.isTrue(left) | vm.isTrue(right));
+                break;
+            case Machine.addDisplacement:
+                registers[a] = vm.overflowChecked((long) left + right);
+                break;
+            case Machine.subDisplacement:
+                registers[a] = vm.overflowChecked((long) left - right);
+                break;
+            case Machine.multDisplacement:
+                registers[a] = vm.overflowChecked((long) left * right);
+                break;
+            case Machine.divDisplacement:
+            case Machine.modDisplacement:
+                if (right == 0) {
+                    vm.status = TamVM.failedZeroDivide;
+                    return;
+                }
+                registers[a] = (int) ((displacement == Machine.divDisplacement)
+                        ? (long) left / right : (long) left % right);
+                break;
+            case Machine.ltDisplacement:
+                registers[a] = vm.toInt(left < right);
+                break;
+            case Machine.leDisplacement:
+                registers[a] = vm.toInt(left <= right);
+                break;
+            case Machine.geDisplacement:
+                registers[a] = vm.toInt(left >= right);
+                break;
+            case Machine.gtDisplacement:
+                registers[a] = vm.toInt(left > right);
+                break;
+            case Machine.eqDisplacement:
+                registers[a] = vm.toInt(left == right);
+                break;
+            case Machine.neDisplacement:
+                registers[a] = vm.toInt(left != right);
+                break;
+        }
+    }
+}
@@ -0,0 +1,825 @@
+package TAM;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static TAM.ClassFile.*;
+
+/**
+ * Translates a region of the code store of a {@link TamVM} into the JVM
+ * bytecode of a {@link CompiledRoutine}.
+ * <p/>
+ * The region is the code reachable from its entry address by falling
+ * through and by JUMP and JUMPIF relative to CB. Arithmetic, logical and
+ * comparison primitives are translated inline; the other primitives are
+ * called through {@link TamVM#callPrimitive}. Calls of routines, computed
+ * jumps, and anything else not translated leave the region, so that the
+ * interpreter can carry on from there. The instruction after each call is
+ * an entry point of the region, where execution can resume after the
+ * called routine returns.
+ * <p/>
+ * An instruction whose stack space, stack operands or data addresses are
+ * not plainly in range also leaves the region, before it changes anything,
+ * so that the interpreter grows the data store or fails it.
+ */
+final class RoutineCompiler {
+
+    // largest region translated, in TAM instructions, which keeps the
+    // method well within the 32K reach of JVM branches
+    final static int maxRegionSize = 800;
+
+    private final static String
+            vmClass = "TAM/TamVM",
+            superClass = "TAM/CompiledRoutine",
+            executeDescriptor = "(LTAM/TamVM;II)I";
+
+    // JVM local variables of execute
+    private final static int
+            vmVar = 1, entryVar = 2, budgetVar = 3, dataVar = 4, maskVar = 5,
+            stVar = 6, lbVar = 7, stepsVar = 8, roomVar = 9, addrVar = 10,
+            indexVar = 11, cpVar = 12, tempVar = 13, displayVar = 15,
+            maxLocals = 16, maxStack = 12;
+
+    private final TamVM vm;
+
+    private boolean[] inRegion;
+    private int[] entryPoints;
+    private ClassFile.Code code;
+    private ClassFile.Label[] labels;
+    private HashMap<Integer, ClassFile.Label> exits;
+    private ClassFile.Label exit;
+
+    RoutineCompiler(TamVM vm) {
+        this.vm = vm;
+    }
+
+
+// REGION
+
+    // Returns the primitive displacement called by the CALL instruction at
+    // addr, or -1 if it calls a routine or its target is not known.
+    private int primitiveCalled(int addr) {
+        int r = vm.codeR[addr], d = vm.codeD[addr];
+
+        if ((r == Machine.PBr) && (d >= 0))
+            return d;
+        else if ((r == Machine.CBr) && (d >= vm.PB))
+            return d - vm.PB;
+        else
+            return -1;
+    }
+
+    // Returns the target of the JUMP or JUMPIF instruction at addr, or -1
+    // if it is not a code store address known before run time.
+    private int jumpTarget(int addr) {
+        int d = vm.codeD[addr];
+        if ((vm.codeR[addr] == Machine.CBr) && (TamVM.CB <= d) && (d < vm.CT))
+            return d;
+        else
+            return -1;
+    }
+
+    // Returns true iff the instruction at addr is translated rather than
+    // left to the interpreter.
+    private boolean translated(int addr) {
+        switch (vm.codeOp[addr]) {
+            case Machine.LOADop:
+            case Machine.LOADAop:
+            case Machine.LOADIop:
+            case Machine.LOADLop:
+            case Machine.STOREop:
+            case Machine.STOREIop:
+            case Machine.RETURNop:
+            case Machine.PUSHop:
+            case Machine.POPop:
+            case Machine.HALTop:
+                return true;
+            case Machine.CALLop:
+                return primitiveCalled(addr) >= 0;
+            case Machine.JUMPop:
+            case Machine.JUMPIFop:
+                return jumpTarget(addr) >= 0;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean fallsThrough(int op) {
+        return (op != Machine.JUMPop) && (op != Machine.RETURNop) && (op != Machine.HALTop);
+    }
+
+    /**
+     * Finds the region starting at entry. Returns false if there is nothing
+     * worth translating there.
+     */
+    boolean discover(int entry) {
+        inRegion = new boolean[vm.CT - TamVM.CB];
+        boolean[] isEntry = new boolean[inRegion.length];
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        int size = 0, translatedSize = 0;
+
+        pending.push(entry);
+        isEntry[entry - TamVM.CB] = true;
+        while (!pending.isEmpty() && (size < maxRegionSize)) {
+            int addr = pending.pop();
+            if ((addr < TamVM.CB) || (addr >= vm.CT) || inRegion[addr - TamVM.CB])
+                continue;
+            inRegion[addr - TamVM.CB] = true;
+            size = size + 1;
+
+            int op = vm.codeOp[addr];
+            if (translated(addr)) {
+                translatedSize = translatedSize + 1;
+                if ((op == Machine.JUMPop) || (op == Machine.JUMPIFop))
+                    pending.push(jumpTarget(addr));
+                if (fallsThrough(op))
+                    pending.push(addr + 1);
+            } else if ((op == Machine.CALLop) || (op == Machine.CALLIop)) {
+                // resume here when the routine returns
+                if (addr + 1 < vm.CT) {
+                    isEntry[addr + 1 - TamVM.CB] = true;
+                    pending.push(addr + 1);
+                }
+            }
+        }
+
+        int count = 0;
+        entryPoints = new int[inRegion.length];
+        for (int i = 0; i < inRegion.length; i++)
+            if (isEntry[i] && inRegion[i])
+                entryPoints[count++] = TamVM.CB + i;
+        entryPoints = Arrays.copyOf(entryPoints, count);
+        return translatedSize > 0;
+    }
+
+    /**
+     * Returns the code addresses at which the region found by discover can
+     * be entered, in ascending order.
+     */
+    int[] getEntryPoints() {
+        return entryPoints;
+    }
+
+
+// CODE GENERATION
+
+    /**
+     * Translates the region found by discover into a complete class file
+     * for a subclass of CompiledRoutine called className.
+     */
+    byte[] compile(String className) {
+        ClassFile classFile = new ClassFile(className, superClass);
+
+        ClassFile.Code init = classFile.method(ACC_PUBLIC, "<init>", "()V", 1, 1);
+        init.var(ALOAD, 0);
+        init.invoke(INVOKESPECIAL, superClass, "<init>", "()V");
+        init.op(RETURN);
+
+        translate(classFile.method(0, "execute", executeDescriptor, maxStack, maxLocals));
+        return classFile.toByteArray();
+    }
+
+    private void translate(ClassFile.Code code) {
+        this.code = code;
+        labels = new ClassFile.Label[inRegion.length];
+        exits = new HashMap<Integer, ClassFile.Label>();
+        exit = code.label();
+
+        for (int i = 0; i < inRegion.length; i++)
+            if (inRegion[i])
+                labels[i] = code.label();
+
+        // Cache the registers in locals ...
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "ST", "I");
+        code.var(ISTORE, stVar);
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "LB", "I");
+        code.var(ISTORE, lbVar);
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "display", "[I");
+        code.var(ASTORE, displayVar);
+        code.iconst(0);
+        code.var(ISTORE, stepsVar);
+        ClassFile.Label unknown = code.label();
+        extendDisplay(displayLevels(), unknown);
+        reloadData();
+
+        // ... and dispatch on the entry point.
+        ClassFile.Label[] targets = new ClassFile.Label[entryPoints.length];
+        for (int i = 0; i < entryPoints.length; i++)
+            targets[i] = labels[entryPoints[i] - TamVM.CB];
+        code.var(ILOAD, entryVar);
+        code.lookupswitch(entryPoints, targets, unknown);
+        code.mark(unknown);
+        code.var(ILOAD, entryVar);
+        code.var(ISTORE, cpVar);
+        code.jump(GOTO, exit);
+
+        for (int addr = TamVM.CB; addr < vm.CT; addr++)
+            if (inRegion[addr - TamVM.CB]) {
+                code.mark(labels[addr - TamVM.CB]);
+                if (translated(addr)) {
+                    instruction(addr);
+                    if (fallsThrough(vm.codeOp[addr]) && !inRegion(addr + 1))
+                        code.jump(GOTO, exitAt(addr + 1));
+                } else
+                    code.jump(GOTO, exitAt(addr));
+            }
+
+        // Leave the region with CP in cpVar, writing the registers back.
+        code.mark(exit);
+        code.var(ALOAD, vmVar);
+        code.var(ILOAD, stVar);
+        code.field(PUTFIELD, vmClass, "ST", "I");
+        code.var(ALOAD, vmVar);
+        code.var(ILOAD, lbVar);
+        code.field(PUTFIELD, vmClass, "LB", "I");
+        code.var(ALOAD, vmVar);
+        code.var(ILOAD, cpVar);
+        code.field(PUTFIELD, vmClass, "CP", "I");
+        code.var(ILOAD, stepsVar);
+        code.op(IRETURN);
+
+        for (Integer addr : exits.keySet()) {
+            code.mark(exits.get(addr));
+            code.iconst(addr);
+            code.var(ISTORE, cpVar);
+            code.jump(GOTO, exit);
+        }
+    }
+
+    // Returns the highest display level, Lk, addressed in the region.
+    private int displayLevels() {
+        int levels = 0, op, r;
+
+        for (int addr = TamVM.CB; addr < vm.CT; addr++)
+            if (inRegion[addr - TamVM.CB]) {
+                op = vm.codeOp[addr];
+                r = vm.codeR[addr];
+                if (((op == Machine.LOADop) || (op == Machine.LOADAop) || (op == Machine.STOREop))
+                        && (Machine.L1r <= r) && (r <= Machine.L6r))
+                    levels = Math.max(levels, r - Machine.LBr);
+            }
+        return levels;
+    }
+
+    // Makes sure the display reaches the given level, or goes to failed if
+    // a static link is not a data address. LB does not change inside a
+    // region, so the display then serves the whole of it.
+    private void extendDisplay(int level, ClassFile.Label failed) {
+        ClassFile.Label extended;
+
+        if (level == 0)
+            return;
+        extended = code.label();
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "displayDepth", "I");
+        code.iconst(level);
+        code.jump(IF_ICMPGE, extended);
+        code.var(ALOAD, vmVar);
+        code.iconst(level);
+        code.invoke(INVOKEVIRTUAL, vmClass, "extendDisplay", "(I)I");
+        code.op(POP);
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "status", "I");
+        code.jump(IFNE, failed);
+        code.mark(extended);
+    }
+
+    // Returns true iff addr lies in the region found by discover.
+    boolean inRegion(int addr) {
+        return (TamVM.CB <= addr) && (addr < vm.CT) && inRegion[addr - TamVM.CB];
+    }
+
+    // Returns the label of code that leaves the region with CP = addr.
+    private ClassFile.Label exitAt(int addr) {
+        ClassFile.Label label = exits.get(addr);
+        if (label == null) {
+            label = code.label();
+            exits.put(addr, label);
+        }
+        return label;
+    }
+
+    // Returns the label at which to continue with the instruction at addr.
+    private ClassFile.Label target(int addr) {
+        return inRegion(addr) ? labels[addr - TamVM.CB] : exitAt(addr);
+    }
+
+    // Reloads the data array and its mask, which may have been replaced,
+    // and the highest value of ST that needs no call of checkSpace.
+    private void reloadData() {
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "data", "[I");
+        code.var(ASTORE, dataVar);
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "mask", "I");
+        code.var(ISTORE, maskVar);
+
+        // room = min(HT, SB + data.length - (HB - HT))
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "HT", "I");
+        code.var(ALOAD, dataVar);
+        code.op(ARRAYLENGTH);
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "HB", "I");
+        code.op(ISUB);
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, "HT", "I");
+        code.op(IADD);
+        code.iconst(TamVM.SB);
+        code.op(IADD);
+        code.invoke(INVOKESTATIC, "java/lang/Math", "min", "(II)I");
+        code.var(ISTORE, roomVar);
+    }
+
+    // Leaves the region at addr, before its instruction is executed, unless
+    // ST + words <= room. The interpreter then deals with growing the data
+    // store, or with its exhaustion, exactly as it would have done anyway.
+    private void checkSpace(int addr, int words) {
+        code.var(ILOAD, stVar);
+        code.iconst(words);
+        code.op(IADD);
+        code.var(ILOAD, roomVar);
+        code.jump(IF_ICMPGT, exitAt(addr));
+    }
+
+    // Leaves the region at addr, before its instruction is executed, unless
+    // the stack holds at least the given number of words.
+    private void checkStack(int addr, int words) {
+        if (words <= 0)
+            return;
+        code.var(ILOAD, stVar);
+        code.iconst(TamVM.SB + words);
+        code.jump(IF_ICMPLT, exitAt(addr));
+    }
+
+    // Leaves the region at addr, before its instruction is executed, unless
+    // the given number of words from the address in addrVar lie below room,
+    // or in the heap, so that data[a & mask] is the word at a for each of
+    // them. The interpreter then commits the words, or fails the
+    // instruction, as it would have done anyway.
+    private void checkAddress(int addr, int words) {
+        ClassFile.Label checked = code.label();
+
+        if (words <= 0)
+            return;
+        code.var(ILOAD, addrVar);
+        code.iconst(TamVM.SB);
+        code.jump(IF_ICMPLT, exitAt(addr));
+        code.var(ILOAD, addrVar);
+        code.var(ILOAD, roomVar);
+        code.iconst(words);
+        code.op(ISUB);
+        code.jump(IF_ICMPLE, checked);
+        code.var(ILOAD, addrVar);
+        vmField("HT");
+        code.jump(IF_ICMPLT, exitAt(addr));
+        code.var(ILOAD, addrVar);
+        vmField("HB");
+        code.iconst(words);
+        code.op(ISUB);
+        code.jump(IF_ICMPGT, exitAt(addr));
+        code.mark(checked);
+    }
+
+    // Pushes the address of data[(local + offset) & mask] as an array
+    // reference and index.
+    private void element(int local, int offset) {
+        code.var(ALOAD, dataVar);
+        code.var(ILOAD, local);
+        if (offset != 0) {
+            code.iconst(offset);
+            code.op(IADD);
+        }
+        code.var(ILOAD, maskVar);
+        code.op(IAND);
+    }
+
+    private void loadElement(int local, int offset) {
+        element(local, offset);
+        code.op(IALOAD);
+    }
+
+    // Copies n words from the words at the address in local from to those
+    // at the address in local to, in ascending order like the interpreter.
+    private void copy(int from, int to, int n) {
+        if (n <= 4) {
+            for (int index = 0; index < n; index++) {
+                element(to, index);
+                loadElement(from, index);
+                code.op(IASTORE);
+            }
+        } else {
+            ClassFile.Label loop = code.label(), done = code.label();
+            code.iconst(0);
+            code.var(ISTORE, indexVar);
+            code.mark(loop);
+            code.var(ILOAD, indexVar);
+            code.iconst(n);
+            code.jump(IF_ICMPGE, done);
+            code.var(ALOAD, dataVar);
+            code.var(ILOAD, to);
+            code.var(ILOAD, indexVar);
+            code.op(IADD);
+            code.var(ILOAD, maskVar);
+            code.op(IAND);
+            code.var(ALOAD, dataVar);
+            code.var(ILOAD, from);
+            code.var(ILOAD, indexVar);
+            code.op(IADD);
+            code.var(ILOAD, maskVar);
+            code.op(IAND);
+            code.op(IALOAD);
+            code.op(IASTORE);
+            code.iinc(indexVar, 1);
+            code.jump(GOTO, loop);
+            code.mark(done);
+        }
+    }
+
+    // Pushes the content of register r, as seen by the instruction at addr.
+    private void content(int r, int addr) {
+        switch (r) {
+            case Machine.CBr:
+                code.iconst(TamVM.CB);
+                break;
+            case Machine.CTr:
+                vmField("CT");
+                break;
+            case Machine.PBr:
+                vmField("PB");
+                break;
+            case Machine.PTr:
+                vmField("PT");
+                break;
+            case Machine.SBr:
+                code.iconst(TamVM.SB);
+                break;
+            case Machine.STr:
+                code.var(ILOAD, stVar);
+                break;
+            case Machine.HBr:
+                vmField("HB");
+                break;
+            case Machine.HTr:
+                vmField("HT");
+                break;
+            case Machine.CPr:
+                code.iconst(addr);
+                break;
+            default:
+                if (r == Machine.LBr)
+                    code.var(ILOAD, lbVar);
+                else if ((Machine.L1r <= r) && (r <= Machine.L6r)) {
+                    // extended up to here on entry to the region
+                    code.var(ALOAD, displayVar);
+                    code.iconst(r - Machine.LBr);
+                    code.op(IALOAD);
+                } else
+                    code.iconst(0);
+        }
+    }
+
+    private void vmField(String name) {
+        code.var(ALOAD, vmVar);
+        code.field(GETFIELD, vmClass, name, "I");
+    }
+
+    // Sets addrVar to d + content(r).
+    private void address(int r, int d, int addr) {
+        content(r, addr);
+        code.iconst(d);
+        code.op(IADD);
+        code.var(ISTORE, addrVar);
+    }
+
+    // Checks the instruction budget before a jump back to target.
+    private void checkBudget(int target) {
+        code.var(ILOAD, stepsVar);
+        code.var(ILOAD, budgetVar);
+        code.jump(IF_ICMPGE, exitAt(target));
+    }
+
+    private void instruction(int addr) {
+        int op = vm.codeOp[addr], r = vm.codeR[addr], n = vm.codeN[addr], d = vm.codeD[addr];
+        int target;
+
+        // Space, stack operands and addresses are checked before anything
+        // changes, so that the interpreter can take over. Addresses are left
+        // in addrVar.
+        switch (op) {
+            case Machine.LOADop:
+                checkSpace(addr, n);
+                address(r, d, addr);
+                checkAddress(addr, n);
+                break;
+            case Machine.LOADAop:
+            case Machine.LOADLop:
+                checkSpace(addr, 1);
+                break;
+            case Machine.LOADIop:
+                checkSpace(addr, n - 1);
+                checkStack(addr, 1);
+                loadElement(stVar, -1);
+                code.var(ISTORE, addrVar);
+                checkAddress(addr, n);
+                break;
+            case Machine.STOREop:
+                checkStack(addr, n);
+                address(r, d, addr);
+                checkAddress(addr, n);
+                break;
+            case Machine.STOREIop:
+                checkStack(addr, n + 1);
+                loadElement(stVar, -1);
+                code.var(ISTORE, addrVar);
+                checkAddress(addr, n);
+                break;
+            case Machine.CALLop:
+                if (primitiveCalled(addr) < Verifier.primitiveArguments.length)
+                    checkStack(addr, Verifier.primitiveArguments[primitiveCalled(addr)]);
+                break;
+            case Machine.RETURNop:
+                checkStack(addr, n);
+                code.var(ILOAD, lbVar);
+                code.iconst(1);
+                code.op(IADD);
+                code.var(ISTORE, addrVar);
+                checkAddress(addr, 2);
+                code.var(ILOAD, lbVar);
+                code.iconst(d);
+                code.op(ISUB);
+                code.var(ISTORE, addrVar);
+                checkAddress(addr, n);
+                break;
+            case Machine.PUSHop:
+                checkSpace(addr, d);
+                checkStack(addr, -d);
+                break;
+            case Machine.POPop:
+                checkStack(addr, n);
+                code.var(ILOAD, stVar);
+                code.iconst(n + d);
+                code.op(ISUB);
+                code.var(ISTORE, addrVar);
+                checkAddress(addr, n);
+                break;
+            case Machine.JUMPIFop:
+                checkStack(addr, 1);
+                break;
+        }
+        code.iinc(stepsVar, 1);
+
+        switch (op) {
+            case Machine.LOADop:
+                copy(addrVar, stVar, n);
+                code.iinc(stVar, n);
+                break;
+            case Machine.LOADAop:
+                element(stVar, 0);
+                content(r, addr);
+                code.iconst(d);
+                code.op(IADD);
+                code.op(IASTORE);
+                code.iinc(stVar, 1);
+                break;
+            case Machine.LOADIop:
+                code.iinc(stVar, -1);
+                copy(addrVar, stVar, n);
+                code.iinc(stVar, n);
+                break;
+            case Machine.LOADLop:
+                element(stVar, 0);
+                code.iconst(d);
+                code.op(IASTORE);
+                code.iinc(stVar, 1);
+                break;
+            case Machine.STOREop:
+                code.iinc(stVar, -n);
+                copy(stVar, addrVar, n);
+                break;
+            case Machine.STOREIop:
+                code.iinc(stVar, -1 - n);
+                copy(stVar, addrVar, n);
+                break;
+            case Machine.CALLop:
+                primitive(primitiveCalled(addr), addr);
+                break;
+            case Machine.RETURNop:
+                loadElement(lbVar, 2);
+                code.var(ISTORE, cpVar);
+                loadElement(lbVar, 1);
+                code.var(ISTORE, lbVar);
+                code.iinc(stVar, -n);
+                copy(stVar, addrVar, n);
+                code.var(ILOAD, addrVar);
+                code.iconst(n);
+                code.op(IADD);
+                code.var(ISTORE, stVar);
+                code.jump(GOTO, exit);
+                break;
+            case Machine.PUSHop:
+                code.iinc(stVar, d);
+                break;
+            case Machine.POPop:
+                code.iinc(stVar, -n);
+                copy(stVar, addrVar, n);
+                code.var(ILOAD, addrVar);
+                code.iconst(n);
+                code.op(IADD);
+                code.var(ISTORE, stVar);
+                break;
+            case Machine.JUMPop:
+                target = jumpTarget(addr);
+                if (target <= addr)
+                    checkBudget(target);
+                code.jump(GOTO, target(target));
+                break;
+            case Machine.JUMPIFop:
+                target = jumpTarget(addr);
+                code.iinc(stVar, -1);
+                loadElement(stVar, 0);
+                code.iconst(n);
+                if (target <= addr) {
+                    ClassFile.Label notTaken = code.label();
+                    code.jump(IF_ICMPNE, notTaken);
+                    checkBudget(target);
+                    code.jump(GOTO, target(target));
+                    code.mark(notTaken);
+                } else
+                    code.jump(IF_ICMPEQ, target(target));
+                break;
+            case Machine.HALTop:
+                code.var(ALOAD, vmVar);
+                code.iconst(TamVM.halted);
+                code.field(PUTFIELD, vmClass, "status", "I");
+                code.jump(GOTO, exitAt(addr));
+                break;
+        }
+    }
+
+    // Translates a call of the given primitive routine by the instruction
+    // at addr.
+    private void primitive(int displacement, int addr) {
+        switch (displacement) {
+            case Machine.idDisplacement:
+                break;
+            case Machine.notDisplacement:
+                element(stVar, -1);
+                code.op(DUP2);
+                code.op(IALOAD);
+                isTrue();
+                code.iconst(1);
+                code.op(IXOR);
+                code.op(IASTORE);
+                break;
+            case Machine.andDisplacement:
+            case Machine.orDisplacement:
+                code.iinc(stVar, -1);
+                element(stVar, -1);
+                loadElement(stVar, -1);
+                isTrue();
+                loadElement(stVar, 0);
+                isTrue();
+                code.op((displacement == Machine.andDisplacement) ? IAND : IOR);
+                code.op(IASTORE);
+                break;
+            case Machine.succDisplacement:
+            case Machine.predDisplacement:
+                loadElement(stVar, -1);
+                code.op(I2L);
+                code.lconst(1);
+                code.op((displacement == Machine.succDisplacement) ? LADD : LSUB);
+                storeChecked(addr);
+                break;
+            case Machine.negDisplacement:
+                element(stVar, -1);
+                code.op(DUP2);
+                code.op(IALOAD);
+                code.op(INEG);
+                code.op(IASTORE);
+                break;
+            case Machine.addDisplacement:
+            case Machine.subDisplacement:
+            case Machine.multDisplacement:
+                code.iinc(stVar, -1);
+                loadElement(stVar, -1);
+                code.op(I2L);
+                loadElement(stVar, 0);
+                code.op(I2L);
+                code.op((displacement == Machine.addDisplacement) ? LADD
+                        : (displacement == Machine.subDisplacement) ? LSUB : LMUL);
+                storeChecked(addr);
+                break;
+            case Machine.divDisplacement:
+            case Machine.modDisplacement:
+                ClassFile.Label zeroDivide = code.label(), divided = code.label();
+                code.iinc(stVar, -1);
+                loadElement(stVar, 0);
+                code.jump(IFEQ, zeroDivide);
+                element(stVar, -1);
+                loadElement(stVar, -1);
+                loadElement(stVar, 0);
+                code.op((displacement == Machine.divDisplacement) ? IDIV : IREM);
+                code.op(IASTORE);
+                code.jump(GOTO, divided);
+                code.mark(zeroDivide);
+                fail(TamVM.failedZeroDivide, addr);
+                code.mark(divided);
+                break;
+            case Machine.ltDisplacement:
+                compare(IF_ICMPLT);
+                break;
+            case Machine.leDisplacement:
+                compare(IF_ICMPLE);
+                break;
+            case Machine.geDisplacement:
+                compare(IF_ICMPGE);
+                break;
+            case Machine.gtDisplacement:
+                compare(IF_ICMPGT);
+                break;
+            default:
+                // through the interpreter's own implementation
+                code.var(ALOAD, vmVar);
+                code.var(ILOAD, stVar);
+                code.field(PUTFIELD, vmClass, "ST", "I");
+                code.var(ALOAD, vmVar);
+                code.iconst(displacement);
+                code.invoke(INVOKEVIRTUAL, vmClass, "callPrimitive", "(I)V");
+                code.var(ALOAD, vmVar);
+                code.field(GETFIELD, vmClass, "ST", "I");
+                code.var(ISTORE, stVar);
+                reloadData();
+                code.var(ALOAD, vmVar);
+                code.field(GETFIELD, vmClass, "status", "I");
+                code.jump(IFNE, exitAt(addr + 1));
+        }
+    }
+
+    // Converts the datum on top of the JVM stack to trueRep or falseRep.
+    private void isTrue() {
+        ClassFile.Label isFalse = code.label(), done = code.label();
+        code.iconst(Machine.trueRep);
+        code.jump(IF_ICMPNE, isFalse);
+        code.iconst(Machine.trueRep);
+        code.jump(GOTO, done);
+        code.mark(isFalse);
+        code.iconst(Machine.falseRep);
+        code.mark(done);
+    }
+
+    // Replaces the top two words of the stack by the truth value of
+    // comparing them with the given JVM branch instruction.
+    private void compare(int branch) {
+        ClassFile.Label isTrue = code.label(), done = code.label();
+        code.iinc(stVar, -1);
+        element(stVar, -1);
+        loadElement(stVar, -1);
+        loadElement(stVar, 0);
+        code.jump(branch, isTrue);
+        code.iconst(Machine.falseRep);
+        code.jump(GOTO, done);
+        code.mark(isTrue);
+        code.iconst(Machine.trueRep);
+        code.mark(done);
+        code.op(IASTORE);
+    }
+
+    // Stores the long on top of the JVM stack into the top word of the
+    // stack, failing with overflow, like overflowChecked, if it does not fit.
+    private void storeChecked(int addr) {
+        ClassFile.Label overflow = code.label(), stored = code.label();
+        code.var(LSTORE, tempVar);
+        code.var(LLOAD, tempVar);
+        code.lconst(Machine.maxintRep);
+        code.op(LCMP);
+        code.jump(IFGT, overflow);
+        code.var(LLOAD, tempVar);
+        code.lconst(-Machine.maxintRep);
+        code.op(LCMP);
+        code.jump(IFLT, overflow);
+        element(stVar, -1);
+        code.var(LLOAD, tempVar);
+        code.op(L2I);
+        code.op(IASTORE);
+        code.jump(GOTO, stored);
+        code.mark(overflow);
+        element(stVar, -1);
+        code.iconst(0);
+        code.op(IASTORE);
+        fail(TamVM.failedOverflow, addr);
+        code.mark(stored);
+    }
+
+    // Sets the status and leaves the region after the instruction at addr.
+    private void fail(int status, int addr) {
+        code.var(ALOAD, vmVar);
+        code.iconst(status);
+        code.field(PUTFIELD, vmClass, "status", "I");
+        code.jump(GOTO, exitAt(addr + 1));
+    }
+}
@@ -0,0 +1,165 @@
+package TAM;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs any number of {@link TamVM}s on a fixed number of carrier threads,
+ * each machine for a quantum of instructions at a time, in turn.
+ * <p/>
+ * A machine reading from a fed {@link InputChannel} stops when the input
+ * it needs has not arrived yet. It is then parked, taking up no carrier
+ * thread, until bytes are offered to its channel or the channel is closed.
+ * Many mostly idle interactive programs can thus share a few threads.
+ * <p/>
+ * For example:
+ * <pre>
+ *   Scheduler scheduler = new Scheduler(4, Scheduler.defaultQuantum);
+ *   InputChannel input = new InputChannel();
+ *   vm.setInput(input);
+ *   CompletableFuture&lt;Integer&gt; status = scheduler.submit(vm);
+ *   input.offer("42\n".getBytes());
+ * </pre>
+ * A machine must not be run by anyone else, nor have its input replaced,
+ * until its future has completed.
+ */
+public class Scheduler {
+
+    public final static long defaultQuantum = 10000;
+
+    private final static int
+            ready = 0, parked = 1;
+
+    private final ExecutorService carriers;
+    private final long quantum;
+
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicLong quanta = new AtomicLong(), parks = new AtomicLong();
+
+    // A machine and its outcome. It is on the carriers' queue, or running,
+    // while ready, and on no queue while parked.
+    private final class Task implements Runnable {
+
+        final TamVM vm;
+        final CompletableFuture<Integer> done = new CompletableFuture<Integer>();
+        final AtomicInteger state = new AtomicInteger(ready);
+
+        Task(TamVM vm) {
+            this.vm = vm;
+        }
+
+        public void run() {
+            int status;
+
+            try {
+                status = vm.run(quantum);
+            } catch (RuntimeException s) {
+                finish();
+                done.completeExceptionally(s);
+                return;
+            }
+            quanta.incrementAndGet();
+
+            if (status == TamVM.running)
+                schedule(this);
+            else if (status == TamVM.waitingForInput) {
+                parks.incrementAndGet();
+                state.set(parked);
+                // the input may have arrived since the machine stopped
+                if (vm.inputReady(vm.waitingPrimitive))
+                    wake();
+            } else {
+                finish();
+                done.complete(status);
+            }
+        }
+
+        // Called whenever input arrives for the machine.
+        void wake() {
+            if (state.compareAndSet(parked, ready))
+                schedule(this);
+        }
+
+        void finish() {
+            vm.input.listener = null;
+            live.decrementAndGet();
+        }
+    }
+
+    /**
+     * Creates a scheduler with the given number of carrier threads, which
+     * runs each machine for quantum instructions before the next one.
+     */
+    public Scheduler(int carrierCount, long quantum) {
+        if (carrierCount <= 0)
+            throw new IllegalArgumentException("invalid number of carrier threads " + carrierCount);
+        if (quantum <= 0)
+            throw new IllegalArgumentException("invalid quantum " + quantum);
+        this.quantum = quantum;
+        carriers = Executors.newFixedThreadPool(carrierCount);
+    }
+
+    /**
+     * Runs the program loaded into vm, from where it stands, until it
+     * halts or fails. The future completes with the final status.
+     */
+    public CompletableFuture<Integer> submit(TamVM vm) {
+        final Task task = new Task(vm);
+
+        live.incrementAndGet();
+        vm.input.listener = new Runnable() {
+            public void run() {
+                task.wake();
+            }
+        };
+        schedule(task);
+        return task.done;
+    }
+
+    // Queues task for its next quantum, or cancels it once the scheduler
+    // has been shut down.
+    private void schedule(Task task) {
+        try {
+            carriers.execute(task);
+        } catch (RejectedExecutionException s) {
+            task.finish();
+            task.done.cancel(false);
+        }
+    }
+
+    /**
+     * Stops the carrier threads once the machines still queued have had
+     * their quantum. The futures of machines that have not finished by then
+     * are cancelled when they next become ready.
+     */
+    public void shutdown() {
+        carriers.shutdown();
+    }
+
+
+// STATISTICS
+
+    /**
+     * Returns the number of machines submitted that have not yet halted
+     * or failed.
+     */
+    public int getLiveMachines() {
+        return live.get();
+    }
+
+    public long getQuanta() {
+        return quanta.get();
+    }
+
+    /**
+     * Returns the number of times that a machine has been parked waiting
+     * for input.
+     */
+    public long getParks() {
+        return parks.get();
+    }
+}
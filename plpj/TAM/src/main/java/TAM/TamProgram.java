@@ -0,0 +1,67 @@
+package TAM;
+
+import java.io.IOException;
+
+/**
+ * A TAM object program decoded and verified for a code store of a given
+ * size, ready to be loaded into any number of {@link TamVM}s with that
+ * code store size, on any threads, by {@link TamVM#load(TamProgram)}.
+ * <p/>
+ * A program never changes once made, so the machines share its arrays
+ * rather than copying them. The register form of its code, used by
+ * {@link TamVM#setRegisterTranslation}, is translated once, when the first
+ * machine asks for it, and then shared as well.
+ */
+public final class TamProgram {
+
+    final int codeStoreSize;
+    final int length;
+
+    // as in TamVM
+    final int[] codeOp, codeR, codeN, codeD;
+    final int[] headroom, footroom;
+
+    private RegisterCode registerCode;
+
+    // Takes the program loaded into vm, whose arrays are replaced rather
+    // than changed when it loads another.
+    TamProgram(TamVM vm) {
+        codeStoreSize = vm.PB - TamVM.CB;
+        length = vm.CT - TamVM.CB;
+        codeOp = vm.codeOp;
+        codeR = vm.codeR;
+        codeN = vm.codeN;
+        codeD = vm.codeD;
+        headroom = vm.headroom;
+        footroom = vm.footroom;
+    }
+
+    /**
+     * Decodes and verifies a TAM object program, in either format read by
+     * {@link ObjectFile}, for a code store of codeStoreSize instructions.
+     */
+    public static TamProgram decode(byte[] objectProgram, int codeStoreSize) throws IOException {
+        TamVM vm = new TamVM(codeStoreSize, 1);
+        vm.load(objectProgram);
+        return new TamProgram(vm);
+    }
+
+    /**
+     * Returns the number of instructions in the program.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getCodeStoreSize() {
+        return codeStoreSize;
+    }
+
+    // Returns the register form of the program, translating it from vm,
+    // into which the program has been loaded, if no machine has before.
+    synchronized RegisterCode registerCode(TamVM vm) {
+        if (registerCode == null)
+            registerCode = new RegisterCode(vm);
+        return registerCode;
+    }
+}
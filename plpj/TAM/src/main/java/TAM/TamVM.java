@@ -0,0 +1,1528 @@
+/*
+ * Holds code moved out of Interpreter.java.
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package TAM;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A Triangle Abstract Machine with its own code store, data store,
+ * registers and I/O streams.
+ * <p/>
+ * Nothing is shared between instances, so any number of programs may be
+ * loaded and run side by side, each on its own thread. A single machine
+ * is not thread-safe.
+ * <p/>
+ * For example:
+ * <pre>
+ *   TamVM vm = new TamVM();
+ *   vm.load(objectProgram);
+ *   vm.run();
+ * </pre>
+ */
+public class TamVM {
+
+
+    final static int
+            CB = 0,
+            SB = 0;
+
+    // STORE SIZES
+    public final static int
+            defaultDataStoreSize = 1024,
+            maxStoreSize = 1 << 30;
+
+    // words of the data store committed when the machine is created
+    final static int
+            initialDataSize = 1024;
+
+
+    // DATA STORE
+    // status values
+    public final static int
+            running = 0, halted = 1, failedDataStoreFull = 2, failedInvalidCodeAddress = 3,
+            failedInvalidInstruction = 4, failedOverflow = 5, failedZeroDivide = 6,
+            failedIOError = 7, waitingForInput = 8, failedInvalidDataAddress = 9;
+
+
+    // CODE STORE, DECODED
+    // One array per instruction field, indexed by code address.
+    int[] codeOp, codeR, codeN, codeD;
+
+    // words by which the stack can grow, and shrink, from each code address
+    // before its routine returns, or -1 where the Verifier did not pass the
+    // routine
+    int[] headroom, footroom;
+
+    // CODE STORE REGISTERS
+    // PB = CB + size of the code store, so primitive routines follow the code.
+    final int
+            PB, PT;
+
+    // DATA STORE REGISTERS AND OTHER REGISTERS
+    // HB = SB + size of the data store, rounded up to a power of two.
+    //
+    // The data store is committed lazily: data holds only a power-of-two
+    // number of words, and address a lives in data[a & mask]. Because HB is
+    // a multiple of data.length, the stack occupies the bottom of data and
+    // the heap its top, and checkSpace grows data before the two would meet.
+    final int HB;
+    int[] data;
+    int mask;
+    int
+            CT, CP, ST, HT, LB, status;
+    long
+            accumulator;
+    int currentChar;
+
+    // the input primitive to call again once its input has arrived, while
+    // the status is waitingForInput
+    int waitingPrimitive;
+
+    // DISPLAY
+    // display[k] holds the content of the pseudo-register Lk, the frame k
+    // static links out from LB, for k = 1 .. displayDepth. CALL and RETURN
+    // carry the display over from the caller or callee where the static
+    // links allow, and the rest is filled in only when it is used.
+    final int[] display = new int[Machine.L6r - Machine.LBr + 1];
+    int displayDepth;
+
+    // number of instructions executed since the program was loaded
+    long instructionCount;
+
+    // allocator for new and dispose
+    final HeapManager heap;
+
+    // true iff unreachable heap blocks are to be collected when the data
+    // store would otherwise be full
+    boolean garbageCollection;
+
+    // compiling tier, or null when only interpreting
+    JitCompiler jit;
+
+    // register form of the verified code, or null; not used while jit
+    // compiles code
+    RegisterCode registerCode;
+    int[] registerFile;
+
+    // the program loaded, if loaded as a TamProgram, otherwise null
+    TamProgram program;
+
+    // records the execution profile, or null
+    Profiler profiler;
+
+    // standard input and output of the running program
+    InputChannel input;
+    OutputChannel output;
+
+    public TamVM() {
+        this(Machine.PB - Machine.CB, defaultDataStoreSize);
+    }
+
+    public TamVM(int codeStoreSize, int dataStoreSize) {
+        // Creates a machine whose code store holds up to codeStoreSize
+        // instructions, and whose data store holds up to dataStoreSize words
+        // (rounded up to a power of two).
+
+        if ((codeStoreSize <= 0) || (codeStoreSize > maxStoreSize))
+            throw new IllegalArgumentException("invalid code store size " + codeStoreSize);
+        if ((dataStoreSize <= 0) || (dataStoreSize > maxStoreSize))
+            throw new IllegalArgumentException("invalid data store size " + dataStoreSize);
+
+        PB = CB + codeStoreSize;
+        PT = PB + (Machine.PT - Machine.PB);
+        HB = SB + Integer.highestOneBit(2 * dataStoreSize - 1);
+        data = new int[Math.min(HB - SB, initialDataSize)];
+        mask = data.length - 1;
+        heap = new HeapManager(this);
+
+        setInput(System.in);
+        setOutput(System.out);
+        codeOp = codeR = codeN = codeD = headroom = footroom = new int[0];
+        CT = CB;
+        reset();
+    }
+
+
+// PROGRAM STATUS
+
+    int content(int r) {
+        // Returns the current content of register r,
+        // even if r is one of the pseudo-registers L1..L6.
+
+        switch (r) {
+            case Machine.CBr:
+                return CB;
+            case Machine.CTr:
+                return CT;
+            case Machine.PBr:
+                return PB;
+            case Machine.PTr:
+                return PT;
+            case Machine.SBr:
+                return SB;
+            case Machine.STr:
+                return ST;
+            case Machine.HBr:
+                return HB;
+            case Machine.HTr:
+                return HT;
+            case Machine.LBr:
+                return LB;
+            case Machine.L1r:
+            case Machine.L2r:
+            case Machine.L3r:
+            case Machine.L4r:
+            case Machine.L5r:
+            case Machine.L6r:
+                if (r - Machine.LBr <= displayDepth)
+                    return display[r - Machine.LBr];
+                return extendDisplay(r - Machine.LBr);
+            case Machine.CPr:
+                return CP;
+            default:
+                return 0;
+        }
+    }
+
+    int extendDisplay(int level) {
+        // Follows static links until the display reaches the given level,
+        // and returns the content of that register. Signals failure, and
+        // returns 0, if a static link is not a data store address.
+        int frame = (displayDepth == 0) ? LB : display[displayDepth];
+
+        while (displayDepth < level) {
+            if (!addressable(frame, 1))
+                return 0;
+            frame = data[frame & mask];
+            displayDepth = displayDepth + 1;
+            display[displayDepth] = frame;
+        }
+        return display[level];
+    }
+
+    private void enterDisplay(int j) {
+        // Sets the display for the frame just pushed by a call whose static
+        // link was the caller's Lj (LB when j = 0). The new frame's Lk is
+        // then the caller's L(j+k-1).
+        int level;
+
+        if (j == 0) {
+            displayDepth = Math.min(displayDepth + 1, display.length - 1);
+            for (level = displayDepth; level > 1; level--)
+                display[level] = display[level - 1];
+            display[1] = data[LB & mask];
+        } else if ((0 < j) && (j <= displayDepth)) {
+            for (level = 1; j + level - 1 <= displayDepth; level++)
+                display[level] = display[j + level - 1];
+            displayDepth = displayDepth - j + 1;
+        } else
+            displayDepth = 0;
+    }
+
+    void returnDisplay() {
+        // Sets the display after a RETURN to LB. If the frame just left had
+        // LB as its static link, LB's Lk is that frame's L(k+1).
+        int level;
+
+        if ((displayDepth > 0) && (display[1] == LB)) {
+            displayDepth = displayDepth - 1;
+            for (level = 1; level <= displayDepth; level++)
+                display[level] = display[level + 1];
+        } else
+            displayDepth = 0;
+    }
+
+    public void dump() {
+        // Writes a summary of the machine state.
+        try {
+            writeDump();
+            output.flush();
+        } catch (IOException s) {
+            // nowhere left to report it
+        }
+    }
+
+    private void writeDump() throws IOException {
+        int
+                addr, staticLink, dynamicLink,
+                localRegNum;
+
+        output.putEol();
+        output.println("State of data store and registers:");
+        output.putEol();
+        if (HT == HB)
+            output.println("            |--------|          (heap is empty)");
+        else {
+            output.println("       HB-->");
+            output.println("            |--------|");
+            for (addr = HB - 1; addr >= HT; addr--) {
+                output.print(addr + ":");
+                if (addr == HT)
+                    output.print(" HT-->");
+                else
+                    output.print("      ");
+                output.println("|" + data[addr & mask] + "|");
+            }
+            output.println("            |--------|");
+        }
+        output.println("            |////////|");
+        output.println("            |////////|");
+        if (ST == SB)
+            output.println("            |--------|          (stack is empty)");
+        else {
+            dynamicLink = LB;
+            staticLink = LB;
+            localRegNum = Machine.LBr;
+            output.println("      ST--> |////////|");
+            output.println("            |--------|");
+            for (addr = ST - 1; addr >= SB; addr--) {
+                output.print(addr + ":");
+                if (addr == SB)
+                    output.print(" SB-->");
+                else if (addr == staticLink) {
+                    switch (localRegNum) {
+                        case Machine.LBr:
+                            output.print(" LB-->");
+                            break;
+                        case Machine.L1r:
+                            output.print(" L1-->");
+                            break;
+                        case Machine.L2r:
+                            output.print(" L2-->");
+                            break;
+                        case Machine.L3r:
+                            output.print(" L3-->");
+                            break;
+                        case Machine.L4r:
+                            output.print(" L4-->");
+                            break;
+                        case Machine.L5r:
+                            output.print(" L5-->");
+                            break;
+                        case Machine.L6r:
+                            output.print(" L6-->");
+                            break;
+                    }
+                    staticLink = data[addr & mask];
+                    localRegNum = localRegNum + 1;
+                } else
+                    output.print("      ");
+                if ((addr == dynamicLink) && (dynamicLink != SB))
+                    output.print("|SL=" + data[addr & mask] + "|");
+                else if ((addr == dynamicLink + 1) && (dynamicLink != SB))
+                    output.print("|DL=" + data[addr & mask] + "|");
+                else if ((addr == dynamicLink + 2) && (dynamicLink != SB))
+                    output.print("|RA=" + data[addr & mask] + "|");
+                else
+                    output.print("|" + data[addr & mask] + "|");
+                output.putEol();
+                if (addr == dynamicLink) {
+                    output.println("            |--------|");
+                    dynamicLink = data[(addr + 1) & mask];
+                }
+            }
+        }
+        output.putEol();
+    }
+
+
+// INTERPRETATION
+
+    public static String statusMessage(int status) {
+        // Returns an indication of whether and why a program has terminated.
+        switch (status) {
+            case running:
+                return "Program is running.";
+            case halted:
+                return "Program has halted normally.";
+            case failedDataStoreFull:
+                return "Program has failed due to exhaustion of Data Store.";
+            case failedInvalidCodeAddress:
+                return "Program has failed due to an invalid code address.";
+            case failedInvalidInstruction:
+                return "Program has failed due to an invalid instruction.";
+            case failedOverflow:
+                return "Program has failed due to overflow.";
+            case failedZeroDivide:
+                return "Program has failed due to division by zero.";
+            case failedIOError:
+                return "Program has failed due to an IO error.";
+            case waitingForInput:
+                return "Program is waiting for input.";
+            case failedInvalidDataAddress:
+                return "Program has failed due to an invalid data address.";
+            default:
+                return "";
+        }
+    }
+
+    public void showStatus() {
+        // Writes an indication of whether and why the program has terminated.
+        try {
+            output.putEol();
+            output.println(statusMessage(status));
+            output.flush();
+        } catch (IOException s) {
+            // nowhere left to report it
+        }
+        if (status != halted)
+            dump();
+    }
+
+    void checkSpace(int spaceNeeded) {
+        // Signals failure if there is not enough space to expand the stack or
+        // heap by spaceNeeded, even after collecting garbage if enabled.
+        // Otherwise makes sure that the data array is large enough for the
+        // expansion.
+
+        if ((HT - ST < spaceNeeded) && garbageCollection)
+            heap.collect();
+        reserveSpace(spaceNeeded);
+    }
+
+    void reserveSpace(int spaceNeeded) {
+        // As checkSpace, but without collecting garbage, for a caller that
+        // has just done so itself.
+
+        if (HT - ST < spaceNeeded)
+            status = failedDataStoreFull;
+        else if ((ST - SB) + (HB - HT) + spaceNeeded > data.length)
+            commit((ST - SB) + (HB - HT) + spaceNeeded);
+    }
+
+    private boolean fits(int addr, int pushed) {
+        // Tests whether verified code can run from addr, once pushed more
+        // words are on the stack, until its routine returns. If so, makes
+        // sure that the data array is large enough for it to do so.
+
+        int spaceNeeded;
+
+        if ((addr < CB) || (addr >= CT) || (headroom[addr] < 0))
+            return false;
+        if ((ST + pushed) - SB < footroom[addr])
+            return false;
+        spaceNeeded = pushed + headroom[addr];
+        if (HT - ST < spaceNeeded)
+            return false;
+        if ((ST - SB) + (HB - HT) + spaceNeeded > data.length)
+            commit((ST - SB) + (HB - HT) + spaceNeeded);
+        return true;
+    }
+
+    boolean onStack(int words) {
+        // Signals failure if the stack holds fewer than the given number of
+        // words, for an instruction about to take them off.
+
+        if (ST - SB >= words)
+            return true;
+        status = failedInvalidDataAddress;
+        return false;
+    }
+
+    boolean addressable(int addr, int size) {
+        // Signals failure if the size words from addr do not all lie in the
+        // data store. Otherwise makes sure that data holds each of them,
+        // committing the part of the gap between stack and heap they fall
+        // into, so that data[a & mask] is the word at a and no other.
+
+        if (size <= 0)
+            return true;
+        if ((addr >= SB) && (addr <= SB + data.length - (HB - HT) - size))
+            return true;
+        if ((addr >= HT) && (addr <= HB - size))
+            return true;
+        if ((addr < SB) || (addr > HB - size)) {
+            status = failedInvalidDataAddress;
+            return false;
+        }
+        commit((addr + size > HT) ? HB - SB : (addr + size - SB) + (HB - HT));
+        return true;
+    }
+
+    void commit(int wordsInUse) {
+        // Grows the data array to the smallest power of two that is at least
+        // wordsInUse, keeping the stack at its bottom and the heap at its top.
+        // Everything below the heap is kept, not only the words below ST,
+        // since some instructions read words just popped.
+
+        int capacity = data.length;
+        while (capacity < wordsInUse)
+            capacity = 2 * capacity;
+
+        int[] newData = new int[capacity];
+        int heapSize = HB - HT;
+        System.arraycopy(data, 0, newData, 0, data.length - heapSize);
+        System.arraycopy(data, data.length - heapSize, newData, capacity - heapSize, heapSize);
+
+        data = newData;
+        mask = capacity - 1;
+    }
+
+    boolean isTrue(int datum) {
+        // Tests whether the given datum represents true.
+        return (datum == Machine.trueRep);
+    }
+
+    boolean equal(int size, int addr1, int addr2) {
+        // Tests whether two multi-word objects are equal, given their common
+        // size and their base addresses.
+
+        boolean eq;
+        int index;
+
+        eq = true;
+        index = 0;
+        while (eq && (index < size))
+            if (data[(addr1 + index) & mask] == data[(addr2 + index) & mask])
+                index = index + 1;
+            else
+                eq = false;
+        return eq;
+    }
+
+    int overflowChecked(long datum) {
+        // Signals failure if the datum is too large to fit into a single word,
+        // otherwise returns the datum as a single word.
+
+        if ((-Machine.maxintRep <= datum) && (datum <= Machine.maxintRep))
+            return (int) datum;
+        else {
+            status = failedOverflow;
+            return 0;
+        }
+    }
+
+    int toInt(boolean b) {
+        return b ? Machine.trueRep : Machine.falseRep;
+    }
+
+    int readInt() throws IOException {
+        int temp = 0;
+        int sign = 1;
+
+        do {
+            currentChar = input.read();
+        } while (Character.isWhitespace((char) currentChar));
+
+        if ((currentChar == '-') || (currentChar == '+'))
+            do {
+                sign = (currentChar == '-') ? -1 : 1;
+                currentChar = input.read();
+            } while ((currentChar == '-') || currentChar == '+');
+
+        if (Character.isDigit((char) currentChar))
+            do {
+                temp = temp * 10 + (currentChar - '0');
+                currentChar = input.read();
+            } while (Character.isDigit((char) currentChar));
+
+        return sign * temp;
+    }
+
+    boolean inputReady(int primitiveDisplacement) {
+        // Tests whether the given primitive routine can read all the input
+        // it needs without waiting for more to arrive, by going through the
+        // input ahead as get, geteol or getint (see readInt) would.
+
+        int offset = 0, ch;
+
+        if (!input.fed)
+            return true;
+        switch (primitiveDisplacement) {
+            case Machine.getDisplacement:
+                return input.peek(0) != InputChannel.pending;
+            case Machine.geteolDisplacement:
+                do
+                    ch = input.peek(offset++);
+                while ((ch != '\n') && (ch != -1) && (ch != InputChannel.pending));
+                return ch != InputChannel.pending;
+            case Machine.getintDisplacement:
+                do
+                    ch = input.peek(offset++);
+                while (Character.isWhitespace((char) ch));
+                while ((ch == '-') || (ch == '+'))
+                    ch = input.peek(offset++);
+                while (Character.isDigit((char) ch))
+                    ch = input.peek(offset++);
+                return ch != InputChannel.pending;
+            default:
+                return true;
+        }
+    }
+
+    private boolean mustWait(int primitiveDisplacement) {
+        // Stops the machine, if the input primitive cannot finish without
+        // waiting for more input, so that run calls it again when it can.
+
+        if (inputReady(primitiveDisplacement))
+            return false;
+        status = waitingForInput;
+        waitingPrimitive = primitiveDisplacement;
+        return true;
+    }
+
+    void callPrimitive(int primitiveDisplacement) {
+        // Invokes the given primitive routine.
+
+        int addr, size;
+        char ch;
+
+        if ((primitiveDisplacement < Verifier.primitiveArguments.length)
+                && !onStack(Verifier.primitiveArguments[primitiveDisplacement]))
+            return;
+
+        switch (primitiveDisplacement) {
+            case Machine.idDisplacement:
+                break; // nothing to be done
+            case Machine.notDisplacement:
+                data[(ST - 1) & mask] = toInt(!isTrue(data[(ST - 1) & mask]));
+                break;
+            case Machine.andDisplacement:
+                ST = ST - 1;
+                data[(ST - 1) & mask] = toInt(isTrue(data[(ST - 1) & mask]) & isTrue(data[ST & mask]));
+                break;
+            case Machine.orDisplacement:
+                ST = ST - 1;
+                data[(ST - 1) & mask] = toInt(isTrue(data[(ST - 1) & mask]) | isTrue(data[ST & mask]));
+                break;
+            case Machine.succDisplacement:
+                data[(ST - 1) & mask] = overflowChecked(data[(ST - 1) & mask] + 1);
+                break;
+            case Machine.predDisplacement:
+                data[(ST - 1) & mask] = overflowChecked(data[(ST - 1) & mask] - 1);
+                break;
+            case Machine.negDisplacement:
+                data[(ST - 1) & mask] = -data[(ST - 1) & mask];
+                break;
+            case Machine.addDisplacement:
+                ST = ST - 1;
+                accumulator = data[(ST - 1) & mask];
+                data[(ST - 1) & mask] = overflowChecked(accumulator + data[ST & mask]);
+                break;
+            case Machine.subDisplacement:
+                ST = ST - 1;
+                accumulator = data[(ST - 1) & mask];
+                data[(ST - 1) & mask] = overflowChecked(accumulator - data[ST & mask]);
+                break;
+            case Machine.multDisplacement:
+                ST = ST - 1;
+                accumulator = data[(ST - 1) & mask];
+                data[(ST - 1) & mask] = overflowChecked(accumulator * data[ST & mask]);
+                break;
+            case Machine.divDisplacement:
+                ST = ST - 1;
+                accumulator = data[(ST - 1) & mask];
+                if (data[ST & mask] != 0)
+                    data[(ST - 1) & mask] = (int) (accumulator / data[ST & mask]);
+                else
+                    status = failedZeroDivide;
+                break;
+            case Machine.modDisplacement:
+                ST = ST - 1;
+                accumulator = data[(ST - 1) & mask];
+                if (data[ST & mask] != 0)
+                    data[(ST - 1) & mask] = (int) (accumulator % data[ST & mask]);
+                else
+                    status = failedZeroDivide;
+                break;
+            case Machine.ltDisplacement:
+                ST = ST - 1;
+                data[(ST - 1) & mask] = toInt(data[(ST - 1) & mask] < data[ST & mask]);
+                break;
+            case Machine.leDisplacement:
+                ST = ST - 1;
+                data[(ST - 1) & mask] = toInt(data[(ST - 1) & mask] <= data[ST & mask]);
+                break;
+            case Machine.geDisplacement:
+                ST = ST - 1;
+                data[(ST - 1) & mask] = toInt(data[(ST - 1) & mask] >= data[ST & mask]);
+                break;
+            case Machine.gtDisplacement:
+                ST = ST - 1;
+                data[(ST - 1) & mask] = toInt(data[(ST - 1) & mask] > data[ST & mask]);
+                break;
+            case Machine.eqDisplacement:
+                size = data[(ST - 1) & mask]; // size of each comparand
+                if ((size < 0) || (size > (ST - SB - 1) / 2)) {
+                    status = failedInvalidDataAddress;
+                    break;
+                }
+                ST = ST - 2 * size;
+                data[(ST - 1) & mask] = toInt(equal(size, ST - 1, ST - 1 + size));
+                break;
+            case Machine.neDisplacement:
+                size = data[(ST - 1) & mask]; // size of each comparand
+                if ((size < 0) || (size > (ST - SB - 1) / 2)) {
+                    status = failedInvalidDataAddress;
+                    break;
+                }
+                ST = ST - 2 * size;
+                data[(ST - 1) & mask] = toInt(!equal(size, ST - 1, ST - 1 + size));
+                break;
+            case Machine.eolDisplacement:
+                checkSpace(1);
+                data[ST & mask] = toInt(currentChar == '\n');
+                ST = ST + 1;
+                break;
+            case Machine.eofDisplacement:
+                checkSpace(1);
+                data[ST & mask] = toInt(currentChar == -1);
+                ST = ST + 1;
+                break;
+            case Machine.getDisplacement:
+                if (!addressable(data[(ST - 1) & mask], 1) || mustWait(primitiveDisplacement))
+                    break;
+                ST = ST - 1;
+                addr = data[ST & mask];
+                try {
+                    currentChar = input.read();
+                } catch (IOException s) {
+                    status = failedIOError;
+                }
+                data[addr & mask] = currentChar;
+                break;
+            case Machine.putDisplacement:
+                ST = ST - 1;
+                ch = (char) data[ST & mask];
+                try {
+                    output.put(ch);
+                } catch (IOException s) {
+                    status = failedIOError;
+                }
+                break;
+            case Machine.geteolDisplacement:
+                if (mustWait(primitiveDisplacement))
+                    break;
+                try {
+                    do
+                        currentChar = input.read();
+                    while ((currentChar != '\n') && (currentChar != -1));
+                } catch (IOException s) {
+                    status = failedIOError;
+                }
+                break;
+            case Machine.puteolDisplacement:
+                try {
+                    output.putEol();
+                } catch (IOException s) {
+                    status = failedIOError;
+                }
+                break;
+            case Machine.getintDisplacement:
+                if (!addressable(data[(ST - 1) & mask], 1) || mustWait(primitiveDisplacement))
+                    break;
+                ST = ST - 1;
+                addr = data[ST & mask];
+                try {
+                    accumulator = readInt();
+                } catch (IOException s) {
+                    status = failedIOError;
+                }
+                data[addr & mask] = (int) accumulator;
+                break;
+            case Machine.putintDisplacement:
+                ST = ST - 1;
+                accumulator = data[ST & mask];
+                try {
+                    output.putInt(accumulator);
+                } catch (IOException s) {
+                    status = failedIOError;
+                }
+                break;
+            case Machine.newDisplacement:
+                size = data[(ST - 1) & mask];
+                addr = heap.allocate(size);
+                data[(ST - 1) & mask] = addr;
+                break;
+            case Machine.disposeDisplacement:
+                ST = ST - 1;
+                heap.dispose(data[ST & mask]);
+                break;
+        }
+    }
+
+    public int run() {
+        // Runs the program in code store until it halts or fails.
+        return run(Long.MAX_VALUE);
+    }
+
+    public int run(long stepBudget) {
+        // Runs the program in code store for at most stepBudget instructions,
+        // and returns the status. The status is still running if the budget
+        // ran out first, in which case a later call carries on from CP. If
+        // the status is waitingForInput, it carries on once input has
+        // arrived, and otherwise returns straight away.
+        // Compiled code checks the budget only when it jumps back, so it may
+        // overrun it by a stretch of straight-line code.
+
+        if (status == waitingForInput) {
+            // finish the input primitive that had to wait
+            if (!inputReady(waitingPrimitive))
+                return status;
+            status = running;
+            callPrimitive(waitingPrimitive);
+        }
+
+        if (profiler == null)
+            interpret(stepBudget, jit, (jit == null) ? registerCode : null);
+        else
+            // one instruction at a time, so that the profiler sees them all
+            for (long steps = 0; (status == running) && (steps < stepBudget); steps++) {
+                profiler.before(this);
+                interpret(1, null, null);
+                profiler.after();
+            }
+
+        try {
+            output.flush();
+        } catch (IOException s) {
+            status = failedIOError;
+        }
+        return status;
+    }
+
+    private void interpret(long stepBudget, JitCompiler jit, RegisterCode registerCode) {
+        // Runs the program for at most stepBudget instructions, handing hot
+        // code over to jit unless that is null. Verified code runs without
+        // checks for as long as there is room for it, in register form if
+        // registerCode is not null.
+
+        long steps = 0, executed;
+
+        // The run may start at an entry point of compiled code, such as the
+        // main program compiled ahead of time, which no jump or call reaches.
+        if (jit != null)
+            steps = jit.enter(false, stepBudget);
+
+        while ((status == running) && (steps < stepBudget)) {
+            executed = fits(CP, 0) ? interpretVerified(stepBudget - steps, jit, registerCode) : 0;
+            // none if it stopped at a call that would not fit
+            if (executed == 0)
+                executed = interpretChecked(stepBudget - steps, jit);
+            steps = steps + executed;
+        }
+        instructionCount = instructionCount + steps;
+    }
+
+    private long interpretChecked(long stepBudget, JitCompiler jit) {
+        // Runs the program, checking every instruction, until it stops, the
+        // budget runs out or a call or return arrives at verified code with
+        // room to run. Returns the number of instructions executed. An
+        // instruction that would go outside the data store, or below the
+        // bottom of the stack, fails before it changes anything.
+
+        int op, r, n, d, addr, index;
+        long steps = 0;
+
+        final int[] codeOp = this.codeOp;
+        final int[] codeR = this.codeR;
+        final int[] codeN = this.codeN;
+        final int[] codeD = this.codeD;
+
+        boolean verified = false;
+
+        while ((status == running) && (steps < stepBudget) && !verified) {
+            // Fetch instruction (already decoded by decodeProgram) ...
+            op = codeOp[CP];
+            r = codeR[CP];
+            n = codeN[CP];
+            d = codeD[CP];
+            // Execute instruction ...
+            switch (op) {
+                case Machine.LOADop:
+                    addr = d + content(r);
+                    if (!addressable(addr, n))
+                        break;
+                    checkSpace(n);
+                    for (index = 0; index < n; index++)
+                        data[(ST + index) & mask] = data[(addr + index) & mask];
+                    ST = ST + n;
+                    CP = CP + 1;
+                    break;
+                case Machine.LOADAop:
+                    addr = d + content(r);
+                    checkSpace(1);
+                    data[ST & mask] = addr;
+                    ST = ST + 1;
+                    CP = CP + 1;
+                    break;
+                case Machine.LOADIop:
+                    if (!onStack(1) || !addressable(data[(ST - 1) & mask], n))
+                        break;
+                    ST = ST - 1;
+                    addr = data[ST & mask];
+                    checkSpace(n);
+                    for (index = 0; index < n; index++)
+                        data[(ST + index) & mask] = data[(addr + index) & mask];
+                    ST = ST + n;
+                    CP = CP + 1;
+                    break;
+                case Machine.LOADLop:
+                    checkSpace(1);
+                    data[ST & mask] = d;
+                    ST = ST + 1;
+                    CP = CP + 1;
+                    break;
+                case Machine.STOREop:
+                    addr = d + content(r);
+                    if (!onStack(n) || !addressable(addr, n))
+                        break;
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    CP = CP + 1;
+                    break;
+                case Machine.STOREIop:
+                    if (!onStack(n + 1) || !addressable(data[(ST - 1) & mask], n))
+                        break;
+                    ST = ST - 1;
+                    addr = data[ST & mask];
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    CP = CP + 1;
+                    break;
+                case Machine.CALLop:
+                    addr = d + content(r);
+                    if (addr >= PB) {
+                        callPrimitive(addr - PB);
+                        CP = CP + 1;
+                    } else {
+                        checkSpace(3);
+                        if ((0 <= n) && (n <= 15))
+                            data[ST & mask] = content(n); // static link
+                        else
+                            status = failedInvalidInstruction;
+                        data[(ST + 1) & mask] = LB; // dynamic link
+                        data[(ST + 2) & mask] = CP + 1; // return address
+                        LB = ST;
+                        ST = ST + 3;
+                        CP = addr;
+                        enterDisplay(n - Machine.LBr);
+                        if (jit != null)
+                            steps = steps + jit.enter(true, stepBudget - steps - 1);
+                        verified = fits(CP, 0);
+                    }
+                    break;
+                case Machine.CALLIop:
+                    if (!onStack(2))
+                        break;
+                    ST = ST - 2;
+                    addr = data[(ST + 1) & mask];
+                    if (addr >= PB) {
+                        callPrimitive(addr - PB);
+                        CP = CP + 1;
+                    } else {
+                        // the closure's two words, just popped, become the
+                        // static link and the dynamic link of the frame
+                        checkSpace(3);
+                        // data[ST] = static link already
+                        data[(ST + 1) & mask] = LB; // dynamic link
+                        data[(ST + 2) & mask] = CP + 1; // return address
+                        LB = ST;
+                        ST = ST + 3;
+                        CP = addr;
+                        // the static link is the caller's LB, or unknown
+                        enterDisplay((data[LB & mask] == data[(LB + 1) & mask]) ? 0 : -1);
+                        if (jit != null)
+                            steps = steps + jit.enter(true, stepBudget - steps - 1);
+                        verified = fits(CP, 0);
+                    }
+                    break;
+                case Machine.RETURNop:
+                    addr = LB - d;
+                    if (!addressable(LB + 1, 2) || !onStack(n) || !addressable(addr, n))
+                        break;
+                    CP = data[(LB + 2) & mask];
+                    LB = data[(LB + 1) & mask];
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    ST = addr + n;
+                    returnDisplay();
+                    if (jit != null)
+                        steps = steps + jit.enter(false, stepBudget - steps - 1);
+                    verified = fits(CP, 0);
+                    break;
+                case Machine.PUSHop:
+                    if (!onStack(-d))
+                        break;
+                    checkSpace(d);
+                    ST = ST + d;
+                    CP = CP + 1;
+                    break;
+                case Machine.POPop:
+                    addr = ST - n - d;
+                    if (!onStack(n) || !addressable(addr, n))
+                        break;
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    ST = addr + n;
+                    CP = CP + 1;
+                    break;
+                case Machine.JUMPop:
+                    addr = CP;
+                    CP = d + content(r);
+                    if ((jit != null) && (CP <= addr))
+                        steps = steps + jit.enter(true, stepBudget - steps - 1);
+                    break;
+                case Machine.JUMPIop:
+                    if (!onStack(1))
+                        break;
+                    ST = ST - 1;
+                    CP = data[ST & mask];
+                    break;
+                case Machine.JUMPIFop:
+                    if (!onStack(1))
+                        break;
+                    ST = ST - 1;
+                    if (data[ST & mask] == n) {
+                        addr = CP;
+                        CP = d + content(r);
+                        if ((jit != null) && (CP <= addr))
+                            steps = steps + jit.enter(true, stepBudget - steps - 1);
+                    } else
+                        CP = CP + 1;
+                    break;
+                case Machine.HALTop:
+                    status = halted;
+                    break;
+            }
+            if ((CP < CB) || (CP >= CT))
+                status = failedInvalidCodeAddress;
+            steps = steps + 1;
+        }
+        return steps;
+    }
+
+
+    private long interpretVerified(long stepBudget, JitCompiler jit, RegisterCode registerCode) {
+        // Runs verified code without checking CP or stack space, until the
+        // program stops, the budget runs out, or it comes to code that is
+        // not verified or has no room to run. Returns the number of
+        // instructions executed. A call that would not fit is left to
+        // interpretChecked, which fails it at the same point as before.
+        // The Verifier does not know the addresses that instructions compute,
+        // so those are still checked.
+
+        int op, r, n, d, addr, index;
+        long steps = 0;
+        boolean verified = true;
+
+        final int[] codeOp = this.codeOp;
+        final int[] codeR = this.codeR;
+        final int[] codeN = this.codeN;
+        final int[] codeD = this.codeD;
+
+        while ((status == running) && (steps < stepBudget) && verified) {
+            if ((registerCode != null) && registerCode.startsAt(CP)) {
+                steps = steps + registerCode.execute(this, stepBudget - steps);
+                continue;
+            }
+            op = codeOp[CP];
+            r = codeR[CP];
+            n = codeN[CP];
+            d = codeD[CP];
+            switch (op) {
+                case Machine.LOADop:
+                    addr = d + content(r);
+                    if (!addressable(addr, n))
+                        break;
+                    for (index = 0; index < n; index++)
+                        data[(ST + index) & mask] = data[(addr + index) & mask];
+                    ST = ST + n;
+                    CP = CP + 1;
+                    break;
+                case Machine.LOADAop:
+                    data[ST & mask] = d + content(r);
+                    ST = ST + 1;
+                    CP = CP + 1;
+                    break;
+                case Machine.LOADIop:
+                    if (!addressable(data[(ST - 1) & mask], n))
+                        break;
+                    ST = ST - 1;
+                    addr = data[ST & mask];
+                    for (index = 0; index < n; index++)
+                        data[(ST + index) & mask] = data[(addr + index) & mask];
+                    ST = ST + n;
+                    CP = CP + 1;
+                    break;
+                case Machine.LOADLop:
+                    data[ST & mask] = d;
+                    ST = ST + 1;
+                    CP = CP + 1;
+                    break;
+                case Machine.STOREop:
+                    addr = d + content(r);
+                    if (!addressable(addr, n))
+                        break;
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    CP = CP + 1;
+                    break;
+                case Machine.STOREIop:
+                    if (!addressable(data[(ST - 1) & mask], n))
+                        break;
+                    ST = ST - 1;
+                    addr = data[ST & mask];
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    CP = CP + 1;
+                    break;
+                case Machine.CALLop:
+                    addr = d + content(r);
+                    if (addr >= PB) {
+                        callPrimitive(addr - PB);
+                        CP = CP + 1;
+                        // new lowers HT
+                        if (addr - PB == Machine.newDisplacement)
+                            verified = fits(CP, 0);
+                    } else if (fits(addr, 3)) {
+                        data[ST & mask] = content(n); // static link
+                        data[(ST + 1) & mask] = LB; // dynamic link
+                        data[(ST + 2) & mask] = CP + 1; // return address
+                        LB = ST;
+                        ST = ST + 3;
+                        CP = addr;
+                        enterDisplay(n - Machine.LBr);
+                        if (jit != null) {
+                            steps = steps + jit.enter(true, stepBudget - steps - 1);
+                            verified = fits(CP, 0);
+                        }
+                    } else
+                        return steps;
+                    break;
+                case Machine.RETURNop:
+                    addr = LB - d;
+                    if (!addressable(LB + 1, 2) || !addressable(addr, n))
+                        break;
+                    CP = data[(LB + 2) & mask];
+                    LB = data[(LB + 1) & mask];
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    ST = addr + n;
+                    returnDisplay();
+                    if (jit != null)
+                        steps = steps + jit.enter(false, stepBudget - steps - 1);
+                    verified = fits(CP, 0);
+                    break;
+                case Machine.PUSHop:
+                    ST = ST + d;
+                    CP = CP + 1;
+                    break;
+                case Machine.POPop:
+                    addr = ST - n - d;
+                    ST = ST - n;
+                    for (index = 0; index < n; index++)
+                        data[(addr + index) & mask] = data[(ST + index) & mask];
+                    ST = addr + n;
+                    CP = CP + 1;
+                    break;
+                case Machine.JUMPop:
+                    addr = CP;
+                    CP = d + CB;
+                    if ((jit != null) && (CP <= addr)) {
+                        steps = steps + jit.enter(true, stepBudget - steps - 1);
+                        verified = fits(CP, 0);
+                    }
+                    break;
+                case Machine.JUMPIFop:
+                    ST = ST - 1;
+                    if (data[ST & mask] == n) {
+                        addr = CP;
+                        CP = d + CB;
+                        if ((jit != null) && (CP <= addr)) {
+                            steps = steps + jit.enter(true, stepBudget - steps - 1);
+                            verified = fits(CP, 0);
+                        }
+                    } else
+                        CP = CP + 1;
+                    break;
+                case Machine.HALTop:
+                    status = halted;
+                    break;
+                default:
+                    // CALLI and JUMPI are never verified
+                    return steps;
+            }
+            steps = steps + 1;
+        }
+        if ((CP < CB) || (CP >= CT))
+            status = failedInvalidCodeAddress;
+        return steps;
+    }
+
+
+// LOADING
+
+    public void load(byte[] objectProgram) throws IOException {
+        // Loads a TAM object program, in either format read by ObjectFile,
+        // from the given bytes.
+        loadChecked(ObjectFile.read(ByteBuffer.wrap(objectProgram)));
+    }
+
+    public void load(InputStream objectStream) throws IOException {
+        // Loads a TAM object program, in either format read by ObjectFile,
+        // from the given stream.
+        loadChecked(ObjectFile.read(objectStream));
+    }
+
+    public void load(File objectFile) throws IOException {
+        // Loads a TAM object program, in either format read by ObjectFile,
+        // by mapping the given file into memory.
+        loadChecked(ObjectFile.read(objectFile));
+    }
+
+    private void loadChecked(Instruction[] code) throws IOException {
+        if (code.length > PB - CB)
+            throw new IOException("object program does not fit into the code store of "
+                    + (PB - CB) + " instructions");
+        load(code, code.length);
+    }
+
+    public void load(Instruction[] code, int length) {
+        // Loads the first length instructions of code into the code store,
+        // decoding them as it goes, and resets the machine.
+
+        if (length > PB - CB)
+            throw new IllegalArgumentException("object program does not fit into the code store of "
+                    + (PB - CB) + " instructions");
+
+        codeOp = new int[length];
+        codeR = new int[length];
+        codeN = new int[length];
+        codeD = new int[length];
+
+        for (int addr = CB; addr < length; addr++) {
+            codeOp[addr] = code[addr].op;
+            codeR[addr] = code[addr].r;
+            codeN[addr] = code[addr].n;
+            codeD[addr] = code[addr].d;
+        }
+        CT = CB + length;
+        Verifier.verify(this);
+        program = null;
+        loaded();
+    }
+
+    public void load(TamProgram program) {
+        // Loads a program decoded and verified before, sharing its code with
+        // every other machine that has loaded it, and resets the machine.
+
+        if (program.codeStoreSize != PB - CB)
+            throw new IllegalArgumentException("program is verified for a code store of "
+                    + program.codeStoreSize + " instructions, not " + (PB - CB));
+
+        codeOp = program.codeOp;
+        codeR = program.codeR;
+        codeN = program.codeN;
+        codeD = program.codeD;
+        headroom = program.headroom;
+        footroom = program.footroom;
+        CT = CB + program.length;
+        this.program = program;
+        loaded();
+    }
+
+    private void loaded() {
+        // Prepares the tiers for the code just loaded.
+        if (registerCode != null)
+            setRegisterTranslation(true);
+        if (jit != null)
+            jit = new JitCompiler(this, jit.threshold);
+        reset();
+    }
+
+    public void reset() {
+        // Initializes the registers so that the loaded program starts afresh.
+        ST = SB;
+        HT = HB;
+        LB = SB;
+        displayDepth = 0;
+        CP = CB;
+        status = running;
+        instructionCount = 0;
+        heap.reset();
+        currentChar = 0;
+        waitingPrimitive = 0;
+    }
+
+
+// SNAPSHOTS
+
+    // Implementation notes:
+    // A snapshot is a sequence of big-endian words: the magic word "TAMS",
+    // a version number, the SHA-256 digest of the code store (8 words),
+    // HB, CP, LB, ST, HT, status, the pending input character and the
+    // input primitive waited for, the instruction count (2 words), then the stack from SB to ST and the
+    // heap from HT to HB, word for word, and last the heap manager's
+    // blocks and statistics. Everything up to the heap manager is at a
+    // fixed offset or follows from ST and HT, so a mapped snapshot is
+    // copied into the data store without being parsed.
+    //
+    // The display is not saved, since it is only a cache of static links
+    // that are on the stack anyway, nor is the state of the I/O streams.
+
+    public final static int
+            snapshotMagic = 0x54414D53,
+            snapshotVersion = 2;
+
+    private final static int snapshotHeaderSize = 4 * (2 + 8 + 8 + 2);
+
+    byte[] codeDigest() {
+        // Returns the SHA-256 digest of the loaded code, which identifies
+        // the program a snapshot belongs to.
+
+        MessageDigest digest;
+        ByteBuffer words = ByteBuffer.allocate(16 * (CT - CB));
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException s) {
+            throw new IllegalStateException(s);
+        }
+        for (int addr = CB; addr < CT; addr++)
+            words.putInt(codeOp[addr]).putInt(codeR[addr]).putInt(codeN[addr]).putInt(codeD[addr]);
+        return digest.digest(words.array());
+    }
+
+    public void snapshot(OutputStream snapshotStream) throws IOException {
+        // Writes the state of the machine to the given stream, so that
+        // restore can carry on from here on a machine with the same program
+        // and data store size.
+
+        DataOutputStream output = new DataOutputStream(snapshotStream);
+
+        output.writeInt(snapshotMagic);
+        output.writeInt(snapshotVersion);
+        output.write(codeDigest());
+        output.writeInt(HB);
+        output.writeInt(CP);
+        output.writeInt(LB);
+        output.writeInt(ST);
+        output.writeInt(HT);
+        output.writeInt(status);
+        output.writeInt(currentChar);
+        output.writeInt(waitingPrimitive);
+        output.writeLong(instructionCount);
+        // a stack that overran the heap shares its words above HT
+        for (int addr = SB; addr < Math.min(ST, HT); addr++)
+            output.writeInt(data[addr & mask]);
+        for (int addr = HT; addr < HB; addr++)
+            output.writeInt(data[addr & mask]);
+        heap.write(output);
+        output.flush();
+    }
+
+    public byte[] snapshot() {
+        // Returns the state of the machine, as written by snapshot(stream).
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                snapshotHeaderSize + 4 * ((Math.min(ST, HT) - SB) + (HB - HT)));
+        try {
+            snapshot(bytes);
+        } catch (IOException s) {
+            // not thrown by a byte array
+            throw new IllegalStateException(s);
+        }
+        return bytes.toByteArray();
+    }
+
+    public void restore(byte[] snapshot) throws IOException {
+        restore(ByteBuffer.wrap(snapshot));
+    }
+
+    public void restore(File snapshotFile) throws IOException {
+        // Restores the state saved in the given file, which is mapped into
+        // memory rather than read.
+
+        FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ);
+        try {
+            restore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    public void restore(ByteBuffer snapshot) throws IOException {
+        // Puts the machine back into the state saved in the remaining bytes
+        // of snapshot. The program it was taken of must be loaded, into a
+        // data store of the same size; otherwise, or if the snapshot is
+        // malformed, the machine is left reset.
+
+        byte[] digest = new byte[32];
+        int savedHB, savedCP, savedLB, savedST, savedHT, savedStatus, stackSize, savedPrimitive;
+
+        reset();
+        try {
+            if ((snapshot.remaining() < snapshotHeaderSize) || (snapshot.getInt() != snapshotMagic))
+                throw new IOException("not a TAM snapshot");
+            int version = snapshot.getInt();
+            if (version != snapshotVersion)
+                throw new IOException("unsupported snapshot version " + version);
+            snapshot.get(digest);
+            if (!Arrays.equals(digest, codeDigest()))
+                throw new IOException("snapshot is of a different program");
+            savedHB = snapshot.getInt();
+            if (savedHB != HB)
+                throw new IOException("snapshot is of a data store of " + (savedHB - SB) + " words");
+            savedCP = snapshot.getInt();
+            savedLB = snapshot.getInt();
+            savedST = snapshot.getInt();
+            savedHT = snapshot.getInt();
+            savedStatus = snapshot.getInt();
+            stackSize = Math.min(savedST, savedHT) - SB;
+            if ((savedST < SB) || (savedHT > HB) || (stackSize < 0)
+                    || ((savedST > savedHT) && (savedStatus != failedDataStoreFull))
+                    || (savedLB < SB) || (savedLB > savedST)
+                    || (savedStatus < running) || (savedStatus > failedInvalidDataAddress)
+                    || (snapshot.remaining() < 16 + 4L * (stackSize + (HB - savedHT))))
+                throw new IOException("invalid snapshot");
+            currentChar = snapshot.getInt();
+            savedPrimitive = snapshot.getInt();
+            if ((savedStatus == waitingForInput) && (savedPrimitive != Machine.getDisplacement)
+                    && (savedPrimitive != Machine.geteolDisplacement)
+                    && (savedPrimitive != Machine.getintDisplacement))
+                throw new IOException("invalid snapshot");
+            instructionCount = snapshot.getLong();
+
+            // no stack or heap yet, so committing keeps nothing
+            if (stackSize + (HB - savedHT) > data.length)
+                commit(stackSize + (HB - savedHT));
+            ST = savedST;
+            HT = savedHT;
+            snapshot.asIntBuffer().get(data, 0, stackSize);
+            snapshot.position(snapshot.position() + 4 * stackSize);
+            snapshot.asIntBuffer().get(data, data.length - (HB - HT), HB - HT);
+            snapshot.position(snapshot.position() + 4 * (HB - HT));
+            heap.read(snapshot);
+        } catch (BufferUnderflowException s) {
+            reset();
+            throw new IOException("truncated snapshot");
+        } catch (IOException s) {
+            reset();
+            throw s;
+        }
+        CP = savedCP;
+        LB = savedLB;
+        status = savedStatus;
+        waitingPrimitive = savedPrimitive;
+    }
+
+
+// ACCESS
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    public HeapManager getHeap() {
+        return heap;
+    }
+
+    public void setGarbageCollection(boolean garbageCollection) {
+        this.garbageCollection = garbageCollection;
+    }
+
+    public void setCompilationThreshold(int threshold) {
+        // Compiles code to JVM bytecode once it has been entered threshold
+        // times, or only interprets if threshold is 0.
+        if (threshold < 0)
+            throw new IllegalArgumentException("invalid compilation threshold " + threshold);
+        jit = (threshold > 0) ? new JitCompiler(this, threshold) : null;
+    }
+
+    public void setRegisterTranslation(boolean translating) {
+        // Translates verified code into register form and runs it in that
+        // form, unless code is being compiled, or only interprets.
+        if (!translating)
+            registerCode = null;
+        else if (program != null)
+            registerCode = program.registerCode(this);
+        else
+            registerCode = new RegisterCode(this);
+        registerFile = translating ? new int[registerCode.registerCount] : null;
+    }
+
+    public void setProfiler(Profiler profiler) {
+        // Records the execution profile of the program with profiler, or
+        // stops recording if profiler is null.
+        this.profiler = profiler;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    public int getRoutinesCompiled() {
+        return (jit != null) ? jit.getRoutinesCompiled() : 0;
+    }
+
+    public int getCodeSize() {
+        return CT - CB;
+    }
+
+    public int getCodeStoreSize() {
+        return PB - CB;
+    }
+
+    public void setInput(InputStream input) {
+        setInput(new InputChannel(input));
+    }
+
+    public void setInput(byte[] input) {
+        setInput(new InputChannel(input));
+    }
+
+    public void setInput(InputChannel input) {
+        this.input = input;
+        input.tied = output;
+    }
+
+    public void setOutput(OutputStream output) {
+        setOutput(new OutputChannel(output));
+    }
+
+    public void setOutput(OutputChannel output) {
+        this.output = output;
+        if (input != null)
+            input.tied = output;
+    }
+
+    public OutputChannel getOutput() {
+        return output;
+    }
+}
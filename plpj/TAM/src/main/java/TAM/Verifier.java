@@ -0,0 +1,350 @@
+package TAM;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Checks the program loaded into a {@link TamVM}, routine by routine, so
+ * that the machine can run the routines that pass without checking CP and
+ * stack space at every instruction.
+ * <p/>
+ * A routine is the code reachable from its entry address by falling
+ * through and by JUMP and JUMPIF relative to CB, a CALL carrying on with
+ * the instruction after it. The entries are CB, for the main program,
+ * and every routine address that appears in a CALL or LOADA relative to
+ * CB. A routine passes if every jump and call target in it is known before
+ * run time and lies in the code store, no instruction falls off the end of
+ * the code, it shares no instruction with another routine, and the stack
+ * has the same depth whichever way an instruction is reached. For each of
+ * its instructions the verifier then knows how many words the stack can
+ * still grow by, and shrink by, before the routine returns, not counting
+ * the routines it calls, which are checked when they are called. Only
+ * the stack is covered: the addresses that LOAD, STORE, LOADI, STOREI and
+ * RETURN compute are still checked as they are used.
+ * <p/>
+ * A routine that uses CALLI or JUMPI, or calls a routine that does not
+ * return a consistent number of words, does not pass, and is left to the
+ * checked interpreter.
+ */
+final class Verifier {
+
+    // stack words pushed by each primitive routine, less those popped;
+    // unknown for eq and ne, whose operand size is on the stack
+    private final static int unknown = Integer.MIN_VALUE;
+
+    // the effect of a routine whose returns leave different numbers of words
+    private final static int mixed = Integer.MIN_VALUE + 1;
+    private final static int[] primitiveEffects = {
+            unknown, 0, 0, -1, -1, 0, 0, 0, -1, -1, -1,
+            -1, -1, -1, -1, -1, -1, unknown, unknown, 1, 1, -1,
+            -1, 0, 0, -1, -1, 0, -1};
+
+    // stack words taken by each primitive routine, before it pushes its
+    // result; for eq and ne, only the size of the operands
+    final static int[] primitiveArguments = {
+            0, 0, 1, 2, 2, 1, 1, 1, 2, 2, 2,
+            2, 2, 2, 2, 2, 2, 1, 1, 0, 0, 1,
+            1, 0, 0, 1, 1, 1, 1};
+
+    private final TamVM vm;
+    private final int length;
+
+    // the routine that each instruction belongs to, or -1
+    private final int[] owner;
+
+    // stack depth before each instruction, relative to the routine entry
+    private final int[] depth;
+
+    // words pushed, less arguments popped, by a call of each routine
+    private final int[] effect;
+
+    private final boolean[] failed;
+
+    // true for each routine entry and jump target
+    private final boolean[] isJoin;
+
+    private Verifier(TamVM vm) {
+        this.vm = vm;
+        length = vm.CT - TamVM.CB;
+        owner = new int[length];
+        depth = new int[length];
+        effect = new int[length];
+        failed = new boolean[length];
+        isJoin = new boolean[length];
+        Arrays.fill(owner, -1);
+        Arrays.fill(effect, unknown);
+    }
+
+    /**
+     * Verifies the program loaded into vm. Sets its headroom and footroom,
+     * for each code address, to the number of words by which the stack can
+     * grow and shrink from there before the routine returns, or to -1
+     * where the routine did not pass.
+     */
+    static void verify(TamVM vm) {
+        Verifier verifier = new Verifier(vm);
+        boolean[] isEntry = verifier.entries();
+        int[] headroom = new int[verifier.length];
+        int[] footroom = new int[verifier.length];
+
+        for (int i = 0; i < verifier.length; i++)
+            if (isEntry[i])
+                verifier.discover(TamVM.CB + i);
+        for (int i = 0; i < verifier.length; i++)
+            if (isEntry[i] && !verifier.failed[i])
+                verifier.measure(TamVM.CB + i);
+
+        int[] maxDepth = new int[verifier.length];
+        int[] minDepth = new int[verifier.length];
+        for (int i = 0; i < verifier.length; i++)
+            if (verifier.passed(i)) {
+                maxDepth[verifier.owner[i]] = Math.max(maxDepth[verifier.owner[i]], verifier.depth[i]);
+                minDepth[verifier.owner[i]] = Math.min(minDepth[verifier.owner[i]],
+                        verifier.depth[i] - verifier.popped(TamVM.CB + i));
+            }
+        for (int i = 0; i < verifier.length; i++) {
+            headroom[i] = verifier.passed(i) ? maxDepth[verifier.owner[i]] - verifier.depth[i] : -1;
+            footroom[i] = verifier.passed(i) ? verifier.depth[i] - minDepth[verifier.owner[i]] : -1;
+        }
+        vm.headroom = headroom;
+        vm.footroom = footroom;
+    }
+
+    private boolean passed(int i) {
+        return (owner[i] >= 0) && !failed[owner[i]];
+    }
+
+
+// CONTROL FLOW
+
+    // Returns the target of the JUMP, JUMPIF or CALL instruction at addr,
+    // or -1 if it is not known before run time. Primitive routines are at
+    // PB and above.
+    private int target(int addr) {
+        int r = vm.codeR[addr], d = vm.codeD[addr];
+
+        if (r == Machine.CBr)
+            return d + TamVM.CB;
+        else if ((r == Machine.PBr) && (vm.codeOp[addr] == Machine.CALLop) && (d >= 0))
+            return d + vm.PB;
+        else
+            return -1;
+    }
+
+    private boolean inCode(int addr) {
+        return (TamVM.CB <= addr) && (addr < vm.CT);
+    }
+
+    // Marks the entry addresses of the main program and of every routine
+    // called or taken as a closure relative to CB, and notes them and all
+    // jump targets as joins.
+    private boolean[] entries() {
+        boolean[] isEntry = new boolean[length];
+        int op, addr, target;
+
+        if (length > 0)
+            isEntry[0] = true;
+        for (addr = TamVM.CB; addr < vm.CT; addr++) {
+            op = vm.codeOp[addr];
+            target = vm.codeD[addr] + TamVM.CB;
+            if ((vm.codeR[addr] != Machine.CBr) || !inCode(target))
+                continue;
+            if ((op == Machine.CALLop) || (op == Machine.LOADAop))
+                isEntry[target - TamVM.CB] = true;
+            else if ((op == Machine.JUMPop) || (op == Machine.JUMPIFop))
+                isJoin[target - TamVM.CB] = true;
+        }
+        for (int i = 0; i < length; i++)
+            isJoin[i] = isJoin[i] || isEntry[i];
+        return isEntry;
+    }
+
+    // Finds the instructions of the routine at entry, and what a call of it
+    // leaves on the stack, failing it if the code is not well formed.
+    private void discover(int entry) {
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        int routine = entry - TamVM.CB, addr, op, target;
+
+        pending.push(entry);
+        while (!pending.isEmpty()) {
+            addr = pending.pop();
+            if (!inCode(addr)) {
+                failed[routine] = true;
+                continue;
+            }
+            if (owner[addr - TamVM.CB] == routine)
+                continue;
+            if (owner[addr - TamVM.CB] >= 0) {
+                // shared with another routine
+                failed[routine] = true;
+                failed[owner[addr - TamVM.CB]] = true;
+                continue;
+            }
+            owner[addr - TamVM.CB] = routine;
+
+            op = vm.codeOp[addr];
+            switch (op) {
+                case Machine.LOADop:
+                case Machine.LOADAop:
+                case Machine.LOADIop:
+                case Machine.LOADLop:
+                case Machine.STOREop:
+                case Machine.STOREIop:
+                case Machine.PUSHop:
+                case Machine.POPop:
+                    pending.push(addr + 1);
+                    break;
+                case Machine.CALLop:
+                    target = target(addr);
+                    if ((target < 0) || !(inCode(target) || (target >= vm.PB))
+                            || (vm.codeN[addr] > Machine.CPr))
+                        failed[routine] = true;
+                    pending.push(addr + 1);
+                    break;
+                case Machine.RETURNop:
+                    if (effect[routine] == unknown)
+                        effect[routine] = vm.codeN[addr] - vm.codeD[addr];
+                    else if (effect[routine] != vm.codeN[addr] - vm.codeD[addr]) {
+                        failed[routine] = true;
+                        effect[routine] = mixed;
+                    }
+                    break;
+                case Machine.JUMPIFop:
+                case Machine.JUMPop:
+                    if (op == Machine.JUMPIFop)
+                        pending.push(addr + 1);
+                    target = target(addr);
+                    if (target < 0)
+                        failed[routine] = true;
+                    else
+                        pending.push(target);
+                    break;
+                case Machine.HALTop:
+                    break;
+                default:
+                    // CALLI, JUMPI and undefined op codes
+                    failed[routine] = true;
+            }
+        }
+    }
+
+
+// STACK DEPTH
+
+    // Returns the words pushed, less those popped, by the instruction at
+    // addr, or unknown.
+    private int growth(int addr) {
+        int n = vm.codeN[addr], d = vm.codeD[addr], target;
+
+        switch (vm.codeOp[addr]) {
+            case Machine.LOADop:
+                return n;
+            case Machine.LOADAop:
+            case Machine.LOADLop:
+                return 1;
+            case Machine.LOADIop:
+                return n - 1;
+            case Machine.STOREop:
+                return -n;
+            case Machine.STOREIop:
+                return -n - 1;
+            case Machine.PUSHop:
+                return d;
+            case Machine.POPop:
+                return -d;
+            case Machine.JUMPop:
+                return 0;
+            case Machine.JUMPIFop:
+                return -1;
+            case Machine.CALLop:
+                target = target(addr);
+                if (target < vm.PB)
+                    return (effect[target - TamVM.CB] == mixed) ? unknown : effect[target - TamVM.CB];
+                target = target - vm.PB;
+                if ((target == Machine.eqDisplacement) || (target == Machine.neDisplacement)) {
+                    // known only right after the size of the operands is pushed
+                    if ((addr > TamVM.CB) && (vm.codeOp[addr - 1] == Machine.LOADLop)
+                            && !isJoin[addr - TamVM.CB])
+                        return -2 * vm.codeD[addr - 1];
+                    return unknown;
+                }
+                return (target < primitiveEffects.length) ? primitiveEffects[target] : unknown;
+            default:
+                return unknown;
+        }
+    }
+
+    // Returns the words that the instruction at addr, in a routine that
+    // passed, takes off the stack before pushing any.
+    private int popped(int addr) {
+        int n = vm.codeN[addr], d = vm.codeD[addr], target;
+
+        switch (vm.codeOp[addr]) {
+            case Machine.LOADIop:
+            case Machine.JUMPIFop:
+                return 1;
+            case Machine.STOREop:
+            case Machine.RETURNop:
+                return n;
+            case Machine.STOREIop:
+                return n + 1;
+            case Machine.PUSHop:
+                return Math.max(-d, 0);
+            case Machine.POPop:
+                return n + Math.max(d, 0);
+            case Machine.CALLop:
+                target = target(addr);
+                if (target < vm.PB)
+                    return 0;
+                target = target - vm.PB;
+                if ((target == Machine.eqDisplacement) || (target == Machine.neDisplacement))
+                    return 2 * vm.codeD[addr - 1] + 1;
+                return (target < primitiveArguments.length) ? primitiveArguments[target] : 0;
+            default:
+                return 0;
+        }
+    }
+
+    // Works out the stack depth before each instruction of the routine at
+    // entry, failing it if the depths do not agree.
+    private void measure(int entry) {
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        boolean[] measured = new boolean[length];
+        int routine = entry - TamVM.CB, addr, op, after, growth;
+
+        measured[routine] = true;
+        depth[routine] = 0;
+        pending.push(entry);
+        while (!pending.isEmpty() && !failed[routine]) {
+            addr = pending.pop();
+            op = vm.codeOp[addr];
+            if ((op == Machine.RETURNop) || (op == Machine.HALTop))
+                continue;
+            growth = growth(addr);
+            if (growth == unknown) {
+                failed[routine] = true;
+                continue;
+            }
+            after = depth[addr - TamVM.CB] + growth;
+
+            if ((op != Machine.JUMPop) && reach(routine, measured, addr + 1, after))
+                pending.push(addr + 1);
+            if (((op == Machine.JUMPop) || (op == Machine.JUMPIFop))
+                    && reach(routine, measured, target(addr), after))
+                pending.push(target(addr));
+        }
+    }
+
+    // Records the depth at which addr is reached, and returns true if it is
+    // yet to be measured.
+    private boolean reach(int routine, boolean[] measured, int addr, int after) {
+        if (!measured[addr - TamVM.CB]) {
+            measured[addr - TamVM.CB] = true;
+            depth[addr - TamVM.CB] = after;
+            return true;
+        }
+        if (depth[addr - TamVM.CB] != after)
+            failed[routine] = true;
+        return false;
+    }
+}
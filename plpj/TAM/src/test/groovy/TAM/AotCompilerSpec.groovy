@@ -0,0 +1,97 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+import java.util.concurrent.TimeUnit
+import java.util.jar.JarFile
+
+@Title('Ahead-of-time compiler')
+class AotCompilerSpec extends Specification {
+
+    private static File compile(TamCode code) {
+        def jar = File.createTempFile('program', '.jar')
+        jar.deleteOnExit()
+        jar.withOutputStream { AotCompiler.compile(code.load(), it) }
+        jar
+    }
+
+    def 'Routines, jump targets and return points are compiled from'() {
+
+        when:
+        def starting = AotCompiler.startingPoints(SamplePrograms.factorials().load())
+
+        then: 'The main program, its loop and exit, fact and its else branch, and the instruction after every call'
+        (0..<starting.length).findAll { starting[it] } == [0, 1, 4, 7, 8, 9, 11, 13, 14, 17, 20, 23, 24, 25]
+    }
+
+    // Stands for compiled code that halts as soon as it is entered.
+    static class HaltingRoutine extends CompiledRoutine {
+
+        boolean entered
+
+        int execute(TamVM vm, int entry, int budget) {
+            entered = true
+            vm.status = TamVM.halted
+            1
+        }
+    }
+
+    def 'Compiled code installed at the start of the main program runs first'() {
+
+        given: 'A main program that nothing jumps to, with code installed for it as CompiledProgram does'
+        def vm = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 7)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .load()
+        def routine = new HaltingRoutine()
+        vm.jit = new JitCompiler(vm, 0)
+        vm.jit.install(routine, [Machine.CB] as int[])
+
+        when:
+        vm.run()
+
+        then: 'The compiled code ran instead of the interpreter'
+        routine.entered
+        vm.status == TamVM.halted
+        vm.output.toString() == ''
+    }
+
+    def 'The jar holds the program, the compiled code and the TAM runtime'() {
+
+        given:
+        def jar = new JarFile(compile(SamplePrograms.factorials()))
+
+        expect:
+        jar.manifest.mainAttributes.getValue('Main-Class') == 'TAM.CompiledProgram'
+        jar.getEntry(AotCompiler.programResource) != null
+        jar.getEntry('TAM/TamVM.class') != null
+        jar.entries().toList().any { it.name.startsWith('TAM/CompiledRoutine$Aot') }
+
+        and: 'The code store size and then a line per compiled class'
+        jar.getInputStream(jar.getEntry(AotCompiler.routinesResource)).readLines()[0] == "${Machine.PB - Machine.CB}"
+
+        cleanup:
+        jar?.close()
+    }
+
+    def 'The jar runs on its own'() {
+
+        given:
+        def jar = compile(SamplePrograms.echo())
+        def java = new File(System.getProperty('java.home'), 'bin/java').path
+
+        when:
+        def process = new ProcessBuilder(java, '-jar', jar.path).redirectErrorStream(true).start()
+        process.outputStream.withStream { it << SamplePrograms.expected.echo.input }
+        def finished = process.waitFor(60, TimeUnit.SECONDS)
+        def lines = process.inputStream.text.readLines()
+
+        then: 'What the Interpreter would write'
+        finished
+        process.exitValue() == 0
+        lines == ['********** TAM Interpreter (Java Version 2.1) **********',
+                  'Zy', '20', '', 'Program has halted normally.']
+    }
+}
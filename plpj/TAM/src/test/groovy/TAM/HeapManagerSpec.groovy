@@ -0,0 +1,186 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Heap manager')
+class HeapManagerSpec extends Specification {
+
+    private static TamVM machine(int dataStoreSize) {
+        new TamCode().emit(Machine.HALTop, 0, 0, 0).load(dataStoreSize)
+    }
+
+    def 'A disposed block is reused before the heap grows'() {
+
+        given:
+        def vm = machine(4096)
+        def heap = vm.heap
+        int a = heap.allocate(4)
+        int b = heap.allocate(4)
+
+        when:
+        heap.dispose(a)
+        int c = heap.allocate(3)
+
+        then: 'The top three words of the free block are taken, and one is left'
+        c == a + 1
+        vm.HT == b
+        heap.liveWords == 7
+        heap.freeWords == 1
+    }
+
+    def 'Free neighbours coalesce and a free block at HT goes back to the stack'() {
+
+        given:
+        def vm = machine(4096)
+        def heap = vm.heap
+        int a = heap.allocate(4)
+        int b = heap.allocate(4)
+        int c = heap.allocate(4)
+
+        when:
+        heap.dispose(b)
+        heap.dispose(a)
+
+        then: 'a and b are one free block of eight words'
+        heap.freeWords == 8
+        heap.allocate(8) == b
+
+        when:
+        heap.dispose(b)
+        heap.dispose(c)
+
+        then: 'Nothing is left on the heap'
+        vm.HT == vm.HB
+        heap.liveWords == 0
+        heap.freeWords == 0
+    }
+
+    def 'An allocation that does not fit collects garbage once'() {
+
+        given:
+        def vm = machine(1024)
+        vm.setGarbageCollection(true)
+
+        when:
+        vm.heap.allocate(2048)
+
+        then:
+        vm.status == TamVM.failedDataStoreFull
+        vm.heap.collections == 1
+    }
+
+    def 'Addresses that are not live blocks are not disposed of'() {
+
+        given:
+        def vm = machine(4096)
+        def heap = vm.heap
+        int a = heap.allocate(4)
+
+        when:
+        heap.dispose(a + 1)
+        heap.dispose(a)
+        heap.dispose(a)
+
+        then:
+        heap.disposals == 1
+        vm.HT == vm.HB
+    }
+
+    def 'The heap is full once it meets the stack'() {
+
+        given:
+        def vm = machine(1024)
+
+        when:
+        vm.heap.allocate(2000)
+
+        then:
+        vm.status == TamVM.failedDataStoreFull
+    }
+
+    // Keeps a block of two words that points to a block holding 42, then
+    // allocates and drops 1000 blocks of 100 words, then writes what the
+    // kept blocks hold.
+    private static TamCode churn() {
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 2)                      // kept at SB+0
+                .call(Machine.newDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 1)                      // its target at SB+1
+                .call(Machine.newDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 42)
+                .emit(Machine.LOADop, 1, Machine.SBr, 1)
+                .emit(Machine.STOREIop, 1, 0, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 1)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.STOREIop, 1, 0, 0)
+                .emit(Machine.POPop, 0, 0, 1)                        // reachable only through SB+0 now
+                .emit(Machine.LOADLop, 0, 0, 1000)                   // k at SB+1
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 1)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 100)
+                .call(Machine.newDisplacement)
+                .emit(Machine.POPop, 0, 0, 1)
+                .emit(Machine.LOADop, 1, Machine.SBr, 1)
+                .call(Machine.predDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 1)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADIop, 1, 0, 0)
+                .emit(Machine.LOADIop, 1, 0, 0)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    def 'Unreachable blocks are collected only when garbage collection is on'() {
+
+        given:
+        def vm = churn().load(4096)
+        vm.setGarbageCollection(garbageCollection)
+
+        when:
+        vm.run()
+
+        then:
+        vm.status == status
+        vm.output.toString() == output
+        (vm.heap.collections > 0) == garbageCollection
+
+        where:
+        garbageCollection | status                    | output
+        false             | TamVM.failedDataStoreFull | ''
+        true              | TamVM.halted              | '42'
+    }
+
+    def 'A collection keeps the blocks reachable from the stack, and no others'() {
+
+        given: 'a points to b, and c is unreachable'
+        def vm = machine(4096)
+        def heap = vm.heap
+        int a = heap.allocate(2)
+        int b = heap.allocate(1)
+        int c = heap.allocate(5)
+        vm.data[a & vm.mask] = b
+        vm.data[b & vm.mask] = 42
+
+        and: 'The stack holds an address within a'
+        vm.data[vm.ST & vm.mask] = a + offset
+        vm.ST = vm.ST + 1
+        vm.data[vm.ST & vm.mask] = 0
+
+        when:
+        heap.collect()
+
+        then: 'c, at HT, goes back to the stack'
+        heap.liveWords == 3
+        heap.collectedWords == 5
+        vm.HT == b
+        vm.data[b & vm.mask] == 42
+
+        where:
+        offset << [0, 1]
+    }
+}
@@ -0,0 +1,139 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Input channels')
+class InputChannelSpec extends Specification {
+
+    private static List<Integer> readAll(InputChannel input) {
+        def read = []
+        int b
+        while ((b = input.read()) != -1)
+            read << b
+        read
+    }
+
+    def 'A channel of bytes reaches the end of input once they are read'() {
+
+        given:
+        def input = new InputChannel([1, 2, 255] as byte[])
+
+        expect:
+        readAll(input) == [1, 2, 255]
+        input.read() == -1
+    }
+
+    def 'A stream is read through a buffer smaller than it'() {
+
+        given:
+        def bytes = (0..<1000).collect { it % 251 }
+        def input = new InputChannel(new ByteArrayInputStream(bytes as byte[]), 16)
+
+        expect:
+        readAll(input) == bytes
+    }
+
+    def 'A fed channel has input pending until it is offered'() {
+
+        given:
+        def input = new InputChannel()
+
+        expect:
+        input.peek(0) == InputChannel.pending
+
+        when:
+        input.offer('ab'.getBytes('US-ASCII'))
+
+        then:
+        input.peek(1) == 'b' as char
+        input.peek(2) == InputChannel.pending
+        input.read() == 'a' as char
+        input.read() == 'b' as char
+    }
+
+    def 'Offers beyond the buffer are kept in order'() {
+
+        given:
+        def input = new InputChannel()
+        def expected = (0..<1000).collect { it % 251 }
+
+        when: 'Reading some as they come'
+        def read = []
+        expected.collate(7).each { chunk ->
+            input.offer(chunk as byte[])
+            read << input.read()
+        }
+        input.close()
+        read.addAll(readAll(input))
+
+        then:
+        read == expected
+    }
+
+    def 'A closed channel reaches the end of input once drained'() {
+
+        given:
+        def input = new InputChannel()
+        input.offer([1] as byte[])
+        input.close()
+
+        expect:
+        input.peek(0) == 1
+        input.peek(1) == -1
+        input.read() == 1
+        input.read() == -1
+        input.read() == -1
+    }
+
+    def 'Offers are refused once the channel is closed, and by channels that are not fed'() {
+
+        when:
+        channel.offer([1] as byte[])
+
+        then:
+        thrown(IllegalStateException)
+
+        where:
+        channel << [new InputChannel().with { close(); it }, new InputChannel([1] as byte[])]
+    }
+
+    def 'Reading a fed channel before its input arrives is an error'() {
+
+        when:
+        new InputChannel().read()
+
+        then:
+        thrown(IOException)
+    }
+
+    def 'The output tied to a stream channel is flushed before each refill'() {
+
+        given: 'A prompt not yet written'
+        def out = new ByteArrayOutputStream()
+        def tied = new OutputChannel(out)
+        def input = new InputChannel(new ByteArrayInputStream('abcdef'.getBytes('US-ASCII')), 4)
+        input.tied = tied
+        tied.put('>' as char)
+
+        when:
+        def first = input.read()
+
+        then:
+        first == 'a' as char
+        out.toString('US-ASCII') == '>'
+
+        when: 'More output, which waits for the next refill'
+        tied.put('?' as char)
+        3.times { input.read() }
+
+        then:
+        out.toString('US-ASCII') == '>'
+
+        when:
+        input.read()
+
+        then:
+        out.toString('US-ASCII') == '>?'
+    }
+}
@@ -0,0 +1,66 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Compiling tier')
+class JitCompilerSpec extends Specification {
+
+    def 'Code is compiled once it has been entered threshold times'() {
+
+        given: 'A loop jumped back to 180 times'
+        def vm = SamplePrograms.squares().load()
+        vm.setCompilationThreshold(threshold)
+
+        when:
+        vm.run()
+
+        then:
+        vm.status == TamVM.halted
+        (vm.routinesCompiled > 0) == compiled
+
+        where:
+        threshold | compiled
+        0         | false
+        200       | false
+        100       | true
+        1         | true
+    }
+
+    def 'A recursive routine is compiled and called from compiled code'() {
+
+        given:
+        def vm = SamplePrograms.factorials().load()
+        vm.setCompilationThreshold(2)
+
+        when:
+        vm.run()
+
+        then:
+        vm.routinesCompiled > 0
+        vm.output.toString() == SamplePrograms.expected.factorials.output
+    }
+
+    def 'Loading another program forgets what was compiled'() {
+
+        given:
+        def vm = SamplePrograms.squares().load()
+        vm.setCompilationThreshold(1)
+        vm.run()
+
+        when:
+        vm.load(SamplePrograms.zeroDivide().instructions, SamplePrograms.zeroDivide().instructions.length)
+
+        then:
+        vm.routinesCompiled == 0
+    }
+
+    def 'A negative threshold is refused'() {
+
+        when:
+        new TamVM().setCompilationThreshold(-1)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,113 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+import java.nio.ByteBuffer
+
+@Title('TAM object files')
+class ObjectFileSpec extends Specification {
+
+    private static List fields(Instruction[] code) {
+        code.collect { [it.op, it.r, it.n, it.d] }
+    }
+
+    private static byte[] write(Instruction[] code) {
+        def bytes = new ByteArrayOutputStream()
+        ObjectFile.write(code, code.length, bytes)
+        bytes.toByteArray()
+    }
+
+    def 'A program whose fields fit is written packed and read back'() {
+
+        given:
+        def code = SamplePrograms.factorials().instructions
+
+        when:
+        def bytes = new ByteArrayOutputStream()
+        def packed = ObjectFile.write(code, code.length, bytes)
+
+        then: 'A header of three words, then a word per instruction'
+        packed
+        bytes.size() == 12 + 4 * code.length
+        ByteBuffer.wrap(bytes.toByteArray()).getInt() == ObjectFile.magic
+
+        and:
+        fields(ObjectFile.read(new ByteArrayInputStream(bytes.toByteArray()))) == fields(code)
+    }
+
+    def 'Negative displacements survive packing'() {
+
+        given:
+        def code = new TamCode()
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .emit(Machine.LOADLop, 0, 0, Short.MIN_VALUE)
+                .emit(Machine.LOADLop, 0, 0, Short.MAX_VALUE)
+                .instructions
+
+        expect:
+        fields(ObjectFile.read(ByteBuffer.wrap(write(code)))) == fields(code)
+    }
+
+    def 'A program with a field too large to pack is written in the legacy format'() {
+
+        given:
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 100000)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .instructions
+
+        when:
+        def bytes = new ByteArrayOutputStream()
+        def packed = ObjectFile.write(code, code.length, bytes)
+
+        then: 'Four words per instruction, read back all the same'
+        !packed
+        bytes.size() == 16 * code.length
+        fields(ObjectFile.read(ByteBuffer.wrap(bytes.toByteArray()))) == fields(code)
+    }
+
+    def 'Object files written by Instruction.write are still read'() {
+
+        given:
+        def code = SamplePrograms.squares().instructions
+        def bytes = new ByteArrayOutputStream()
+        def output = new DataOutputStream(bytes)
+        code.each { it.write(output) }
+
+        expect:
+        fields(ObjectFile.read(ByteBuffer.wrap(bytes.toByteArray()))) == fields(code)
+    }
+
+    def 'An object file is mapped from disk'() {
+
+        given:
+        def code = SamplePrograms.nested().instructions
+        def file = File.createTempFile('program', '.tam')
+        file.deleteOnExit()
+        file.bytes = write(code)
+
+        expect:
+        fields(ObjectFile.read(file)) == fields(code)
+    }
+
+    def 'A damaged packed object file is refused'() {
+
+        given:
+        def bytes = ByteBuffer.wrap(write(SamplePrograms.squares().instructions))
+        bytes.putInt(position, value)
+
+        when:
+        ObjectFile.read(bytes)
+
+        then:
+        def e = thrown(IOException)
+        e.message == message
+
+        where:
+        position | value | message
+        4        | 2     | 'unsupported object format version 2'
+        8        | 1000  | 'truncated object program'
+        8        | -1    | 'truncated object program'
+    }
+}
@@ -0,0 +1,121 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Program cache')
+class ProgramCacheSpec extends Specification {
+
+    private final static int codeStoreSize = Machine.PB - Machine.CB
+
+    // a program of length instructions, told apart by its literal
+    private static byte[] program(int literal, int length) {
+        def code = new TamCode().emit(Machine.LOADLop, 0, 0, literal)
+        (length - 2).times { code.emit(Machine.POPop, 0, 0, 0) }
+        code.emit(Machine.HALTop, 0, 0, 0).objectProgram
+    }
+
+    def 'A program is decoded once and then shared'() {
+
+        given:
+        def cache = new ProgramCache(100)
+
+        when: 'The same bytes are looked up twice'
+        def first = cache.get(program(1, 4), codeStoreSize)
+        def second = cache.get(program(1, 4), codeStoreSize)
+
+        then:
+        second.is(first)
+        cache.misses == 1
+        cache.hits == 1
+        cache.programs == 1
+        cache.instructions == 4
+    }
+
+    def 'A program is kept apart for each code store size'() {
+
+        given:
+        def cache = new ProgramCache(100)
+        def bytes = program(1, 4)
+
+        when:
+        def small = cache.get(bytes, codeStoreSize)
+        def large = cache.get(bytes, 2 * codeStoreSize)
+
+        then:
+        !large.is(small)
+        large.codeStoreSize == 2 * codeStoreSize
+        cache.misses == 2
+
+        when: 'It is loaded into a machine with the other size'
+        new TamVM(codeStoreSize, 1024).load(large)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def 'The least recently used programs are evicted'() {
+
+        given:
+        def cache = new ProgramCache(10)
+        def a = program(1, 4), b = program(2, 4), c = program(3, 4)
+
+        when: 'a is used again after b, before c is added'
+        cache.get(a, codeStoreSize)
+        cache.get(b, codeStoreSize)
+        cache.get(a, codeStoreSize)
+        cache.get(c, codeStoreSize)
+
+        then:
+        cache.evictions == 1
+        cache.programs == 2
+        cache.instructions == 8
+
+        when:
+        cache.get(a, codeStoreSize)
+        cache.get(b, codeStoreSize)
+
+        then: 'a is still kept, but b is decoded again'
+        cache.hits == 2
+        cache.misses == 4
+    }
+
+    def 'A program larger than the cache is decoded but not kept'() {
+
+        given:
+        def cache = new ProgramCache(10)
+
+        when:
+        def program = cache.get(program(1, 11), codeStoreSize)
+
+        then:
+        program.length == 11
+        cache.programs == 0
+        cache.instructions == 0
+    }
+
+    def 'A program that does not fit into the code store is refused'() {
+
+        when:
+        new ProgramCache(100).get(program(1, 20), 10)
+
+        then:
+        thrown(IOException)
+    }
+
+    def 'Clearing forgets the programs but not the statistics'() {
+
+        given:
+        def cache = new ProgramCache(100)
+        cache.get(program(1, 4), codeStoreSize)
+
+        when:
+        cache.clear()
+        cache.get(program(1, 4), codeStoreSize)
+
+        then:
+        cache.misses == 2
+        cache.programs == 1
+        cache.instructions == 4
+    }
+}
@@ -0,0 +1,412 @@
+package TAM
+
+/**
+ * Small TAM programs, each built the way the Triangle compiler would lay
+ * it out, for running on every tier of the machine. Each comes with the
+ * input it reads, if any, and what the interpreter makes of it.
+ */
+final class SamplePrograms {
+
+    // the data store that the programs are run with
+    final static int dataStoreSize = 1 << 14
+
+    // what puteol writes
+    final static String eol = System.lineSeparator()
+
+    // name -> input, status and output of the interpreter
+    final static Map<String, Map> expected = [
+            squares    : [input: '', status: TamVM.halted, output: '226' + eol],
+            factorials : [input: '', status: TamVM.halted, output: [1, 1, 2, 6, 24, 120, 720, 5040].join(eol) + eol],
+            nested     : [input: '', status: TamVM.halted, output: '33' + eol + '6' + eol],
+            closures   : [input: '', status: TamVM.halted, output: '100 103 108 115 124 135 ' + eol],
+            heap       : [input: '', status: TamVM.halted, output: '271' + eol],
+            echo       : [input: '3 10 -20 30 \nZy\n', status: TamVM.halted, output: 'Zy' + eol + '20' + eol],
+            records    : [input: '', status: TamVM.halted, output: '1' + eol + '303' + eol],
+            aliased    : [input: '', status: TamVM.halted, output: '67'],
+            zeroDivide : [input: '', status: TamVM.failedZeroDivide, output: '1'],
+            overflow   : [input: '', status: TamVM.failedOverflow, output: '32765 32766 32767 '],
+            runaway    : [input: '', status: TamVM.failedDataStoreFull, output: ''],
+            wildJump   : [input: '', status: TamVM.failedInvalidCodeAddress, output: '1'],
+            wildPointer: [input: '', status: TamVM.failedInvalidDataAddress, output: '1']]
+
+    private SamplePrograms() {
+    }
+
+    static List<String> getNames() {
+        expected.keySet() as List
+    }
+
+    static TamCode build(String name) {
+        SamplePrograms."$name"()
+    }
+
+    // Adds up i * i mod 301 for i = 0 .. 179, in a loop over globals.
+    static TamCode squares() {
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 0)                      // i at SB+0
+                .emit(Machine.LOADLop, 0, 0, 0)                      // s at SB+1
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 180)
+                .call(Machine.ltDisplacement)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 1)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.multDisplacement)
+                .call(Machine.addDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 301)
+                .call(Machine.modDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 1)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.succDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 0)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+                .emit(Machine.LOADop, 1, Machine.SBr, 1)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    // Writes fact(n) for n = 0 .. 7, fact being recursive.
+    static TamCode factorials() {
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 0)                      // n at SB+0
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 8)
+                .call(Machine.ltDisplacement)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+        int call = code.here()
+        code.emit(Machine.CALLop, Machine.SBr, Machine.CBr, 0)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.succDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 0)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+                .emit(Machine.HALTop, 0, 0, 0)
+
+        // func fact (n: Integer) : Integer ~ if n <= 1 then 1 else n * fact(n - 1)
+        int fact = code.here()
+        code.patch(call, fact)
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .call(Machine.leDisplacement)
+        int recurse = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .emit(Machine.RETURNop, 1, 0, 1)
+        code.patch(recurse, code.here())
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .call(Machine.predDisplacement)
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, fact)
+                .call(Machine.multDisplacement)
+                .emit(Machine.RETURNop, 1, 0, 1)
+    }
+
+    // Reaches the variable of an enclosing routine through L1 and L2.
+    static TamCode nested() {
+        def code = new TamCode()
+        int callOuter = code.here()
+        code.emit(Machine.CALLop, Machine.SBr, Machine.CBr, 0)
+                .emit(Machine.HALTop, 0, 0, 0)
+
+        // proc outer () ~ let var v := 5 in begin putint(inner(3)); putint(v) end
+        code.patch(callOuter, code.here())
+                .emit(Machine.LOADLop, 0, 0, 5)                      // v at LB+3
+                .emit(Machine.LOADLop, 0, 0, 3)
+        int callInner = code.here()
+        code.emit(Machine.CALLop, Machine.LBr, Machine.CBr, 0)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.LOADop, 1, Machine.LBr, 3)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.RETURNop, 0, 0, 0)
+
+        // func inner (x: Integer) : Integer ~ v * x + innermost(2), with v := v + 1 in between
+        code.patch(callInner, code.here())
+                .emit(Machine.LOADop, 1, Machine.L1r, 3)
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .call(Machine.multDisplacement)
+                .emit(Machine.LOADop, 1, Machine.L1r, 3)
+                .call(Machine.succDisplacement)
+                .emit(Machine.STOREop, 1, Machine.L1r, 3)
+                .emit(Machine.LOADLop, 0, 0, 2)
+        int callInnermost = code.here()
+        code.emit(Machine.CALLop, Machine.LBr, Machine.CBr, 0)
+                .call(Machine.addDisplacement)
+                .emit(Machine.RETURNop, 1, 0, 1)
+
+        // func innermost (y: Integer) : Integer ~ (v + x) * y
+        code.patch(callInnermost, code.here())
+                .emit(Machine.LOADop, 1, Machine.L2r, 3)
+                .emit(Machine.LOADop, 1, Machine.L1r, -1)
+                .call(Machine.addDisplacement)
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .call(Machine.multDisplacement)
+                .emit(Machine.RETURNop, 1, 0, 1)
+    }
+
+    // Writes square(i) + plus(i) for i = 0 .. 5, calling both through
+    // closures with CALLI.
+    static TamCode closures() {
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 0)                      // i at SB+0
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 6)
+                .call(Machine.ltDisplacement)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+        int closures = code.here()
+        [0, 1].each {
+            code.emit(Machine.LOADop, 1, Machine.SBr, 0)
+                    .emit(Machine.LOADAop, 0, Machine.SBr, 0)
+                    .emit(Machine.LOADAop, 0, Machine.CBr, 0)
+                    .emit(Machine.CALLIop, 0, 0, 0)
+        }
+        code.call(Machine.addDisplacement)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.LOADLop, 0, 0, (int) (' ' as char))
+                .call(Machine.putDisplacement)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.succDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 0)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+
+        // func square (x: Integer) : Integer ~ x * x
+        code.patch(closures + 2, code.here())
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .call(Machine.multDisplacement)
+                .emit(Machine.RETURNop, 1, 0, 1)
+
+        // func plus (x: Integer) : Integer ~ x + i + 100
+        code.patch(closures + 6, code.here())
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.addDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 100)
+                .call(Machine.addDisplacement)
+                .emit(Machine.RETURNop, 1, 0, 1)
+    }
+
+    // Allocates blocks of 1 .. 10 words holding 0, 10 .. 90, disposes of
+    // the even ones, churns through 500 more pairs, then allocates three
+    // blocks holding 7 and adds up the first word of every block kept.
+    static TamCode heap() {
+        def code = new TamCode()
+        (0..9).each { k ->
+            code.emit(Machine.LOADLop, 0, 0, k + 1)                  // block k at SB+k
+                    .call(Machine.newDisplacement)
+        }
+        (0..9).each { k ->
+            code.emit(Machine.LOADLop, 0, 0, 10 * k)
+                    .emit(Machine.LOADop, 1, Machine.SBr, k)
+                    .emit(Machine.STOREIop, 1, 0, 0)
+        }
+        (0..9).findAll { it % 2 == 0 }.each { k ->
+            code.emit(Machine.LOADop, 1, Machine.SBr, k)
+                    .call(Machine.disposeDisplacement)
+        }
+
+        code.emit(Machine.LOADLop, 0, 0, 500)                        // pairs at SB+10
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 10)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 3)
+                .call(Machine.newDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 4)
+                .call(Machine.newDisplacement)
+                .call(Machine.disposeDisplacement)
+                .call(Machine.disposeDisplacement)
+                .emit(Machine.LOADop, 1, Machine.SBr, 10)
+                .call(Machine.predDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 10)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+
+        (0..2).each { j ->
+            code.emit(Machine.LOADLop, 0, 0, 2)                      // block j at SB+11+j
+                    .call(Machine.newDisplacement)
+                    .emit(Machine.LOADLop, 0, 0, 7)
+                    .emit(Machine.LOADop, 1, Machine.SBr, 11 + j)
+                    .emit(Machine.STOREIop, 1, 0, 0)
+        }
+        code.emit(Machine.LOADLop, 0, 0, 0)
+        ((1..9).findAll { it % 2 == 1 } + (11..13)).each { k ->
+            code.emit(Machine.LOADop, 1, Machine.SBr, k)
+                    .emit(Machine.LOADIop, 1, 0, 0)
+                    .call(Machine.addDisplacement)
+        }
+        code.call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    // Reads a count and that many integers, skips to the next line and
+    // echoes two characters from it, then writes the sum.
+    static TamCode echo() {
+        def code = new TamCode()
+                .emit(Machine.PUSHop, 0, 0, 4)                       // n, x, sum, c at SB+0 .. SB+3
+                .emit(Machine.LOADAop, 0, Machine.SBr, 0)
+                .call(Machine.getintDisplacement)
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 0)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADAop, 0, Machine.SBr, 1)
+                .call(Machine.getintDisplacement)
+                .emit(Machine.LOADop, 1, Machine.SBr, 2)
+                .emit(Machine.LOADop, 1, Machine.SBr, 1)
+                .call(Machine.addDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 2)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.predDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 0)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+                .call(Machine.geteolDisplacement)
+        2.times {
+            code.emit(Machine.LOADAop, 0, Machine.SBr, 3)
+                    .call(Machine.getDisplacement)
+                    .emit(Machine.LOADop, 1, Machine.SBr, 3)
+                    .call(Machine.putDisplacement)
+        }
+        code.call(Machine.puteolDisplacement)
+                .emit(Machine.LOADop, 1, Machine.SBr, 2)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    // Copies a record of five words back and forth 300 times, bumping a
+    // field each time, then compares the copies with eq and writes the
+    // field.
+    static TamCode records() {
+        def code = new TamCode()
+        (1..5).each {
+            code.emit(Machine.LOADLop, 0, 0, it)                     // r1 at SB+0 .. SB+4
+        }
+        code.emit(Machine.PUSHop, 0, 0, 5)                           // r2 at SB+5 .. SB+9
+                .emit(Machine.LOADLop, 0, 0, 300)                    // k at SB+10
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 10)
+        int exit = code.here()
+        code.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0)
+                .emit(Machine.LOADop, 5, Machine.SBr, 0)
+                .emit(Machine.STOREop, 5, Machine.SBr, 5)
+                .emit(Machine.LOADop, 1, Machine.SBr, 7)
+                .call(Machine.succDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 7)
+                .emit(Machine.LOADop, 5, Machine.SBr, 5)
+                .emit(Machine.STOREop, 5, Machine.SBr, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 10)
+                .call(Machine.predDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 10)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+        code.patch(exit, code.here())
+                .emit(Machine.LOADop, 5, Machine.SBr, 0)
+                .emit(Machine.LOADop, 5, Machine.SBr, 5)
+                .emit(Machine.LOADLop, 0, 0, 5)
+                .call(Machine.eqDisplacement)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.LOADop, 1, Machine.SBr, 2)
+                .call(Machine.putintDisplacement)
+                .call(Machine.puteolDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    // Reads and writes a global through its address while it is still in
+    // the same straight-line code as the words pushed above it, and reads
+    // back a word just popped.
+    static TamCode aliased() {
+        new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 5)                      // x at SB+0
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .call(Machine.addDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 0)            // x := x + 1
+                .emit(Machine.LOADAop, 0, Machine.SBr, 0)
+                .emit(Machine.LOADIop, 1, 0, 0)
+                .emit(Machine.LOADLop, 0, 0, 10)
+                .call(Machine.multDisplacement)
+                .emit(Machine.LOADAop, 0, Machine.SBr, 0)
+                .emit(Machine.STOREIop, 1, 0, 0)                     // x := x * 10
+                .emit(Machine.LOADLop, 0, 0, 7)
+                .emit(Machine.POPop, 0, 0, 1)
+                .emit(Machine.PUSHop, 0, 0, 1)
+                .call(Machine.addDisplacement)                       // x + the 7 popped
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    static TamCode zeroDivide() {
+        new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 7)
+                .emit(Machine.LOADLop, 0, 0, 0)
+                .call(Machine.divDisplacement)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    // Counts up from maxint - 3, writing each number, until it overflows.
+    static TamCode overflow() {
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, Machine.maxintRep - 3)   // n at SB+0
+        int loop = code.here()
+        code.emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.succDisplacement)
+                .emit(Machine.STOREop, 1, Machine.SBr, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.LOADLop, 0, 0, (int) (' ' as char))
+                .call(Machine.putDisplacement)
+                .emit(Machine.JUMPop, 0, Machine.CBr, loop)
+    }
+
+    // proc p () ~ p()
+    static TamCode runaway() {
+        new TamCode()
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, 2)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, 2)
+                .emit(Machine.RETURNop, 0, 0, 0)
+    }
+
+    // Jumps through a computed address past the end of the code.
+    static TamCode wildJump() {
+        new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.LOADLop, 0, 0, 900)
+                .emit(Machine.JUMPIop, 0, 0, 0)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+
+    // Loads through an address past the end of the data store.
+    static TamCode wildPointer() {
+        new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.LOADLop, 0, 0, dataStoreSize + 1000)
+                .emit(Machine.LOADIop, 1, 0, 0)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+    }
+}
@@ -0,0 +1,102 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.TimeUnit
+
+@Title('Scheduler')
+class SchedulerSpec extends Specification {
+
+    def scheduler = new Scheduler(2, 50)
+
+    def cleanup() {
+        scheduler.shutdown()
+    }
+
+    def 'Many machines share a few carrier threads'() {
+
+        given:
+        def machines = (1..40).collect { SamplePrograms.factorials().load() }
+
+        when:
+        def statuses = machines.collect { scheduler.submit(it) }.collect { it.get(30, TimeUnit.SECONDS) }
+
+        then: 'Each runs to the end, a quantum at a time'
+        statuses.every { it == TamVM.halted }
+        machines.every { it.output.toString() == SamplePrograms.expected.factorials.output }
+        scheduler.quanta > 40
+        scheduler.liveMachines == 0
+    }
+
+    def 'A machine waiting for input is parked until it arrives'() {
+
+        given:
+        def vm = SamplePrograms.echo().load()
+        def input = new InputChannel()
+        vm.setInput(input)
+
+        when:
+        def status = scheduler.submit(vm)
+        while (scheduler.parks == 0)
+            Thread.sleep(1)
+
+        then:
+        !status.done
+        scheduler.liveMachines == 1
+
+        when:
+        input.offer(SamplePrograms.expected.echo.input.getBytes('US-ASCII'))
+
+        then:
+        status.get(30, TimeUnit.SECONDS) == TamVM.halted
+        vm.output.toString() == SamplePrograms.expected.echo.output
+    }
+
+    def 'A machine reading past the end of its input is not parked for ever'() {
+
+        given: 'Two numbers of the three asked for'
+        def vm = SamplePrograms.echo().load()
+        def input = new InputChannel()
+        vm.setInput(input)
+
+        when:
+        def status = scheduler.submit(vm)
+        input.offer('3 1 2'.getBytes('US-ASCII'))
+        input.close()
+
+        then:
+        status.get(30, TimeUnit.SECONDS) == TamVM.halted
+        vm.output.toString().endsWith('3' + SamplePrograms.eol)
+    }
+
+    def 'A machine still running when the scheduler shuts down is cancelled'() {
+
+        given: 'A program that never stops'
+        def vm = new TamCode().emit(Machine.JUMPop, 0, Machine.CBr, 0).load()
+
+        when:
+        def status = scheduler.submit(vm)
+        scheduler.shutdown()
+        status.get(30, TimeUnit.SECONDS)
+
+        then:
+        thrown(CancellationException)
+        scheduler.liveMachines == 0
+    }
+
+    def 'A scheduler needs carriers and a quantum'() {
+
+        when:
+        new Scheduler(carriers, quantum)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        carriers | quantum
+        0        | 10
+        1        | 0
+    }
+}
@@ -0,0 +1,93 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Snapshots')
+class SnapshotSpec extends Specification {
+
+    def 'A machine restored from a file carries on where the snapshot was taken'() {
+
+        given: 'The heap sample, stopped halfway through its churn'
+        def code = SamplePrograms.heap()
+        def first = code.load(SamplePrograms.dataStoreSize)
+        first.run(2000)
+        def file = File.createTempFile('machine', '.snapshot')
+        file.deleteOnExit()
+        file.withOutputStream { first.snapshot(it) }
+
+        when:
+        def second = code.load(SamplePrograms.dataStoreSize)
+        second.restore(file)
+
+        then: 'The registers and the heap are as they were'
+        [second.CP, second.LB, second.ST, second.HT] == [first.CP, first.LB, first.ST, first.HT]
+        second.instructionCount == 2000
+        second.heap.liveWords == first.heap.liveWords
+        second.heap.freeWords == first.heap.freeWords
+
+        when:
+        first.run()
+        second.run()
+
+        then: 'Both end the same way'
+        second.status == TamVM.halted
+        second.output.toString() == first.output.toString()
+        second.instructionCount == first.instructionCount
+    }
+
+    def 'A machine waiting for input is restored waiting for it'() {
+
+        given:
+        def code = SamplePrograms.echo()
+        def first = code.load()
+        first.setInput(new InputChannel())
+        first.run()
+
+        when:
+        def second = code.load()
+        def input = new InputChannel()
+        second.setInput(input)
+        second.restore(first.snapshot())
+
+        then:
+        second.status == TamVM.waitingForInput
+
+        when:
+        input.offer(SamplePrograms.expected.echo.input.getBytes('US-ASCII'))
+        input.close()
+        second.run()
+
+        then:
+        second.status == TamVM.halted
+        second.output.toString() == SamplePrograms.expected.echo.output
+    }
+
+    def 'A snapshot that does not fit the machine is refused, leaving it reset'() {
+
+        given:
+        def first = SamplePrograms.squares().load(SamplePrograms.dataStoreSize)
+        first.run(100)
+        byte[] snapshot = first.snapshot()
+
+        when:
+        def second = code.load(dataStoreSize)
+        second.run(10)
+        second.restore(damage(snapshot))
+
+        then:
+        def e = thrown(IOException)
+        e.message == message
+        second.status == TamVM.running
+        second.CP == Machine.CB
+        second.instructionCount == 0
+
+        where:
+        code                         | dataStoreSize                      | damage                                        | message
+        SamplePrograms.factorials()  | SamplePrograms.dataStoreSize       | { it }                                        | 'snapshot is of a different program'
+        SamplePrograms.squares()     | 2 * SamplePrograms.dataStoreSize   | { it }                                        | "snapshot is of a data store of ${SamplePrograms.dataStoreSize} words"
+        SamplePrograms.squares()     | SamplePrograms.dataStoreSize       | { Arrays.copyOf(it, it.length - 20) }         | 'truncated snapshot'
+        SamplePrograms.squares()     | SamplePrograms.dataStoreSize       | { Arrays.copyOf(it, 8) }                      | 'not a TAM snapshot'
+        SamplePrograms.squares()     | SamplePrograms.dataStoreSize       | { byte[] b -> b[7] = 9; b }                   | 'unsupported snapshot version 9'
+    }
+}
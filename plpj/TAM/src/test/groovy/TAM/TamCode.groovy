@@ -0,0 +1,56 @@
+package TAM
+
+/**
+ * Builds TAM object programs for the specs, one instruction at a time.
+ */
+class TamCode {
+
+    private final List<Instruction> code = []
+
+    // Returns the address of the next instruction.
+    int here() {
+        Machine.CB + code.size()
+    }
+
+    TamCode emit(int op, int n, int r, int d) {
+        def instr = new Instruction()
+        instr.op = op
+        instr.n = n
+        instr.r = r
+        instr.d = d
+        code << instr
+        this
+    }
+
+    // Appends a call of the given primitive routine.
+    TamCode call(int displacement) {
+        emit(Machine.CALLop, Machine.SBr, Machine.PBr, displacement)
+    }
+
+    // Sets the displacement of the instruction at addr, for jumps and calls
+    // emitted before their target.
+    TamCode patch(int addr, int d) {
+        code[addr - Machine.CB].d = d
+        this
+    }
+
+    Instruction[] getInstructions() {
+        code as Instruction[]
+    }
+
+    // Returns the program as an object file would hold it.
+    byte[] getObjectProgram() {
+        def bytes = new ByteArrayOutputStream()
+        ObjectFile.write(instructions, code.size(), bytes)
+        bytes.toByteArray()
+    }
+
+    // Returns a machine with the program loaded, a data store of
+    // dataStoreSize words and its output collected in memory.
+    TamVM load(int dataStoreSize = TamVM.defaultDataStoreSize) {
+        def vm = new TamVM(Machine.PB - Machine.CB, dataStoreSize)
+        vm.setOutput(new OutputChannel())
+        vm.load(instructions, code.size())
+        vm
+    }
+}
@@ -0,0 +1,130 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+import spock.lang.Unroll
+
+@Title('Triangle Abstract Machine')
+class TamVMSpec extends Specification {
+
+    // Calls a closure with the stack 1021 words high, so that its frame
+    // reaches past the first 1024 words of the data store.
+    private static TamCode closureCallAtBoundary() {
+        new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 42)
+                .emit(Machine.PUSHop, 0, 0, 1021)
+                .emit(Machine.LOADLop, 0, 0, 0)
+                .emit(Machine.LOADAop, 0, Machine.CBr, 8)
+                .emit(Machine.CALLIop, 0, 0, 0)
+                .emit(Machine.LOADop, 1, Machine.SBr, 0)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .emit(Machine.RETURNop, 0, 0, 0)
+    }
+
+    def 'CALLI makes room for the whole frame of the routine it calls'() {
+
+        given:
+        def vm = closureCallAtBoundary().load(dataStoreSize)
+
+        when:
+        vm.run()
+
+        then: 'The frame either fits or the data store is full'
+        vm.status == status
+        vm.output.toString() == output
+
+        where:
+        dataStoreSize | status                    | output
+        1024          | TamVM.failedDataStoreFull | ''
+        2048          | TamVM.halted              | '42'
+    }
+
+    // Runs body as a routine called from the main program, so that the
+    // compiled tier compiles it before it runs.
+    private static TamVM runAsRoutine(int dataStoreSize, String tier, Closure body) {
+        def code = new TamCode()
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, 2)
+                .emit(Machine.HALTop, 0, 0, 0)
+        body(code)
+        code.emit(Machine.RETURNop, 0, 0, 0)
+        def vm = code.load(dataStoreSize)
+        vm.setCompilationThreshold((tier == 'compiled') ? 1 : 0)
+        vm.setRegisterTranslation(tier == 'registers')
+        vm.run()
+        vm
+    }
+
+    def 'Words beyond those committed are not aliased'() {
+
+        when: 'Words 2000 and 976, which share data[976] until 2000 is committed, are stored to'
+        def vm = runAsRoutine(4096, tier) { TamCode code ->
+            code.emit(Machine.LOADLop, 0, 0, 7)
+                    .emit(Machine.LOADLop, 0, 0, 2000)
+                    .emit(Machine.STOREIop, 1, 0, 0)
+                    .emit(Machine.LOADLop, 0, 0, 99)
+                    .emit(Machine.STOREop, 1, Machine.SBr, 976)
+                    .emit(Machine.LOADLop, 0, 0, 2000)
+                    .emit(Machine.LOADIop, 1, 0, 0)
+                    .call(Machine.putintDisplacement)
+        }
+
+        then: 'Each keeps its own value'
+        vm.status == TamVM.halted
+        vm.output.toString() == '7'
+
+        where:
+        tier << ['interpreter', 'compiled', 'registers']
+    }
+
+    @Unroll
+    def 'An access outside the data store fails'() {
+
+        when:
+        def vm = runAsRoutine(1024, tier) { TamCode code ->
+            code.emit(Machine.LOADLop, 0, 0, 5)
+                    .emit(Machine.LOADLop, 0, 0, literal)
+                    .emit(op, 1, r, d)
+        }
+
+        then: 'It fails rather than reaching some other word'
+        vm.status == TamVM.failedInvalidDataAddress
+
+        where:
+        op               | r           | d    | literal | tier
+        Machine.LOADop   | Machine.SBr | -1   | 0       | 'interpreter'
+        Machine.LOADop   | Machine.SBr | -1   | 0       | 'compiled'
+        Machine.LOADop   | Machine.SBr | -1   | 0       | 'registers'
+        Machine.LOADop   | Machine.SBr | 1024 | 0       | 'interpreter'
+        Machine.LOADop   | Machine.SBr | 1024 | 0       | 'compiled'
+        Machine.LOADop   | Machine.SBr | 1024 | 0       | 'registers'
+        Machine.STOREop  | Machine.SBr | 1024 | 0       | 'interpreter'
+        Machine.STOREop  | Machine.SBr | 1024 | 0       | 'compiled'
+        Machine.STOREop  | Machine.SBr | 1024 | 0       | 'registers'
+        Machine.STOREop  | Machine.LBr | -4   | 0       | 'interpreter'
+        Machine.STOREop  | Machine.LBr | -4   | 0       | 'compiled'
+        Machine.STOREop  | Machine.LBr | -4   | 0       | 'registers'
+        Machine.LOADIop  | 0           | 0    | -1      | 'interpreter'
+        Machine.LOADIop  | 0           | 0    | -1      | 'compiled'
+        Machine.LOADIop  | 0           | 0    | -1      | 'registers'
+        Machine.STOREIop | 0           | 0    | 1024    | 'interpreter'
+        Machine.STOREIop | 0           | 0    | 1024    | 'compiled'
+        Machine.STOREIop | 0           | 0    | 1024    | 'registers'
+    }
+
+    def 'Taking words off an empty stack fails'() {
+
+        given:
+        def vm = new TamCode()
+                .call(displacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .load()
+
+        expect:
+        vm.run() == TamVM.failedInvalidDataAddress
+
+        where:
+        displacement << [Machine.notDisplacement, Machine.addDisplacement, Machine.eqDisplacement,
+                         Machine.disposeDisplacement]
+    }
+}
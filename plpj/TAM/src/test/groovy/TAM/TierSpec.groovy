@@ -0,0 +1,225 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+
+@Title('Every tier runs a program as the interpreter does')
+class TierSpec extends Specification {
+
+    // Runs vm with the given input to the end, and returns what the tiers
+    // must agree on. vm may be a machine of another class loader.
+    private static Map run(vm, String input) {
+        def output = new ByteArrayOutputStream()
+        vm.setInput(input.getBytes('US-ASCII'))
+        vm.setOutput(output)
+        vm.run()
+        outcome(vm, output)
+    }
+
+    private static Map outcome(vm, ByteArrayOutputStream output) {
+        [status: vm.status, output: output.toString('US-ASCII'), instructions: vm.instructionCount]
+    }
+
+    private static TamVM machine(TamCode code, int threshold) {
+        def vm = code.load(SamplePrograms.dataStoreSize)
+        vm.setCompilationThreshold(threshold)
+        vm
+    }
+
+    static Map interpreter(TamCode code, String input) {
+        run(machine(code, 0), input)
+    }
+
+    // compiled the first time each routine or loop is entered
+    static Map compiled(TamCode code, String input) {
+        run(machine(code, 1), input)
+    }
+
+    // interpreted at first, compiled once warm
+    static Map warmed(TamCode code, String input) {
+        run(machine(code, 5), input)
+    }
+
+    // translated into register code, block by block
+    static Map registers(TamCode code, String input) {
+        def vm = machine(code, 0)
+        vm.setRegisterTranslation(true)
+        run(vm, input)
+    }
+
+    static Map budgeted(TamCode code, String input) {
+        def vm = machine(code, 0)
+        def output = new ByteArrayOutputStream()
+        vm.setInput(input.getBytes('US-ASCII'))
+        vm.setOutput(output)
+        while (vm.run(7) == TamVM.running)
+            continue
+        outcome(vm, output)
+    }
+
+    static Map profiled(TamCode code, String input) {
+        def vm = machine(code, 5)
+        def profiler = new Profiler()
+        vm.setProfiler(profiler)
+        def result = run(vm, input)
+        assert profiler.instructions == vm.instructionCount
+        result
+    }
+
+    // snapshot taken halfway, and restored into another machine
+    static Map restored(TamCode code, String input) {
+        def half = interpreter(code, input).instructions.intdiv(2)
+        def channel = new InputChannel(input.getBytes('US-ASCII'))
+        def output = new ByteArrayOutputStream()
+
+        def first = machine(code, 1)
+        first.setInput(channel)
+        first.setOutput(output)
+        first.run(half)
+        byte[] snapshot = first.snapshot()
+
+        def second = machine(code, 1)
+        second.setInput(channel)
+        second.setOutput(output)
+        second.restore(snapshot)
+        second.run()
+        outcome(second, output)
+    }
+
+    // shared through a program cache by two machines, the second run reported
+    static Map cached(TamCode code, String input) {
+        def cache = new ProgramCache(1024)
+        def first = new TamVM(Machine.PB - Machine.CB, SamplePrograms.dataStoreSize)
+        first.load(cache.get(code.objectProgram, first.codeStoreSize))
+        def reference = run(first, input)
+
+        def second = new TamVM(Machine.PB - Machine.CB, SamplePrograms.dataStoreSize)
+        second.setCompilationThreshold(1)
+        second.load(cache.get(code.objectProgram, second.codeStoreSize))
+        assert cache.hits == 1
+        def result = run(second, input)
+        assert result == reference
+        result
+    }
+
+    // on a scheduler, with the input offered a byte at a time as it runs
+    static Map scheduled(TamCode code, String input) {
+        def scheduler = new Scheduler(2, 3)
+        try {
+            def vm = machine(code, 0)
+            def channel = new InputChannel()
+            def output = new ByteArrayOutputStream()
+            vm.setInput(channel)
+            vm.setOutput(output)
+            def status = scheduler.submit(vm)
+            input.getBytes('US-ASCII').each { channel.offer([it] as byte[]) }
+            channel.close()
+            assert status.get(10, TimeUnit.SECONDS) == vm.status
+            outcome(vm, output)
+        } finally {
+            scheduler.shutdown()
+        }
+    }
+
+    // compiled ahead of time into a jar, whose own classes then run it
+    static Map ahead(TamCode code, String input) {
+        def jar = File.createTempFile('tier', '.jar')
+        jar.deleteOnExit()
+        int regions = jar.withOutputStream { AotCompiler.compile(code.load(), it) }
+
+        def loader = new URLClassLoader([jar.toURI().toURL()] as URL[], (ClassLoader) null)
+        try {
+            def vmClass = loader.loadClass('TAM.TamVM')
+            def programClass = loader.loadClass('TAM.CompiledProgram')
+            def codeStoreSize = programClass.getDeclaredMethod('codeStoreSize')
+            def load = programClass.getDeclaredMethod('load', vmClass)
+            codeStoreSize.accessible = true
+            load.accessible = true
+
+            def vm = vmClass.newInstance(codeStoreSize.invoke(null), SamplePrograms.dataStoreSize)
+            assert load.invoke(null, vm) == regions
+            run(vm, input)
+        } finally {
+            loader.close()
+        }
+    }
+
+    @Unroll
+    def 'The interpreter runs #name'() {
+
+        given:
+        def expected = SamplePrograms.expected[name]
+
+        when:
+        def result = interpreter(SamplePrograms.build(name), expected.input)
+
+        then:
+        result.status == expected.status
+        result.output == expected.output
+
+        where:
+        name << SamplePrograms.names
+    }
+
+    @Unroll
+    def 'The #tier tier runs #name as the interpreter does'() {
+
+        given:
+        def code = SamplePrograms.build(name)
+        def input = SamplePrograms.expected[name].input
+
+        expect: 'The same output, status and instruction count'
+        TierSpec."$tier"(code, input) == interpreter(code, input)
+
+        where:
+        [name, tier] << [SamplePrograms.names,
+                         ['compiled', 'warmed', 'registers', 'budgeted', 'profiled', 'restored', 'cached',
+                          'scheduled', 'ahead']]
+                .combinations()
+    }
+
+    def 'Hot code is compiled'() {
+
+        when:
+        def vm = machine(SamplePrograms.squares(), 5)
+        run(vm, '')
+
+        then:
+        vm.routinesCompiled > 0
+    }
+
+    def 'Verified code is translated into register form'() {
+
+        when:
+        def vm = machine(SamplePrograms.squares(), 0)
+        vm.setRegisterTranslation(true)
+
+        then: 'The loop test and body are blocks'
+        vm.registerCode.startsAt(Machine.CB + 2)
+        vm.registerCode.startsAt(Machine.CB + 6)
+    }
+
+    @Unroll
+    def 'Register code leaves the data store as the interpreter does running #name'() {
+
+        given:
+        def interpreted = machine(SamplePrograms.build(name), 0)
+        def translated = machine(SamplePrograms.build(name), 0)
+        translated.setRegisterTranslation(true)
+
+        when:
+        run(interpreted, SamplePrograms.expected[name].input)
+        run(translated, SamplePrograms.expected[name].input)
+
+        then: 'Down to the words left above the stack'
+        translated.ST == interpreted.ST
+        translated.HT == interpreted.HT
+        translated.data as List == interpreted.data as List
+
+        where:
+        name << SamplePrograms.names
+    }
+}
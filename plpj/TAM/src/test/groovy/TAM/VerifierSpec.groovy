@@ -0,0 +1,99 @@
+package TAM
+
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Verifier')
+class VerifierSpec extends Specification {
+
+    def 'A routine passes with the room its stack needs at each instruction'() {
+
+        when:
+        def vm = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .emit(Machine.LOADLop, 0, 0, 2)
+                .call(Machine.addDisplacement)
+                .emit(Machine.POPop, 0, 0, 1)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .load()
+
+        then: 'The words by which the stack can still grow, and shrink'
+        vm.headroom as List == [2, 1, 0, 1, 2]
+        vm.footroom as List == [0, 1, 2, 1, 0]
+    }
+
+    def 'A routine that calls through a closure is left to the checked interpreter'() {
+
+        when:
+        def vm = SamplePrograms.closures().load()
+
+        then: 'The main program fails, but the routines it calls through closures pass'
+        vm.headroom[0] == -1
+        vm.footroom[0] == -1
+        vm.headroom[vm.codeSize - 1] >= 0
+    }
+
+    def 'A routine fails where the stack depth depends on the way in'() {
+
+        when: 'Each time round the loop leaves another word'
+        def vm = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .emit(Machine.JUMPop, 0, Machine.CBr, 0)
+                .load()
+
+        then:
+        vm.headroom as List == [-1, -1]
+    }
+
+    def 'A routine fails when it jumps out of the code'() {
+
+        when:
+        def vm = new TamCode()
+                .emit(Machine.JUMPop, 0, Machine.CBr, 500)
+                .load()
+
+        then:
+        vm.headroom as List == [-1]
+    }
+
+    def 'A routine fails when it returns different numbers of words'() {
+
+        when:
+        def vm = new TamCode()
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, 2)
+                .emit(Machine.HALTop, 0, 0, 0)
+                .emit(Machine.LOADLop, 0, 0, 0)
+                .emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 5)
+                .emit(Machine.RETURNop, 0, 0, 0)
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .emit(Machine.RETURNop, 1, 0, 0)
+                .load()
+
+        then: 'Nor does its caller pass'
+        vm.headroom as List == [-1] * 7
+    }
+
+    def 'Every tier agrees on a program that the verifier turns down'() {
+
+        given: 'A routine whose effect depends on its argument'
+        def code = new TamCode()
+                .emit(Machine.LOADLop, 0, 0, 0)
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, 5)
+                .emit(Machine.LOADLop, 0, 0, 1)
+                .emit(Machine.CALLop, Machine.SBr, Machine.CBr, 5)
+                .emit(Machine.JUMPop, 0, Machine.CBr, 10)
+                .emit(Machine.LOADop, 1, Machine.LBr, -1)
+                .emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 9)
+                .emit(Machine.LOADLop, 0, 0, 7)
+                .emit(Machine.RETURNop, 1, 0, 1)
+                .emit(Machine.RETURNop, 0, 0, 1)
+                .call(Machine.putintDisplacement)
+                .emit(Machine.HALTop, 0, 0, 0)
+
+        expect:
+        code.load().headroom[0] == -1
+        TierSpec.interpreter(code, '') == [status: TamVM.halted, output: '7', instructions: 14]
+        TierSpec.compiled(code, '') == TierSpec.interpreter(code, '')
+        TierSpec.registers(code, '') == TierSpec.interpreter(code, '')
+    }
+}
@@ -0,0 +1,288 @@
+package Triangle;
+
+import Triangle.SyntacticAnalyzer.SourceFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compiles every Triangle source program in a tree concurrently in one JVM,
+ * each in its own {@link CompilationSession}, and reports the errors found
+ * together with the time taken.
+ * <p/>
+ * The object program of <i>name</i>.tri is written next to it, as
+ * <i>name</i>.tam, and with -symbols its symbol table as <i>name</i>.sym.
+ * <p/>
+ * For example:
+ * <pre>
+ *   java Triangle.Compiler --batch exercises/
+ *   java Triangle.Compiler --batch -threads 4 exercises/
+ *   java Triangle.Compiler --batch -cache ~/.tricache -symbols exercises/
+ * </pre>
+ * With a {@link CompileCache}, programs compiled before are not compiled
+ * again.
+ */
+public class BatchCompiler {
+
+    /**
+     * The outcome of compiling one source program.
+     */
+    public static class Result {
+
+        public final File sourceFile;
+        public final File objectFile;
+
+        public boolean successful;
+        public int errors;
+        public int instructions;
+        public long nanos;
+
+        // what the compilation reported
+        public String messages = "";
+
+        // set if the source or object program could not be read or written
+        public String error;
+
+        Result(File sourceFile) {
+            this.sourceFile = sourceFile;
+            this.objectFile = new File(sourceFile.getParentFile(), objectName(sourceFile.getName()));
+        }
+    }
+
+    // Compiles the programs of results[from..to) splitting the range in
+    // halves, so that idle workers can steal the other half.
+    private static class CompileTask extends RecursiveAction {
+
+        private final static long serialVersionUID = 1L;
+
+        private final Result[] results;
+        private final CompileCache cache;
+        private final boolean savingSymbols;
+        private final int from, to;
+
+        CompileTask(Result[] results, CompileCache cache, boolean savingSymbols, int from, int to) {
+            this.results = results;
+            this.cache = cache;
+            this.savingSymbols = savingSymbols;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                compileProgram(results[from], cache, savingSymbols);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CompileTask(results, cache, savingSymbols, from, middle),
+                        new CompileTask(results, cache, savingSymbols, middle, to));
+            }
+        }
+    }
+
+    // Returns the name of the object file for the named source file, such
+    // as prog.tam for prog.tri.
+    static String objectName(String sourceName) {
+        if (sourceName.endsWith(".tri"))
+            sourceName = sourceName.substring(0, sourceName.length() - ".tri".length());
+        return sourceName + ".tam";
+    }
+
+    /**
+     * Compiles a single source program, writes its object program, and its
+     * symbol table if savingSymbols, if it has no errors, and records the
+     * outcome in result.
+     */
+    static void compileProgram(Result result, CompileCache cache, boolean savingSymbols) {
+        if (cache == null) {
+            compileProgram(result, savingSymbols);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            CompileCache.Entry entry = cache.compile(Files.readAllBytes(result.sourceFile.toPath()));
+            result.successful = entry.successful;
+            result.errors = entry.errors;
+            result.messages = entry.messages;
+
+            if (entry.successful) {
+                OutputStream objectFile = new FileOutputStream(result.objectFile);
+                try {
+                    objectFile.write(entry.objectProgram);
+                } finally {
+                    objectFile.close();
+                }
+                if (savingSymbols)
+                    Files.write(new File(Compiler.symbolName(result.objectFile.getPath())).toPath(),
+                            entry.symbolTable.getBytes(StandardCharsets.UTF_8));
+                result.instructions = entry.codeSize;
+            }
+        } catch (IOException s) {
+            result.successful = false;
+            result.error = s.toString();
+        }
+        result.nanos = System.nanoTime() - start;
+    }
+
+    static void compileProgram(Result result, boolean savingSymbols) {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        CompilationSession session = new CompilationSession(new PrintStream(messages, true));
+
+        long start = System.nanoTime();
+        try {
+            // read whole, so that no source stream is left open
+            byte[] text = Files.readAllBytes(result.sourceFile.toPath());
+            result.successful = session.compile(new SourceFile(text));
+
+            if (result.successful) {
+                OutputStream objectFile = new BufferedOutputStream(new FileOutputStream(result.objectFile));
+                try {
+                    session.writeObjectProgram(objectFile);
+                } finally {
+                    objectFile.close();
+                }
+                if (savingSymbols)
+                    session.saveSymbolTable(Compiler.symbolName(result.objectFile.getPath()));
+                result.instructions = session.getCodeSize();
+            }
+        } catch (IOException s) {
+            result.successful = false;
+            result.error = s.toString();
+        }
+        result.nanos = System.nanoTime() - start;
+        result.errors = session.getReporter().getNumErrors();
+        result.messages = messages.toString();
+    }
+
+    /**
+     * Compiles all the given source programs on pool and returns their
+     * outcomes, in the same order.
+     */
+    public static Result[] compileAll(List<File> sourceFiles, ForkJoinPool pool) {
+        return compileAll(sourceFiles, pool, null, false);
+    }
+
+    /**
+     * Compiles all the given source programs on pool, taking those found
+     * in cache from it, unless cache is null, and returns their outcomes,
+     * in the same order. Symbol tables are written only if savingSymbols.
+     */
+    public static Result[] compileAll(List<File> sourceFiles, ForkJoinPool pool, CompileCache cache,
+                                      boolean savingSymbols) {
+        Result[] results = new Result[sourceFiles.size()];
+        for (int i = 0; i < results.length; i++)
+            results[i] = new Result(sourceFiles.get(i));
+
+        if (results.length > 0)
+            pool.invoke(new CompileTask(results, cache, savingSymbols, 0, results.length));
+
+        return results;
+    }
+
+    // Expands directories into the .tri files they contain.
+    private static void collect(File file, List<File> sourceFiles) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null)
+                return;
+            Arrays.sort(children);
+            for (File child : children)
+                if (child.isDirectory() || child.getName().endsWith(".tri"))
+                    collect(child, sourceFiles);
+        } else {
+            sourceFiles.add(file);
+        }
+    }
+
+    static void report(Result[] results, long wallNanos, PrintStream out) {
+        long instructions = 0, nanos = 0;
+        int compiled = 0, errors = 0;
+
+        for (Result result : results) {
+            out.print(result.sourceFile.getPath() + ": ");
+            if (result.error != null)
+                out.println(result.error);
+            else if (result.successful)
+                out.println("compiled to " + result.objectFile.getPath()
+                        + " (" + result.instructions + " instructions, "
+                        + (result.nanos / 1000000) + " ms)");
+            else
+                out.println(result.errors + " errors (" + (result.nanos / 1000000) + " ms)");
+
+            // the errors and restrictions, without the progress messages
+            for (String line : result.messages.split("\n"))
+                if (line.startsWith("ERROR: ") || line.startsWith("RESTRICTION: "))
+                    out.println("    " + line);
+
+            instructions = instructions + result.instructions;
+            nanos = nanos + result.nanos;
+            errors = errors + result.errors;
+            if (result.successful)
+                compiled = compiled + 1;
+        }
+
+        double seconds = wallNanos / 1e9;
+        out.println("");
+        out.println(results.length + " programs, " + compiled + " compiled, "
+                + (results.length - compiled) + " did not, with " + errors + " errors.");
+        out.println(instructions + " instructions in " + (wallNanos / 1000000) + " ms ("
+                + (nanos / 1000000) + " ms compiling): "
+                + Math.round(results.length / seconds) + " programs/s.");
+    }
+
+    /**
+     * Compiles the source programs in the directories and files named by
+     * args, which may start with -threads n, -cache directory and -symbols.
+     * Returns true iff all of them compiled.
+     */
+    static boolean compileBatch(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        CompileCache cache = null;
+        boolean savingSymbols = false;
+        List<File> sourceFiles = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-cache") && i + 1 < args.length)
+                cache = Compiler.openCache(args[++i]);
+            else if (args[i].equals("-symbols"))
+                savingSymbols = true;
+            else
+                collect(new File(args[i]), sourceFiles);
+        }
+
+        if (sourceFiles.isEmpty()) {
+            System.out.println("Usage: tc --batch [-threads n] [-cache directory] [-symbols] (directory | file.tri) ...");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Result[] results = compileAll(sourceFiles, pool, cache, savingSymbols);
+        long wallNanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        report(results, wallNanos, System.out);
+        if (cache != null)
+            System.out.println(cache);
+
+        for (Result result : results)
+            if (!result.successful)
+                return false;
+        return true;
+    }
+}
@@ -16,23 +16,42 @@ package Triangle.CodeGenerator;
 
 import TAM.Instruction;
 import TAM.Machine;
+import TAM.ObjectFile;
 import Triangle.AbstractSyntaxTrees.*;
 import Triangle.ErrorReporter;
 import Triangle.StdEnvironment;
 
-import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
 public final class Encoder implements Visitor {
 
     boolean tableDetailsReqd;
     private ErrorReporter reporter;
+    private final StdEnvironment std;
     private int nextInstrAddr;
 
-    public Encoder(ErrorReporter reporter) {
+    // the object code, from CB up to nextInstrAddr
+    private Instruction[] code = new Instruction[1024];
+
+    // names of the routines declared in the program, by code address
+    private final TreeMap<Integer, String> routineNames = new TreeMap<Integer, String>();
+
+    /**
+     * Makes an encoder that decorates the standard environment std, as
+     * established by the checker of the same compilation.
+     */
+    public Encoder(ErrorReporter reporter, StdEnvironment std) {
         this.reporter = reporter;
+        this.std = std;
         nextInstrAddr = Machine.CB;
         elaborateStdEnvironment();
     }
@@ -264,6 +283,7 @@ public final class Encoder implements Visitor {
 
         emit(Machine.JUMPop, 0, Machine.CBr, 0);
         ast.entity = new KnownRoutine(Machine.closureSize, frame.level, nextInstrAddr);
+        routineNames.put(nextInstrAddr, ast.I.spelling);
 
         writeTableDetails(ast);
 
@@ -292,6 +312,7 @@ public final class Encoder implements Visitor {
 
         emit(Machine.JUMPop, 0, Machine.CBr, 0);
         ast.entity = new KnownRoutine(Machine.closureSize, frame.level, nextInstrAddr);
+        routineNames.put(nextInstrAddr, ast.I.spelling);
 
         writeTableDetails(ast);
 
@@ -821,56 +842,67 @@ public final class Encoder implements Visitor {
 
         tableDetailsReqd = false;
 
-        elaborateStdConst(StdEnvironment.falseDecl, Machine.falseRep);
-        elaborateStdConst(StdEnvironment.trueDecl, Machine.trueRep);
-        elaborateStdPrimRoutine(StdEnvironment.notDecl, Machine.notDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.andDecl, Machine.andDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.orDecl, Machine.orDisplacement);
-        elaborateStdConst(StdEnvironment.maxintDecl, Machine.maxintRep);
-        elaborateStdPrimRoutine(StdEnvironment.addDecl, Machine.addDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.subtractDecl, Machine.subDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.multiplyDecl, Machine.multDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.divideDecl, Machine.divDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.moduloDecl, Machine.modDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.lessDecl, Machine.ltDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.notgreaterDecl, Machine.leDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.greaterDecl, Machine.gtDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.notlessDecl, Machine.geDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.chrDecl, Machine.idDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.ordDecl, Machine.idDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.eolDecl, Machine.eolDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.eofDecl, Machine.eofDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.getDecl, Machine.getDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.putDecl, Machine.putDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.getintDecl, Machine.getintDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.putintDecl, Machine.putintDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.geteolDecl, Machine.geteolDisplacement);
-        elaborateStdPrimRoutine(StdEnvironment.puteolDecl, Machine.puteolDisplacement);
-        elaborateStdEqRoutine(StdEnvironment.equalDecl, Machine.eqDisplacement);
-        elaborateStdEqRoutine(StdEnvironment.unequalDecl, Machine.neDisplacement);
+        elaborateStdConst(std.falseDecl, Machine.falseRep);
+        elaborateStdConst(std.trueDecl, Machine.trueRep);
+        elaborateStdPrimRoutine(std.notDecl, Machine.notDisplacement);
+        elaborateStdPrimRoutine(std.andDecl, Machine.andDisplacement);
+        elaborateStdPrimRoutine(std.orDecl, Machine.orDisplacement);
+        elaborateStdConst(std.maxintDecl, Machine.maxintRep);
+        elaborateStdPrimRoutine(std.addDecl, Machine.addDisplacement);
+        elaborateStdPrimRoutine(std.subtractDecl, Machine.subDisplacement);
+        elaborateStdPrimRoutine(std.multiplyDecl, Machine.multDisplacement);
+        elaborateStdPrimRoutine(std.divideDecl, Machine.divDisplacement);
+        elaborateStdPrimRoutine(std.moduloDecl, Machine.modDisplacement);
+        elaborateStdPrimRoutine(std.lessDecl, Machine.ltDisplacement);
+        elaborateStdPrimRoutine(std.notgreaterDecl, Machine.leDisplacement);
+        elaborateStdPrimRoutine(std.greaterDecl, Machine.gtDisplacement);
+        elaborateStdPrimRoutine(std.notlessDecl, Machine.geDisplacement);
+        elaborateStdPrimRoutine(std.chrDecl, Machine.idDisplacement);
+        elaborateStdPrimRoutine(std.ordDecl, Machine.idDisplacement);
+        elaborateStdPrimRoutine(std.eolDecl, Machine.eolDisplacement);
+        elaborateStdPrimRoutine(std.eofDecl, Machine.eofDisplacement);
+        elaborateStdPrimRoutine(std.getDecl, Machine.getDisplacement);
+        elaborateStdPrimRoutine(std.putDecl, Machine.putDisplacement);
+        elaborateStdPrimRoutine(std.getintDecl, Machine.getintDisplacement);
+        elaborateStdPrimRoutine(std.putintDecl, Machine.putintDisplacement);
+        elaborateStdPrimRoutine(std.geteolDecl, Machine.geteolDisplacement);
+        elaborateStdPrimRoutine(std.puteolDecl, Machine.puteolDisplacement);
+        elaborateStdEqRoutine(std.equalDecl, Machine.eqDisplacement);
+        elaborateStdEqRoutine(std.unequalDecl, Machine.neDisplacement);
     }
 
     // OBJECT CODE
 
     // Implementation notes:
-    // Object code is generated directly into the TAM Code Store, starting at CB.
+    // Object code is generated into a code buffer of the encoder's own,
+    // starting at CB, so that encoders may run on several threads at once.
     // The address of the next instruction is held in nextInstrAddr.
 
-    public void saveObjectProgram(String objectName) {
+    /**
+     * Returns the object code generated, from CB on.
+     */
+    public Instruction[] getCode() {
+        return Arrays.copyOfRange(code, Machine.CB, nextInstrAddr);
+    }
 
-        FileOutputStream objectFile = null;
-        DataOutputStream objectStream = null;
+    public int getCodeSize() {
+        return nextInstrAddr - Machine.CB;
+    }
 
-        int addr;
+    public void writeObjectProgram(OutputStream objectStream) throws IOException {
 
-        try {
-            objectFile = new FileOutputStream(objectName);
-            objectStream = new DataOutputStream(objectFile);
+        // Writes the packed object format, or the legacy one if some operand
+        // does not fit into a packed instruction.
+        ObjectFile.write(getCode(), getCodeSize(), objectStream);
+    }
 
-            addr = Machine.CB;
-            for (addr = Machine.CB; addr < nextInstrAddr; addr++)
-                Machine.code[addr].write(objectStream);
+    public void saveObjectProgram(String objectName) {
+
+        OutputStream objectFile = null;
 
+        try {
+            objectFile = new BufferedOutputStream(new FileOutputStream(objectName));
+            writeObjectProgram(objectFile);
             objectFile.close();
 
         } catch (FileNotFoundException s) {
@@ -881,6 +913,30 @@ public final class Encoder implements Visitor {
         }
     }
 
+    public void writeSymbolTable(PrintWriter symbolFile) {
+
+        // Writes the code address and name of each routine declared in the
+        // program, one per line, for the TAM profiler.
+
+        for (Map.Entry<Integer, String> routine : routineNames.entrySet())
+            symbolFile.println(routine.getKey() + " " + routine.getValue());
+        symbolFile.flush();
+    }
+
+    public void saveSymbolTable(String symbolName) {
+
+        PrintWriter symbolFile = null;
+
+        try {
+            symbolFile = new PrintWriter(new FileWriter(symbolName));
+            writeSymbolTable(symbolFile);
+            symbolFile.close();
+
+        } catch (IOException s) {
+            System.err.println("Error writing symbol file: " + s);
+        }
+    }
+
     // Appends an instruction, with the given fields, to the object code.
     private void emit(int op, int n, int r, int d) {
 
@@ -895,18 +951,17 @@ public final class Encoder implements Visitor {
         nextInstr.r = r;
         nextInstr.d = d;
 
-        if (nextInstrAddr == Machine.PB)
-            reporter.reportRestriction("too many instructions for code segment");
-
-        else {
-            Machine.code[nextInstrAddr] = nextInstr;
-            nextInstrAddr = nextInstrAddr + 1;
-        }
+        // The code buffer grows as needed; a program longer than Machine.PB
+        // must be run on a TamVM created with a large enough code store.
+        if (nextInstrAddr == code.length)
+            code = Arrays.copyOf(code, 2 * code.length);
+        code[nextInstrAddr] = nextInstr;
+        nextInstrAddr = nextInstrAddr + 1;
     }
 
     // Patches the d-field of the instruction at address addr.
     private void patch(int addr, int d) {
-        Machine.code[addr].d = d;
+        code[addr].d = d;
     }
 
     // DATA REPRESENTATION
@@ -0,0 +1,159 @@
+/*
+ * Holds code moved out of Compiler.java.
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package Triangle;
+
+import TAM.Instruction;
+import Triangle.AbstractSyntaxTrees.Program;
+import Triangle.CodeGenerator.Encoder;
+import Triangle.ContextualAnalyzer.Checker;
+import Triangle.Optimizer.ConstantFolder;
+import Triangle.SyntacticAnalyzer.Parser;
+import Triangle.SyntacticAnalyzer.Scanner;
+import Triangle.SyntacticAnalyzer.SourceFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+/**
+ * One compilation of a Triangle program. A session has everything that the
+ * compilation changes to itself: its error reporter, its standard
+ * environment, decorated by the checker and the encoder, and the encoder's
+ * code buffer into which the object program is generated. Sessions thus
+ * share no state, and any number of them may compile on different threads
+ * at once.
+ * <p/>
+ * For example:
+ * <pre>
+ *   CompilationSession session = new CompilationSession(System.out);
+ *   if (session.compile(new SourceFile("prog.tri")))
+ *       session.saveObjectProgram("prog.tam");
+ * </pre>
+ * A session compiles only one program.
+ */
+public final class CompilationSession {
+
+    // where progress and errors are reported
+    private final PrintStream out;
+
+    private final ErrorReporter reporter;
+    private final StdEnvironment std = new StdEnvironment();
+
+    private Encoder encoder;
+
+    /**
+     * The AST representing the source program.
+     */
+    private Program theAST;
+
+    public CompilationSession(PrintStream out) {
+        this.out = out;
+        reporter = new ErrorReporter(out);
+    }
+
+    /**
+     * Compiles the source program to TAM machine code.
+     *
+     * @param source       the source program.
+     * @param showingTable true iff the object description details are to
+     *                     be displayed during code generation (not currently implemented).
+     *
+     * @return true iff the source program is free of compile-time errors,
+     *         otherwise false.
+     */
+    public boolean compile(SourceFile source, boolean showingTable) {
+        if (theAST != null)
+            throw new IllegalStateException("session has already compiled a program");
+
+        out.println("Syntactic Analysis ...");
+
+        Scanner scanner = new Scanner(source);
+        Parser parser = new Parser(scanner, reporter);
+        Checker checker = new Checker(reporter, std);
+        encoder = new Encoder(reporter, std);
+
+        theAST = parser.parseProgram();                     // 1st pass
+
+        if (reporter.numErrors == 0) {
+            out.println("Contextual Analysis ...");
+            checker.check(theAST);                          // 2nd pass
+
+            if (reporter.numErrors == 0) {
+                new ConstantFolder(std).fold(theAST);       // simplify
+
+                out.println("Code Generation ...");
+                encoder.encodeRun(theAST, showingTable);    // 3rd pass
+            }
+        }
+
+        return reporter.numErrors == 0;
+    }
+
+    public boolean compile(SourceFile source) {
+        return compile(source, false);
+    }
+
+    /**
+     * Returns the AST of the source program, once parsed.
+     */
+    public Program getAST() {
+        return theAST;
+    }
+
+    public ErrorReporter getReporter() {
+        return reporter;
+    }
+
+    public StdEnvironment getStdEnvironment() {
+        return std;
+    }
+
+
+// OBJECT PROGRAM
+
+    private Encoder compiled() {
+        if ((theAST == null) || (reporter.numErrors != 0))
+            throw new IllegalStateException("no program compiled successfully");
+        return encoder;
+    }
+
+    /**
+     * Returns the object program of the program compiled.
+     */
+    public Instruction[] getCode() {
+        return compiled().getCode();
+    }
+
+    public int getCodeSize() {
+        return compiled().getCodeSize();
+    }
+
+    public void writeObjectProgram(OutputStream objectStream) throws IOException {
+        compiled().writeObjectProgram(objectStream);
+    }
+
+    public void saveObjectProgram(String objectName) {
+        compiled().saveObjectProgram(objectName);
+    }
+
+    public void writeSymbolTable(PrintWriter symbolFile) {
+        compiled().writeSymbolTable(symbolFile);
+    }
+
+    public void saveSymbolTable(String symbolName) {
+        compiled().saveSymbolTable(symbolName);
+    }
+}
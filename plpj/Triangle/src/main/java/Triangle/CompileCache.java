@@ -0,0 +1,417 @@
+package Triangle;
+
+import TAM.ObjectFile;
+import Triangle.SyntacticAnalyzer.SourceFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the outcome of compiling Triangle source programs in a directory,
+ * so that a source compiled before, by this or any earlier run of the same
+ * compiler, is not parsed, checked or encoded again.
+ * <p/>
+ * An entry is found by the SHA-256 digest of the source text together with
+ * the version of the compiler, which covers the compiler's own classes, so
+ * that a changed compiler never finds the entries of another. It holds the
+ * object program and symbol table, if the source compiled, and everything
+ * that the compilation reported.
+ * <p/>
+ * The least recently used entries are deleted once the entries hold more
+ * than a given number of bytes in all. Each entry is written whole to a
+ * file of its own and then renamed into place, so the cache is safe to
+ * use from any number of threads, and from several processes, though each
+ * process enforces the size limit only on the entries it knows of.
+ * <p/>
+ * Should the compiler's classes not be found, so that its version is
+ * unknown, nothing is kept or looked up: every source is compiled afresh,
+ * as a stale entry of another compiler would be worse than none.
+ */
+public final class CompileCache {
+
+    public final static long defaultCapacity = 64L << 20;
+
+    private final static int
+            magic = 0x54524943,     // "TRIC"
+            version = 1;
+
+    private final static String suffix = ".entry";
+
+    private static String compilerVersion;
+
+    // false once the compiler's classes could not be read
+    private static boolean compilerVersionKnown = true;
+
+    /**
+     * The outcome of compiling one source program.
+     */
+    public static final class Entry {
+
+        public final boolean successful;
+        public final int errors;
+
+        // number of instructions in the object program
+        public final int codeSize;
+
+        // what the compilation reported
+        public final String messages;
+
+        // empty unless the compilation was successful
+        public final byte[] objectProgram;
+        public final String symbolTable;
+
+        Entry(boolean successful, int errors, int codeSize, String messages,
+              byte[] objectProgram, String symbolTable) {
+            this.successful = successful;
+            this.errors = errors;
+            this.codeSize = codeSize;
+            this.messages = messages;
+            this.objectProgram = objectProgram;
+            this.symbolTable = symbolTable;
+        }
+    }
+
+    private final File directory;
+
+    // maximum number of bytes in all the entries kept
+    private final long capacity;
+
+    // sizes of the entries kept, the least recently used first
+    private final LinkedHashMap<String, Long> entries =
+            new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private long size;
+    private long hits, misses, evictions;
+
+    /**
+     * Opens the cache in the given directory, making it if need be, and
+     * takes on the entries already there, in order of their last use.
+     */
+    public CompileCache(File directory, long capacity) throws IOException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("cannot make cache directory " + directory);
+        this.directory = directory;
+        this.capacity = capacity;
+
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("cannot read cache directory " + directory);
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files)
+            if (file.getName().endsWith(suffix)) {
+                entries.put(file.getName().substring(0, file.getName().length() - suffix.length()), file.length());
+                size = size + file.length();
+            }
+        evict();
+    }
+
+
+// KEYS
+
+    /**
+     * Returns the version of the compiler: its release and a digest of the
+     * classes of the compiler and of the TAM, from the directories or jars
+     * that they were loaded from; or null if those classes cannot be read.
+     */
+    public static synchronized String getCompilerVersion() {
+        if ((compilerVersion == null) && compilerVersionKnown) {
+            MessageDigest digest = sha256();
+            File triangle = codeSource(CompileCache.class);
+            File tam = codeSource(ObjectFile.class);
+
+            try {
+                if ((triangle == null) || (tam == null))
+                    throw new IOException("no code source");
+                digestClasses(triangle, digest);
+                if (!tam.equals(triangle))
+                    digestClasses(tam, digest);
+                compilerVersion = "2.1-" + hex(digest.digest()).substring(0, 16);
+            } catch (IOException s) {
+                // the release alone would not tell one build from another
+                compilerVersionKnown = false;
+            }
+        }
+        return compilerVersion;
+    }
+
+    private static File codeSource(Class<?> c) {
+        try {
+            return new File(c.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException s) {
+            return null;
+        } catch (NullPointerException s) {
+            return null;
+        }
+    }
+
+    // Adds the class files under file, or the jar that file is, to digest.
+    private static void digestClasses(File file, MessageDigest digest) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null)
+                throw new IOException("cannot read " + file);
+            Arrays.sort(children);
+            for (File child : children)
+                if (child.isDirectory() || child.getName().endsWith(".class")) {
+                    digest.update(child.getName().getBytes(StandardCharsets.UTF_8));
+                    digestClasses(child, digest);
+                }
+        } else {
+            digest.update(Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException s) {
+            throw new IllegalStateException(s);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+            text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return text.toString();
+    }
+
+    private static String key(byte[] source) {
+        MessageDigest digest = sha256();
+        digest.update(getCompilerVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        return hex(digest.digest(source));
+    }
+
+
+// LOOKUP
+
+    /**
+     * Returns the outcome of compiling the given source text, compiling it
+     * only if it is not kept already.
+     */
+    public Entry compile(byte[] source) throws IOException {
+        if (getCompilerVersion() == null)
+            return compileSource(source);
+
+        String key = key(source);
+        Entry entry = get(key);
+
+        if (entry != null)
+            return entry;
+
+        // Compile without holding the lock; should another thread compile
+        // the same source meanwhile, both entries are the same.
+        entry = compileSource(source);
+        put(key, entry);
+        return entry;
+    }
+
+    // Returns the entry for key, or null if there is none or it cannot be
+    // read.
+    private Entry get(String key) {
+        File file = new File(directory, key + suffix);
+
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses = misses + 1;
+                return null;
+            }
+        }
+
+        try {
+            Entry entry = read(Files.readAllBytes(file.toPath()));
+            file.setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                hits = hits + 1;
+            }
+            return entry;
+        } catch (IOException s) {
+            // deleted by another process, or damaged
+            synchronized (this) {
+                Long length = entries.remove(key);
+                if (length != null)
+                    size = size - length;
+                misses = misses + 1;
+            }
+            file.delete();
+            return null;
+        }
+    }
+
+    private void put(String key, Entry entry) throws IOException {
+        byte[] bytes = write(entry);
+        File temporary = File.createTempFile("compile", ".tmp", directory);
+
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        Files.move(temporary.toPath(), new File(directory, key + suffix).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            Long length = entries.put(key, (long) bytes.length);
+            size = size + bytes.length - ((length == null) ? 0 : length);
+            evict();
+        }
+    }
+
+    // Deletes the least recently used entries until the rest fit.
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+
+        while ((size > capacity) && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            new File(directory, entry.getKey() + suffix).delete();
+            size = size - entry.getValue();
+            eldest.remove();
+            evictions = evictions + 1;
+        }
+    }
+
+    static Entry compileSource(byte[] source) throws IOException {
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        CompilationSession session = new CompilationSession(new PrintStream(messages, true));
+        byte[] objectProgram = new byte[0];
+        String symbolTable = "";
+        int codeSize = 0;
+
+        boolean successful = session.compile(new SourceFile(source));
+        if (successful) {
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            session.writeObjectProgram(object);
+            objectProgram = object.toByteArray();
+
+            ByteArrayOutputStream symbols = new ByteArrayOutputStream();
+            session.writeSymbolTable(new PrintWriter(new OutputStreamWriter(symbols, StandardCharsets.UTF_8)));
+            symbolTable = symbols.toString("UTF-8");
+            codeSize = session.getCodeSize();
+        }
+        return new Entry(successful, session.getReporter().getNumErrors(), codeSize,
+                messages.toString(), objectProgram, symbolTable);
+    }
+
+
+// ENTRIES
+
+    private static byte[] write(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        output.writeInt(magic);
+        output.writeInt(version);
+        output.writeBoolean(entry.successful);
+        output.writeInt(entry.errors);
+        output.writeInt(entry.codeSize);
+        writeBytes(output, entry.messages.getBytes(StandardCharsets.UTF_8));
+        writeBytes(output, entry.objectProgram);
+        writeBytes(output, entry.symbolTable.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static Entry read(byte[] bytes) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        if ((input.readInt() != magic) || (input.readInt() != version))
+            throw new IOException("not a compile cache entry");
+        boolean successful = input.readBoolean();
+        int errors = input.readInt();
+        int codeSize = input.readInt();
+        String messages = new String(readBytes(input), StandardCharsets.UTF_8);
+        byte[] objectProgram = readBytes(input);
+        String symbolTable = new String(readBytes(input), StandardCharsets.UTF_8);
+        if (input.available() != 0)
+            throw new IOException("compile cache entry too long");
+
+        return new Entry(successful, errors, codeSize, messages, objectProgram, symbolTable);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if ((length < 0) || (length > input.available()))
+            throw new IOException("compile cache entry damaged");
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Deletes all entries, but not the statistics.
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet())
+            new File(directory, key + suffix).delete();
+        entries.clear();
+        size = 0;
+    }
+
+
+// STATISTICS
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of bytes in all the entries kept.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "compile cache: " + entries.size() + " entries of " + size + " bytes, "
+                + hits + " hits, " + misses + " misses ("
+                + ((lookups > 0) ? Math.round(100.0 * hits / lookups) : 0) + "% hit rate), "
+                + evictions + " evictions"
+                + ((getCompilerVersion() == null) ? " (disabled: compiler version unknown)" : "");
+    }
+}
@@ -14,14 +14,17 @@
 
 package Triangle;
 
-import Triangle.AbstractSyntaxTrees.Program;
-import Triangle.CodeGenerator.Encoder;
-import Triangle.ContextualAnalyzer.Checker;
-import Triangle.SyntacticAnalyzer.Parser;
-import Triangle.SyntacticAnalyzer.Scanner;
 import Triangle.SyntacticAnalyzer.SourceFile;
 import Triangle.TreeDrawer.Drawer;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
 /**
  * The main driver class for the Triangle compiler.
  *
@@ -35,18 +38,6 @@ public class Compiler {
      */
     static String objectName = "obj.tam";
 
-    private static Scanner scanner;
-    private static Parser parser;
-    private static Checker checker;
-    private static Encoder encoder;
-    private static ErrorReporter reporter;
-    private static Drawer drawer;
-
-    /**
-     * The AST representing the source program.
-     */
-    private static Program theAST;
-
     /**
      * Compile the source program to TAM machine code.
      *
@@ -58,15 +49,17 @@ public class Compiler {
      *                   contextual analysis (not currently implemented).
      * @param showingTable true iff the object description details are to
      *                     be displayed during code generation (not currently implemented).
+     * @param savingSymbols true iff the symbol table is to be written next
+     *                      to the object program.
      *
      * @return true iff the source program is free of compile-time errors,
      *         otherwise false.
      */
-    static boolean compileProgram(String sourceName, String objectName, boolean showingAST, boolean showingTable) {
+    static boolean compileProgram(String sourceName, String objectName, boolean showingAST, boolean showingTable,
+                                  boolean savingSymbols) {
 
         System.out.println("********** Triangle Compiler (Java Version 2.1) **********");
 
-        System.out.println("Syntactic Analysis ...");
         SourceFile source = new SourceFile(sourceName);
 
         if (source == null) {
@@ -74,41 +67,19 @@ public class Compiler {
             System.exit(1);
         }
 
-        scanner = new Scanner(source);
-        reporter = new ErrorReporter();
-        parser = new Parser(scanner, reporter);
-        checker = new Checker(reporter);
-        encoder = new Encoder(reporter);
-
-        drawer = new Drawer();
-//        scanner.withDebugging();
-
-        theAST = parser.parseProgram();                     // 1st pass
-
-        if (reporter.numErrors == 0) {
-
-//            if (showingAST) {
-//                drawer.draw(theAST);
-//            }
-
-            System.out.println("Contextual Analysis ...");
-
-            checker.check(theAST);                          // 2nd pass
-
-            if (showingAST) {
-                drawer.draw(theAST);
-            }
+        // All the state of the compilation is in its session, so that
+        // other compilations may run in the same JVM at the same time.
+        CompilationSession session = new CompilationSession(System.out);
+        boolean successful = session.compile(source, showingTable);
 
-            if (reporter.numErrors == 0) {
-                System.out.println("Code Generation ...");
-                encoder.encodeRun(theAST, showingTable);    // 3rd pass
-            }
+        if (showingAST && (session.getAST() != null)) {
+            new Drawer().draw(session.getAST());
         }
 
-        boolean successful = (reporter.numErrors == 0);
-
         if (successful) {
-            encoder.saveObjectProgram(objectName);
+            session.saveObjectProgram(objectName);
+            if (savingSymbols)
+                session.saveSymbolTable(symbolName(objectName));
             System.out.println("Compilation was successful.");
 
         } else {
@@ -118,23 +89,119 @@ public class Compiler {
         return successful;
     }
 
+    /**
+     * Compile the source program to TAM machine code, or take the outcome
+     * of an earlier compilation of the same text from cache.
+     *
+     * @param sourceName the name of the file containing the
+     *                   source program.
+     * @param objectName the name of the file containing the
+     *                   object program.
+     * @param cache      the compile cache.
+     * @param savingSymbols true iff the symbol table is to be written next
+     *                      to the object program.
+     *
+     * @return true iff the source program is free of compile-time errors,
+     *         otherwise false.
+     */
+    static boolean compileProgram(String sourceName, String objectName, CompileCache cache, boolean savingSymbols) {
+
+        System.out.println("********** Triangle Compiler (Java Version 2.1) **********");
+
+        try {
+            CompileCache.Entry entry = cache.compile(Files.readAllBytes(new File(sourceName).toPath()));
+            System.out.print(entry.messages);
+
+            if (entry.successful) {
+                OutputStream objectFile = new FileOutputStream(objectName);
+                try {
+                    objectFile.write(entry.objectProgram);
+                } finally {
+                    objectFile.close();
+                }
+                if (savingSymbols)
+                    Files.write(new File(symbolName(objectName)).toPath(),
+                            entry.symbolTable.getBytes(StandardCharsets.UTF_8));
+                System.out.println("Compilation was successful.");
+
+            } else {
+                System.out.println("Compilation was unsuccessful.");
+            }
+            return entry.successful;
+
+        } catch (IOException s) {
+            System.out.println("Can't access source file " + sourceName + ": " + s);
+            System.exit(1);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the name of the symbol file that goes with the named object
+     * file, such as obj.sym for obj.tam.
+     */
+    static String symbolName(String objectName) {
+        if (objectName.endsWith(".tam"))
+            objectName = objectName.substring(0, objectName.length() - ".tam".length());
+        return objectName + ".sym";
+    }
+
     /**
      * Triangle compiler main program.
      *
-     * @param args the only command-line argument to the program specifies
-     *             the source filename.
+     * @param args the last command-line argument to the program specifies
+     *             the source filename, which may follow -cache directory,
+     *             and -symbols to write the symbol table next to the object
+     *             program, unless the first is --batch, when the rest are
+     *             passed to the {@link BatchCompiler}.
      */
     public static void main(String[] args) {
         boolean compiledOK;
+        boolean savingSymbols = false;
+        String cacheName = null;
+        int i;
+
+        if ((args.length > 0) && args[0].equals("--batch")) {
+            System.out.println("********** Triangle Compiler (Java Version 2.1) **********");
+            if (!BatchCompiler.compileBatch(Arrays.copyOfRange(args, 1, args.length)))
+                System.exit(1);
+            return;
+        }
 
-        if (args.length != 1) {
-            System.out.println("Usage: tc filename");
+        for (i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("-cache") && i + 1 < args.length - 1)
+                cacheName = args[++i];
+            else if (args[i].equals("-symbols"))
+                savingSymbols = true;
+            else
+                break;
+        }
+
+        if (i != args.length - 1) {
+            System.out.println("Usage: tc [-cache directory] [-symbols] filename");
+            System.out.println("       tc --batch [-threads n] [-cache directory] [-symbols] (directory | file.tri) ...");
             System.exit(1);
         }
 
-        String sourceName = args[0];
-        compiledOK = compileProgram(sourceName, objectName, false, false);
+        String sourceName = args[i];
+        if (cacheName != null) {
+            CompileCache cache = openCache(cacheName);
+            compiledOK = compileProgram(sourceName, objectName, cache, savingSymbols);
+            System.out.println(cache);
+        } else {
+            compiledOK = compileProgram(sourceName, objectName, false, false, savingSymbols);
+        }
 
         System.out.println("Is compilation pass? " + compiledOK);
     }
+
+    static CompileCache openCache(String directory) {
+        try {
+            return new CompileCache(new File(directory), CompileCache.defaultCapacity);
+        } catch (IOException s) {
+            System.out.println("Can't open compile cache " + directory + ": " + s);
+            System.exit(1);
+            return null;
+        }
+    }
 }
@@ -44,15 +44,25 @@ public final class Checker implements Visitor {
 
     private final IdentificationTable indTable;
     private final ErrorReporter reporter;
+    private final StdEnvironment std;
 
     public Checker(ErrorReporter reporter) {
+        this(reporter, new StdEnvironment());
+    }
+
+    /**
+     * Makes a checker that establishes the standard environment in std,
+     * which the encoder of the same compilation must then be given.
+     */
+    public Checker(ErrorReporter reporter, StdEnvironment std) {
         this.reporter = reporter;
         this.indTable = new IdentificationTable();
+        this.std = std;
 
         establishStdEnvironment();
     }
 
-    private static TypeDenoter checkFieldIdentifier(FieldTypeDenoter fieldTypeDenoter, Identifier I) {
+    private TypeDenoter checkFieldIdentifier(FieldTypeDenoter fieldTypeDenoter, Identifier I) {
 
         if (fieldTypeDenoter instanceof MultipleFieldTypeDenoter) {
 
@@ -76,7 +86,7 @@ public final class Checker implements Visitor {
             }
         }
 
-        return StdEnvironment.errorType;
+        return std.errorType;
     }
 
 //_____________________________________________________________________________
@@ -133,7 +143,7 @@ public final class Checker implements Visitor {
         TypeDenoter eType = (TypeDenoter) ifCommand.E.visit(this, null);
 
         // 'if' expression should be boolean type
-        if (!eType.equals(StdEnvironment.booleanType)) {
+        if (!eType.equals(std.booleanType)) {
             reporter.reportError("Boolean expression expected here", "", ifCommand.E.position);
         }
 
@@ -166,7 +176,7 @@ public final class Checker implements Visitor {
         TypeDenoter eType = (TypeDenoter) whileCommand.E.visit(this, null);
 
         // 'while' expression should be boolean type
-        if (!eType.equals(StdEnvironment.booleanType)) {
+        if (!eType.equals(std.booleanType)) {
             reporter.reportError("Boolean expression expected here", "", whileCommand.E.position);
         }
 
@@ -213,7 +223,7 @@ public final class Checker implements Visitor {
 
             BinaryOperatorDeclaration bbinding = (BinaryOperatorDeclaration) binding;
 
-            if (bbinding.ARG1 == StdEnvironment.anyType) {
+            if (bbinding.ARG1 == std.anyType) {
 
                 // this operator must be "=" or "\="
                 if (!e1Type.equals(e2Type)) {
@@ -241,7 +251,7 @@ public final class Checker implements Visitor {
 
         if (binding == null) {
             reportUndeclared(callExpression.I);
-            callExpression.type = StdEnvironment.errorType;
+            callExpression.type = std.errorType;
 
         } else if (binding instanceof FuncDeclaration) {
             callExpression.APS.visit(this, ((FuncDeclaration) binding).FPS);
@@ -259,7 +269,7 @@ public final class Checker implements Visitor {
     }
 
     public Object visitCharacterExpression(CharacterExpression charExpression, Object _) {
-        charExpression.type = StdEnvironment.charType;
+        charExpression.type = std.charType;
 
         return charExpression.type;
     }
@@ -272,7 +282,7 @@ public final class Checker implements Visitor {
 
         TypeDenoter e1Type = (TypeDenoter) ifExpression.E1.visit(this, null);
 
-        if (!e1Type.equals(StdEnvironment.booleanType)) {
+        if (!e1Type.equals(std.booleanType)) {
             reporter.reportError("Boolean expression expected here", "", ifExpression.E1.position);
         }
 
@@ -290,7 +300,7 @@ public final class Checker implements Visitor {
     }
 
     public Object visitIntegerExpression(IntegerExpression intExpression, Object _) {
-        intExpression.type = StdEnvironment.integerType;
+        intExpression.type = std.integerType;
 
         return intExpression.type;
     }
@@ -322,7 +332,7 @@ public final class Checker implements Visitor {
 
         if (binding == null) {
             reportUndeclared(unaryExpression.Op);
-            unaryExpression.type = StdEnvironment.errorType;
+            unaryExpression.type = std.errorType;
 
         } else if (!(binding instanceof UnaryOperatorDeclaration)) {
             reporter.reportError("\"%\" is not a unary operator", unaryExpression.Op.spelling, unaryExpression.Op.position);
@@ -496,7 +506,7 @@ public final class Checker implements Visitor {
         // !!!
         TypeDenoter fType = checkFieldIdentifier(rType, multiRecordAggregate.I);
 
-        if (fType != StdEnvironment.errorType) {
+        if (fType != std.errorType) {
             reporter.reportError("duplicate field \"%\" in record", multiRecordAggregate.I.spelling, multiRecordAggregate.I.position);
         }
 
@@ -786,7 +796,7 @@ public final class Checker implements Visitor {
     // Return denoters (sub-tree)
 
     public Object visitAnyTypeDenoter(AnyTypeDenoter __, Object _) {
-        return StdEnvironment.anyType;
+        return std.anyType;
     }
 
     public Object visitArrayTypeDenoter(ArrayTypeDenoter arrayTypeDenoter, Object _) {
@@ -801,15 +811,15 @@ public final class Checker implements Visitor {
     }
 
     public Object visitBoolTypeDenoter(BoolTypeDenoter __, Object _) {
-        return StdEnvironment.booleanType;
+        return std.booleanType;
     }
 
     public Object visitCharTypeDenoter(CharTypeDenoter __, Object _) {
-        return StdEnvironment.charType;
+        return std.charType;
     }
 
     public Object visitErrorTypeDenoter(ErrorTypeDenoter __, Object _) {
-        return StdEnvironment.errorType;
+        return std.errorType;
     }
 
     // e.g. var currentline: Line
@@ -821,19 +831,19 @@ public final class Checker implements Visitor {
         if (binding == null) {
             reportUndeclared(simpleTypeDenoter.I);
 
-            return StdEnvironment.errorType;
+            return std.errorType;
 
         } else if (!(binding instanceof TypeDeclaration)) {
             reporter.reportError("\"%\" is not a type identifier", simpleTypeDenoter.I.spelling, simpleTypeDenoter.I.position);
 
-            return StdEnvironment.errorType;
+            return std.errorType;
         }
 
         return ((TypeDeclaration) binding).T;
     }
 
     public Object visitIntTypeDenoter(IntTypeDenoter __, Object _) {
-        return StdEnvironment.integerType;
+        return std.integerType;
     }
 
     public Object visitRecordTypeDenoter(RecordTypeDenoter recordTypeDenoter, Object _) {
@@ -862,7 +872,7 @@ public final class Checker implements Visitor {
     // Return bindings
 
     public Object visitCharacterLiteral(CharacterLiteral __, Object _) {
-        return StdEnvironment.charType;
+        return std.charType;
     }
 
     /**
@@ -880,7 +890,7 @@ public final class Checker implements Visitor {
     }
 
     public Object visitIntegerLiteral(IntegerLiteral __, Object _) {
-        return StdEnvironment.integerType;
+        return std.integerType;
     }
 
     public Object visitOperator(Operator O, Object _) {
@@ -917,7 +927,7 @@ public final class Checker implements Visitor {
         } else {
             dotVname.type = checkFieldIdentifier(((RecordTypeDenoter) vType).FT, dotVname.I);
 
-            if (dotVname.type == StdEnvironment.errorType) {
+            if (dotVname.type == std.errorType) {
                 reporter.reportError("no field \"%\" in this record type", dotVname.I.spelling, dotVname.I.position);
             }
         }
@@ -928,7 +938,7 @@ public final class Checker implements Visitor {
     public Object visitSimpleVname(SimpleVname simpleVname, Object _) {
 
         simpleVname.variable = false;
-        simpleVname.type = StdEnvironment.errorType;
+        simpleVname.type = std.errorType;
 
         Declaration binding = (Declaration) simpleVname.I.visit(this, null);
 
@@ -965,14 +975,14 @@ public final class Checker implements Visitor {
 
         TypeDenoter eType = (TypeDenoter) subscriptVname.E.visit(this, null);
 
-        if (vType != StdEnvironment.errorType) {
+        if (vType != std.errorType) {
 
             if (!(vType instanceof ArrayTypeDenoter)) {
                 reporter.reportError("array expected here", "", subscriptVname.V.position);
 
             } else {
 
-                if (!eType.equals(StdEnvironment.integerType)) {
+                if (!eType.equals(std.integerType)) {
                     reporter.reportError("Integer expression expected here", "", subscriptVname.E.position);
                 }
 
@@ -1082,51 +1092,51 @@ public final class Checker implements Visitor {
     private void establishStdEnvironment() {
 
         // idTable.startIdentification();
-        StdEnvironment.booleanType = new BoolTypeDenoter(dummySrcPos);
-        StdEnvironment.integerType = new IntTypeDenoter(dummySrcPos);
-        StdEnvironment.charType = new CharTypeDenoter(dummySrcPos);
+        std.booleanType = new BoolTypeDenoter(dummySrcPos);
+        std.integerType = new IntTypeDenoter(dummySrcPos);
+        std.charType = new CharTypeDenoter(dummySrcPos);
 
-        StdEnvironment.anyType = new AnyTypeDenoter(dummySrcPos);
-        StdEnvironment.errorType = new ErrorTypeDenoter(dummySrcPos);
+        std.anyType = new AnyTypeDenoter(dummySrcPos);
+        std.errorType = new ErrorTypeDenoter(dummySrcPos);
 
         // Key should be unique. Limitation: you can't define function with different kind of parameters.
         // One possible (partial) solution is to add arity but also parser should be changed.
 
-        StdEnvironment.booleanDecl = declareStdType("Boolean", StdEnvironment.booleanType);
-        StdEnvironment.charDecl = declareStdType("Char", StdEnvironment.charType);
-        StdEnvironment.integerDecl = declareStdType("Integer", StdEnvironment.integerType);
-
-        StdEnvironment.falseDecl = declareStdConst("false", StdEnvironment.booleanType);
-        StdEnvironment.trueDecl = declareStdConst("true", StdEnvironment.booleanType);
-        StdEnvironment.maxintDecl = declareStdConst("maxint", StdEnvironment.integerType);
-
-        StdEnvironment.notDecl = declareStdUnaryOp("\\", StdEnvironment.booleanType, StdEnvironment.booleanType);
-
-        StdEnvironment.andDecl = declareStdBinaryOp("/\\", StdEnvironment.booleanType, StdEnvironment.booleanType, StdEnvironment.booleanType);
-        StdEnvironment.orDecl = declareStdBinaryOp("\\/", StdEnvironment.booleanType, StdEnvironment.booleanType, StdEnvironment.booleanType);
-        StdEnvironment.addDecl = declareStdBinaryOp("+", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.integerType);
-        StdEnvironment.subtractDecl = declareStdBinaryOp("-", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.integerType);
-        StdEnvironment.multiplyDecl = declareStdBinaryOp("*", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.integerType);
-        StdEnvironment.divideDecl = declareStdBinaryOp("/", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.integerType);
-        StdEnvironment.moduloDecl = declareStdBinaryOp("//", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.integerType);
-        StdEnvironment.lessDecl = declareStdBinaryOp("<", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.booleanType);
-        StdEnvironment.notgreaterDecl = declareStdBinaryOp("<=", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.booleanType);
-        StdEnvironment.greaterDecl = declareStdBinaryOp(">", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.booleanType);
-        StdEnvironment.notlessDecl = declareStdBinaryOp(">=", StdEnvironment.integerType, StdEnvironment.integerType, StdEnvironment.booleanType);
-        StdEnvironment.equalDecl = declareStdBinaryOp("=", StdEnvironment.anyType, StdEnvironment.anyType, StdEnvironment.booleanType);
-        StdEnvironment.unequalDecl = declareStdBinaryOp("\\=", StdEnvironment.anyType, StdEnvironment.anyType, StdEnvironment.booleanType);
-
-        StdEnvironment.chrDecl = declareStdFunc("chr", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, StdEnvironment.integerType, dummySrcPos), dummySrcPos), StdEnvironment.charType);
-        StdEnvironment.ordDecl = declareStdFunc("ord", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, StdEnvironment.charType, dummySrcPos), dummySrcPos), StdEnvironment.integerType);
-        StdEnvironment.eofDecl = declareStdFunc("eof", new EmptyFormalParameterSequence(dummySrcPos), StdEnvironment.booleanType);
-        StdEnvironment.eolDecl = declareStdFunc("eol", new EmptyFormalParameterSequence(dummySrcPos), StdEnvironment.booleanType);
-
-        StdEnvironment.getDecl = declareStdProc("get", new SingleFormalParameterSequence(new VarFormalParameter(dummyIdent, StdEnvironment.charType, dummySrcPos), dummySrcPos));
-        StdEnvironment.putDecl = declareStdProc("put", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, StdEnvironment.charType, dummySrcPos), dummySrcPos));
-        StdEnvironment.getintDecl = declareStdProc("getint", new SingleFormalParameterSequence(new VarFormalParameter(dummyIdent, StdEnvironment.integerType, dummySrcPos), dummySrcPos));
-        StdEnvironment.putintDecl = declareStdProc("putint", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, StdEnvironment.integerType, dummySrcPos), dummySrcPos));
-        StdEnvironment.geteolDecl = declareStdProc("geteol", new EmptyFormalParameterSequence(dummySrcPos));
-        StdEnvironment.puteolDecl = declareStdProc("puteol", new EmptyFormalParameterSequence(dummySrcPos));
+        std.booleanDecl = declareStdType("Boolean", std.booleanType);
+        std.charDecl = declareStdType("Char", std.charType);
+        std.integerDecl = declareStdType("Integer", std.integerType);
+
+        std.falseDecl = declareStdConst("false", std.booleanType);
+        std.trueDecl = declareStdConst("true", std.booleanType);
+        std.maxintDecl = declareStdConst("maxint", std.integerType);
+
+        std.notDecl = declareStdUnaryOp("\\", std.booleanType, std.booleanType);
+
+        std.andDecl = declareStdBinaryOp("/\\", std.booleanType, std.booleanType, std.booleanType);
+        std.orDecl = declareStdBinaryOp("\\/", std.booleanType, std.booleanType, std.booleanType);
+        std.addDecl = declareStdBinaryOp("+", std.integerType, std.integerType, std.integerType);
+        std.subtractDecl = declareStdBinaryOp("-", std.integerType, std.integerType, std.integerType);
+        std.multiplyDecl = declareStdBinaryOp("*", std.integerType, std.integerType, std.integerType);
+        std.divideDecl = declareStdBinaryOp("/", std.integerType, std.integerType, std.integerType);
+        std.moduloDecl = declareStdBinaryOp("//", std.integerType, std.integerType, std.integerType);
+        std.lessDecl = declareStdBinaryOp("<", std.integerType, std.integerType, std.booleanType);
+        std.notgreaterDecl = declareStdBinaryOp("<=", std.integerType, std.integerType, std.booleanType);
+        std.greaterDecl = declareStdBinaryOp(">", std.integerType, std.integerType, std.booleanType);
+        std.notlessDecl = declareStdBinaryOp(">=", std.integerType, std.integerType, std.booleanType);
+        std.equalDecl = declareStdBinaryOp("=", std.anyType, std.anyType, std.booleanType);
+        std.unequalDecl = declareStdBinaryOp("\\=", std.anyType, std.anyType, std.booleanType);
+
+        std.chrDecl = declareStdFunc("chr", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, std.integerType, dummySrcPos), dummySrcPos), std.charType);
+        std.ordDecl = declareStdFunc("ord", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, std.charType, dummySrcPos), dummySrcPos), std.integerType);
+        std.eofDecl = declareStdFunc("eof", new EmptyFormalParameterSequence(dummySrcPos), std.booleanType);
+        std.eolDecl = declareStdFunc("eol", new EmptyFormalParameterSequence(dummySrcPos), std.booleanType);
+
+        std.getDecl = declareStdProc("get", new SingleFormalParameterSequence(new VarFormalParameter(dummyIdent, std.charType, dummySrcPos), dummySrcPos));
+        std.putDecl = declareStdProc("put", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, std.charType, dummySrcPos), dummySrcPos));
+        std.getintDecl = declareStdProc("getint", new SingleFormalParameterSequence(new VarFormalParameter(dummyIdent, std.integerType, dummySrcPos), dummySrcPos));
+        std.putintDecl = declareStdProc("putint", new SingleFormalParameterSequence(new ConstFormalParameter(dummyIdent, std.integerType, dummySrcPos), dummySrcPos));
+        std.geteolDecl = declareStdProc("geteol", new EmptyFormalParameterSequence(dummySrcPos));
+        std.puteolDecl = declareStdProc("puteol", new EmptyFormalParameterSequence(dummySrcPos));
 
     }
 }
@@ -28,11 +28,15 @@ public class IdEntry {
     // used to move backwards (linked list)
     protected IdEntry previous;
 
-    IdEntry(String name, Declaration attr, int level, IdEntry previous) {
+    // the entry for the same name that this one hides, if any
+    protected IdEntry shadowed;
+
+    IdEntry(String name, Declaration attr, int level, IdEntry previous, IdEntry shadowed) {
         this.name = name;
         this.attr = attr;
         this.level = level;
         this.previous = previous;
+        this.shadowed = shadowed;
     }
 
 }
@@ -16,6 +16,14 @@ package Triangle.ContextualAnalyzer;
 
 import Triangle.AbstractSyntaxTrees.Declaration;
 
+import java.util.HashMap;
+
+/**
+ * The entries are linked in the order entered, so that a scope is closed
+ * by removing its own entries, and are also indexed by name. The index
+ * holds the visible entry for each name, which links to the one it hides,
+ * so that lookups take constant time whatever the number of declarations.
+ */
 public final class IdentificationTable {
 
     // current level
@@ -24,6 +32,9 @@ public final class IdentificationTable {
     // last entry
     private IdEntry latest;
 
+    // visible entry for each name
+    private final HashMap<String, IdEntry> visible = new HashMap<String, IdEntry>();
+
     public IdentificationTable() {
         level = 0;
         latest = null;
@@ -49,8 +60,15 @@ public final class IdentificationTable {
         // Presumably, idTable.level > 0.
         entry = this.latest;
 
-        while (entry.level == this.level) {
+        while (entry != null && entry.level == this.level) {
             local = entry;
+
+            // uncover the entry it hid
+            if (local.shadowed == null)
+                visible.remove(local.name);
+            else
+                visible.put(local.name, local.shadowed);
+
             entry = local.previous;
         }
 
@@ -66,32 +84,16 @@ public final class IdentificationTable {
      */
     public void enter(String name, Declaration attr) {
 
-        IdEntry entry = this.latest;
-
-        boolean present = false;
-        boolean searching = true;
+        IdEntry entry = visible.get(name);
 
         // Check for duplicate entry ...
-        while (searching) {
-
-            if (entry == null || entry.level < this.level) {
-                searching = false;
-
-            } else if (entry.name.equals(name)) {
-                present = true;
-                searching = false;
-
-            } else {
-                entry = entry.previous;
-            }
-        }
-
-        attr.duplicated = present;
+        attr.duplicated = (entry != null) && (entry.level == this.level);
 
         // Add new entry ...
-        entry = new IdEntry(name, attr, this.level, this.latest);
+        entry = new IdEntry(name, attr, this.level, this.latest, entry);
 
         this.latest = entry;
+        visible.put(name, entry);
     }
 
     /**
@@ -103,28 +105,9 @@ public final class IdentificationTable {
      */
     public Declaration retrieve(String name) {
 
-        IdEntry entry;
-        Declaration attr = null;
-
-        boolean searching = true;
-
-        entry = this.latest;
-
-        while (searching) {
-
-            if (entry == null) {
-                searching = false;
-
-            } else if (entry.name.equals(name)) {
-                searching = false;
-                attr = entry.attr;
-
-            } else {
-                entry = entry.previous;
-            }
-        }
+        IdEntry entry = visible.get(name);
 
-        return attr;
+        return (entry == null) ? null : entry.attr;
     }
 
     // when debug
@@ -16,6 +16,8 @@ package Triangle;
 
 import Triangle.SyntacticAnalyzer.SourcePosition;
 
+import java.io.PrintStream;
+
 /**
  * Reports error but do not stop the execution.
  */
@@ -23,29 +25,41 @@ public class ErrorReporter {
 
     int numErrors;
 
+    // where errors are reported, normally System.out
+    private final PrintStream out;
+
     ErrorReporter() {
+        this(System.out);
+    }
+
+    public ErrorReporter(PrintStream out) {
+        this.out = out;
         numErrors = 0;
     }
 
+    public int getNumErrors() {
+        return numErrors;
+    }
+
     public void reportError(String message, String tokenName, SourcePosition pos) {
 
-        System.out.print("ERROR: ");
+        out.print("ERROR: ");
 
         for (int p = 0; p < message.length(); p++) {
 
             if (message.charAt(p) == '%') {
-                System.out.print(tokenName);
+                out.print(tokenName);
 
             } else {
-                System.out.print(message.charAt(p));
+                out.print(message.charAt(p));
             }
         }
 
-        System.out.println(" " + pos.start + ".." + pos.finish);
+        out.println(" " + pos.start + ".." + pos.finish);
         numErrors++;
     }
 
     public void reportRestriction(String message) {
-        System.out.println("RESTRICTION: " + message);
+        out.println("RESTRICTION: " + message);
     }
 }
@@ -0,0 +1,541 @@
+package Triangle.Optimizer;
+
+import TAM.Machine;
+import Triangle.AbstractSyntaxTrees.*;
+import Triangle.StdEnvironment;
+
+/**
+ * Simplifies the checked AST of a program before code generation.
+ * <p/>
+ * 1. Folds applications of the standard operators to literals and to known
+ *    constants, true, false, maxint and those declared by const, into
+ *    literals, true or false.
+ * <p/>
+ * 2. Applies the identities x+0, 0+x, x-0, x*1, 1*x and x/1, and
+ *    b/\true, true/\b, b\/false, false\/b and \ \b.
+ * <p/>
+ * 3. Replaces an if-command or if-expression with a constant condition by
+ *    the branch taken, and a while-command whose condition is false by an
+ *    empty command.
+ * <p/>
+ * The program must behave exactly as it would without these changes, so
+ * an operation that would fail at run time, by overflow or by division by
+ * zero, is left to do so, and an identity is applied only where TAM could
+ * not have failed, nor made a different value, in applying the operator.
+ * Operators declared in the program are never touched.
+ */
+public final class ConstantFolder implements Visitor {
+
+    private final StdEnvironment std;
+
+    /**
+     * Makes a folder for programs checked in the standard environment std.
+     */
+    public ConstantFolder(StdEnvironment std) {
+        this.std = std;
+    }
+
+    /**
+     * Simplifies the program in place.
+     */
+    public void fold(Program theAST) {
+        theAST.visit(this, null);
+    }
+
+    // Commands
+    public Object visitAssignCommand(AssignCommand ast, Object o) {
+        ast.V.visit(this, null);
+        ast.E = (Expression) ast.E.visit(this, null);
+        return ast;
+    }
+
+    public Object visitCallCommand(CallCommand ast, Object o) {
+        ast.APS.visit(this, null);
+        return ast;
+    }
+
+    public Object visitEmptyCommand(EmptyCommand ast, Object o) {
+        return ast;
+    }
+
+    public Object visitIfCommand(IfCommand ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        ast.C1 = (Command) ast.C1.visit(this, null);
+        ast.C2 = (Command) ast.C2.visit(this, null);
+
+        Integer condition = valueOf(ast.E);
+        if (condition == null)
+            return ast;
+        return (condition.intValue() != Machine.falseRep) ? ast.C1 : ast.C2;
+    }
+
+    public Object visitLetCommand(LetCommand ast, Object o) {
+        ast.D.visit(this, null);
+        ast.C = (Command) ast.C.visit(this, null);
+        return ast;
+    }
+
+    public Object visitSequentialCommand(SequentialCommand ast, Object o) {
+        ast.C1 = (Command) ast.C1.visit(this, null);
+        ast.C2 = (Command) ast.C2.visit(this, null);
+        return ast;
+    }
+
+    public Object visitWhileCommand(WhileCommand ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        ast.C = (Command) ast.C.visit(this, null);
+
+        // the condition is evaluated before the body is ever executed
+        Integer condition = valueOf(ast.E);
+        if ((condition != null) && (condition.intValue() == Machine.falseRep))
+            return new EmptyCommand(ast.position);
+        return ast;
+    }
+
+    // Expressions
+    public Object visitArrayExpression(ArrayExpression ast, Object o) {
+        ast.AA.visit(this, null);
+        return ast;
+    }
+
+    public Object visitBinaryExpression(BinaryExpression ast, Object o) {
+        ast.E1 = (Expression) ast.E1.visit(this, null);
+        ast.E2 = (Expression) ast.E2.visit(this, null);
+
+        Declaration op = ast.Op.decl;
+        Integer value1 = valueOf(ast.E1);
+        Integer value2 = valueOf(ast.E2);
+
+        if ((value1 != null) && (value2 != null)) {
+            Integer value = evaluate(op, value1.intValue(), value2.intValue());
+            if (value != null)
+                return literal(value.intValue(), ast);
+            return ast;
+        }
+
+        if (value2 != null) {
+            int right = value2.intValue();
+
+            // x/1 is x, even out of range, as TAM divides unchecked
+            if ((op == std.divideDecl) && (right == 1))
+                return ast.E1;
+            if ((((op == std.addDecl) || (op == std.subtractDecl)) && (right == 0))
+                    || ((op == std.multiplyDecl) && (right == 1)))
+                return inRange(ast.E1) ? ast.E1 : ast;
+            if (((op == std.andDecl) && (right == Machine.trueRep))
+                    || ((op == std.orDecl) && (right == Machine.falseRep)))
+                return isTruthValue(ast.E1) ? ast.E1 : ast;
+
+        } else if (value1 != null) {
+            int left = value1.intValue();
+
+            if (((op == std.addDecl) && (left == 0)) || ((op == std.multiplyDecl) && (left == 1)))
+                return inRange(ast.E2) ? ast.E2 : ast;
+            if (((op == std.andDecl) && (left == Machine.trueRep))
+                    || ((op == std.orDecl) && (left == Machine.falseRep)))
+                return isTruthValue(ast.E2) ? ast.E2 : ast;
+        }
+
+        return ast;
+    }
+
+    public Object visitCallExpression(CallExpression ast, Object o) {
+        ast.APS.visit(this, null);
+        return ast;
+    }
+
+    public Object visitCharacterExpression(CharacterExpression ast, Object o) {
+        return ast;
+    }
+
+    public Object visitEmptyExpression(EmptyExpression ast, Object o) {
+        return ast;
+    }
+
+    public Object visitIfExpression(IfExpression ast, Object o) {
+        ast.E1 = (Expression) ast.E1.visit(this, null);
+        ast.E2 = (Expression) ast.E2.visit(this, null);
+        ast.E3 = (Expression) ast.E3.visit(this, null);
+
+        Integer condition = valueOf(ast.E1);
+        if (condition == null)
+            return ast;
+        return (condition.intValue() != Machine.falseRep) ? ast.E2 : ast.E3;
+    }
+
+    public Object visitIntegerExpression(IntegerExpression ast, Object o) {
+        return ast;
+    }
+
+    public Object visitLetExpression(LetExpression ast, Object o) {
+        ast.D.visit(this, null);
+        ast.E = (Expression) ast.E.visit(this, null);
+        return ast;
+    }
+
+    public Object visitRecordExpression(RecordExpression ast, Object o) {
+        ast.RA.visit(this, null);
+        return ast;
+    }
+
+    public Object visitUnaryExpression(UnaryExpression ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+
+        if (ast.Op.decl != std.notDecl)
+            return ast;
+
+        Integer value = valueOf(ast.E);
+        if (value != null)
+            return literal(toInt(!isTrue(value.intValue())), ast);
+
+        // \ \b is b, if b is true or false
+        if ((ast.E instanceof UnaryExpression) && (((UnaryExpression) ast.E).Op.decl == std.notDecl)
+                && isTruthValue(((UnaryExpression) ast.E).E))
+            return ((UnaryExpression) ast.E).E;
+
+        return ast;
+    }
+
+    public Object visitVnameExpression(VnameExpression ast, Object o) {
+        ast.V.visit(this, null);
+        return ast;
+    }
+
+    // Declarations
+    public Object visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Object o) {
+        return null;
+    }
+
+    public Object visitConstDeclaration(ConstDeclaration ast, Object o) {
+
+        // A constant folded to a literal becomes a known value to the
+        // encoder, and so takes no space at run time.
+        ast.E = (Expression) ast.E.visit(this, null);
+        return null;
+    }
+
+    public Object visitFuncDeclaration(FuncDeclaration ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        return null;
+    }
+
+    public Object visitProcDeclaration(ProcDeclaration ast, Object o) {
+        ast.C = (Command) ast.C.visit(this, null);
+        return null;
+    }
+
+    public Object visitSequentialDeclaration(SequentialDeclaration ast, Object o) {
+        ast.D1.visit(this, null);
+        ast.D2.visit(this, null);
+        return null;
+    }
+
+    public Object visitTypeDeclaration(TypeDeclaration ast, Object o) {
+        return null;
+    }
+
+    public Object visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Object o) {
+        return null;
+    }
+
+    public Object visitVarDeclaration(VarDeclaration ast, Object o) {
+        return null;
+    }
+
+    // Array Aggregates
+    public Object visitMultipleArrayAggregate(MultipleArrayAggregate ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        ast.AA.visit(this, null);
+        return null;
+    }
+
+    public Object visitSingleArrayAggregate(SingleArrayAggregate ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        return null;
+    }
+
+    // Record Aggregates
+    public Object visitMultipleRecordAggregate(MultipleRecordAggregate ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        ast.RA.visit(this, null);
+        return null;
+    }
+
+    public Object visitSingleRecordAggregate(SingleRecordAggregate ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        return null;
+    }
+
+    // Formal Parameters
+    public Object visitConstFormalParameter(ConstFormalParameter ast, Object o) {
+        return null;
+    }
+
+    public Object visitFuncFormalParameter(FuncFormalParameter ast, Object o) {
+        return null;
+    }
+
+    public Object visitProcFormalParameter(ProcFormalParameter ast, Object o) {
+        return null;
+    }
+
+    public Object visitVarFormalParameter(VarFormalParameter ast, Object o) {
+        return null;
+    }
+
+    public Object visitEmptyFormalParameterSequence(EmptyFormalParameterSequence ast, Object o) {
+        return null;
+    }
+
+    public Object visitMultipleFormalParameterSequence(MultipleFormalParameterSequence ast, Object o) {
+        return null;
+    }
+
+    public Object visitSingleFormalParameterSequence(SingleFormalParameterSequence ast, Object o) {
+        return null;
+    }
+
+    // Actual Parameters
+    public Object visitConstActualParameter(ConstActualParameter ast, Object o) {
+        ast.E = (Expression) ast.E.visit(this, null);
+        return null;
+    }
+
+    public Object visitFuncActualParameter(FuncActualParameter ast, Object o) {
+        return null;
+    }
+
+    public Object visitProcActualParameter(ProcActualParameter ast, Object o) {
+        return null;
+    }
+
+    public Object visitVarActualParameter(VarActualParameter ast, Object o) {
+        ast.V.visit(this, null);
+        return null;
+    }
+
+    public Object visitEmptyActualParameterSequence(EmptyActualParameterSequence ast, Object o) {
+        return null;
+    }
+
+    public Object visitMultipleActualParameterSequence(MultipleActualParameterSequence ast, Object o) {
+        ast.AP.visit(this, null);
+        ast.APS.visit(this, null);
+        return null;
+    }
+
+    public Object visitSingleActualParameterSequence(SingleActualParameterSequence ast, Object o) {
+        ast.AP.visit(this, null);
+        return null;
+    }
+
+    // Type Denoters, which contain no expressions
+    public Object visitAnyTypeDenoter(AnyTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitArrayTypeDenoter(ArrayTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitBoolTypeDenoter(BoolTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitCharTypeDenoter(CharTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitErrorTypeDenoter(ErrorTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitSimpleTypeDenoter(SimpleTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitIntTypeDenoter(IntTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitRecordTypeDenoter(RecordTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitMultipleFieldTypeDenoter(MultipleFieldTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    public Object visitSingleFieldTypeDenoter(SingleFieldTypeDenoter ast, Object o) {
+        return null;
+    }
+
+    // Literals, Identifiers and Operators
+    public Object visitCharacterLiteral(CharacterLiteral ast, Object o) {
+        return null;
+    }
+
+    public Object visitIdentifier(Identifier ast, Object o) {
+        return null;
+    }
+
+    public Object visitIntegerLiteral(IntegerLiteral ast, Object o) {
+        return null;
+    }
+
+    public Object visitOperator(Operator ast, Object o) {
+        return null;
+    }
+
+    // Value-or-variable names
+    public Object visitDotVname(DotVname ast, Object o) {
+        ast.V.visit(this, null);
+        return null;
+    }
+
+    public Object visitSimpleVname(SimpleVname ast, Object o) {
+        return null;
+    }
+
+    public Object visitSubscriptVname(SubscriptVname ast, Object o) {
+
+        // A literal index is added into the offset by the encoder.
+        ast.V.visit(this, null);
+        ast.E = (Expression) ast.E.visit(this, null);
+        return null;
+    }
+
+    // Programs
+    public Object visitProgram(Program ast, Object o) {
+        ast.C = (Command) ast.C.visit(this, null);
+        return null;
+    }
+
+
+// CONSTANTS
+
+    // Returns the value of the expression, as represented in TAM, if it is
+    // a literal or names a constant of a primitive type, otherwise null.
+    private Integer valueOf(Expression E) {
+
+        if (E instanceof IntegerExpression) {
+            IntegerLiteral IL = ((IntegerExpression) E).IL;
+            try {
+                return Integer.valueOf(IL.spelling);
+            } catch (NumberFormatException s) {
+                return null;    // left for the encoder to deal with
+            }
+
+        } else if (E instanceof CharacterExpression) {
+            return Integer.valueOf(((CharacterExpression) E).CL.spelling.charAt(1));
+
+        } else if ((E instanceof VnameExpression) && (((VnameExpression) E).V instanceof SimpleVname)) {
+            AST decl = ((SimpleVname) ((VnameExpression) E).V).I.decl;
+
+            // the standard constants have no expression of their own
+            if (decl == std.falseDecl)
+                return Integer.valueOf(Machine.falseRep);
+            else if (decl == std.trueDecl)
+                return Integer.valueOf(Machine.trueRep);
+            else if (decl == std.maxintDecl)
+                return Integer.valueOf(Machine.maxintRep);
+            else if (decl instanceof ConstDeclaration)
+                return valueOf(((ConstDeclaration) decl).E);
+        }
+
+        return null;
+    }
+
+    // Returns what the standard operator op makes of the operands, as TAM
+    // would, or null if op is not one of them or TAM would fail.
+    private Integer evaluate(Declaration op, int left, int right) {
+
+        if (op == std.addDecl)
+            return overflowChecked((long) left + right);
+        else if (op == std.subtractDecl)
+            return overflowChecked((long) left - right);
+        else if (op == std.multiplyDecl)
+            return overflowChecked((long) left * right);
+        else if (op == std.divideDecl)
+            return (right == 0) ? null : Integer.valueOf((int) ((long) left / right));
+        else if (op == std.moduloDecl)
+            return (right == 0) ? null : Integer.valueOf((int) ((long) left % right));
+        else if (op == std.lessDecl)
+            return toInt(left < right);
+        else if (op == std.notgreaterDecl)
+            return toInt(left <= right);
+        else if (op == std.greaterDecl)
+            return toInt(left > right);
+        else if (op == std.notlessDecl)
+            return toInt(left >= right);
+        else if (op == std.equalDecl)
+            return toInt(left == right);
+        else if (op == std.unequalDecl)
+            return toInt(left != right);
+        else if (op == std.andDecl)
+            return toInt(isTrue(left) & isTrue(right));
+        else if (op == std.orDecl)
+            return toInt(isTrue(left) | isTrue(right));
+        return null;
+    }
+
+    private static Integer overflowChecked(long datum) {
+        if ((-Machine.maxintRep <= datum) && (datum <= Machine.maxintRep))
+            return Integer.valueOf((int) datum);
+        return null;
+    }
+
+    private static boolean isTrue(int datum) {
+        return datum == Machine.trueRep;
+    }
+
+    private static int toInt(boolean b) {
+        return b ? Machine.trueRep : Machine.falseRep;
+    }
+
+    // Tests whether E is an addition, subtraction or multiplication, whose
+    // value TAM has checked to be in range.
+    private boolean inRange(Expression E) {
+        if (!(E instanceof BinaryExpression))
+            return false;
+        Declaration op = ((BinaryExpression) E).Op.decl;
+        return (op == std.addDecl) || (op == std.subtractDecl) || (op == std.multiplyDecl);
+    }
+
+    // Tests whether E is made by a standard operator, and so is sure to be
+    // represented by trueRep or falseRep, not any other word.
+    private boolean isTruthValue(Expression E) {
+        if (E instanceof UnaryExpression)
+            return ((UnaryExpression) E).Op.decl == std.notDecl;
+        if (!(E instanceof BinaryExpression))
+            return false;
+        Declaration op = ((BinaryExpression) E).Op.decl;
+        return (op == std.andDecl) || (op == std.orDecl)
+                || (op == std.equalDecl) || (op == std.unequalDecl)
+                || (op == std.lessDecl) || (op == std.notgreaterDecl)
+                || (op == std.greaterDecl) || (op == std.notlessDecl);
+    }
+
+    // Returns an expression for the value, of the same type as E.
+    private Expression literal(int value, Expression E) {
+
+        if (E.type.equals(std.booleanType)) {
+            Identifier I = new Identifier(isTrue(value) ? "true" : "false", E.position);
+            I.decl = isTrue(value) ? std.trueDecl : std.falseDecl;
+
+            SimpleVname V = new SimpleVname(I, E.position);
+            V.type = std.booleanType;
+            V.variable = false;
+
+            VnameExpression result = new VnameExpression(V, E.position);
+            result.type = std.booleanType;
+            return result;
+
+        } else {
+            IntegerExpression result = new IntegerExpression(
+                    new IntegerLiteral(Integer.toString(value), E.position), E.position);
+            result.type = std.integerType;
+            return result;
+        }
+    }
+}
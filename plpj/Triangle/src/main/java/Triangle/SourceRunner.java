@@ -0,0 +1,92 @@
+package Triangle;
+
+import TAM.BatchRunner;
+import TAM.Instruction;
+import TAM.TamVM;
+import Triangle.SyntacticAnalyzer.SourceFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Compiles a Triangle program from its source text and runs it on a
+ * {@link TamVM}, all in memory: the code generated goes straight from the
+ * encoder's buffer into the machine, with no object file written or read.
+ * <p/>
+ * For example:
+ * <pre>
+ *   SourceRunner.Result result = SourceRunner.run("begin putint(42) end", new byte[0]);
+ *   if (result.compiled &amp;&amp; (result.status == TamVM.halted))
+ *       System.out.print(result.output);
+ * </pre>
+ * Each call has its own {@link CompilationSession} and machine, so any
+ * number may run on different threads at once.
+ */
+public final class SourceRunner {
+
+    /**
+     * The outcome of compiling and running one program.
+     */
+    public static class Result {
+
+        // true iff the program compiled, and so was run
+        public boolean compiled;
+
+        // what the compiler reported
+        public String messages = "";
+
+        public int status;
+        public long instructions;
+        public String output = "";
+
+        public long compileNanos, runNanos;
+    }
+
+    private SourceRunner() {
+    }
+
+    /**
+     * Compiles and runs the program with the given standard input, and
+     * the default settings of a {@link BatchRunner}.
+     */
+    public static Result run(String sourceText, byte[] input) {
+        return run(sourceText, input, new BatchRunner.Settings());
+    }
+
+    /**
+     * Compiles the program and, if it has no errors, runs it with the
+     * given standard input until it halts, fails or has used up the step
+     * budget of settings.
+     */
+    public static Result run(String sourceText, byte[] input, BatchRunner.Settings settings) {
+        Result result = new Result();
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        CompilationSession session = new CompilationSession(new PrintStream(messages, true));
+
+        long start = System.nanoTime();
+        result.compiled = session.compile(new SourceFile(sourceText, false));
+        result.compileNanos = System.nanoTime() - start;
+        result.messages = messages.toString();
+        if (!result.compiled)
+            return result;
+
+        Instruction[] code = session.getCode();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // a program too long for the code store asked for gets a larger one
+        TamVM vm = new TamVM(Math.max(settings.codeStoreSize, session.getCodeSize()), settings.dataStoreSize);
+        vm.setCompilationThreshold(settings.compilationThreshold);
+
+        start = System.nanoTime();
+        vm.load(code, session.getCodeSize());
+        vm.setInput(input);
+        vm.setOutput(output);
+        vm.run(settings.stepBudget);
+        result.runNanos = System.nanoTime() - start;
+
+        result.status = vm.getStatus();
+        result.instructions = vm.getInstructionCount();
+        result.output = output.toString();
+        return result;
+    }
+}
@@ -16,53 +16,60 @@ package Triangle;
 
 import Triangle.AbstractSyntaxTrees.*;
 
+/**
+ * The standard environment of one compilation: the small ASTs that the
+ * {@link Triangle.ContextualAnalyzer.Checker} makes for the standard types
+ * and declarations, which the {@link Triangle.CodeGenerator.Encoder} then
+ * decorates with their run-time entities. Each compilation needs one of
+ * its own, since decorating it changes it.
+ */
 public final class StdEnvironment {
 
     //_________________________________________________________________________
     //                        These are small ASTs representing standard types
 
-    public static TypeDenoter booleanType;
-    public static TypeDenoter charType;
-    public static TypeDenoter integerType;
-    public static TypeDenoter anyType;
-    public static TypeDenoter errorType;
+    public TypeDenoter booleanType;
+    public TypeDenoter charType;
+    public TypeDenoter integerType;
+    public TypeDenoter anyType;
+    public TypeDenoter errorType;
 
-    public static TypeDeclaration booleanDecl;
-    public static TypeDeclaration charDecl;
-    public static TypeDeclaration integerDecl;
+    public TypeDeclaration booleanDecl;
+    public TypeDeclaration charDecl;
+    public TypeDeclaration integerDecl;
 
     //_________________________________________________________________________
     //   These are small ASTs representing "declarations" of standard entities
 
-    public static ConstDeclaration falseDecl;
-    public static ConstDeclaration trueDecl;
-    public static ConstDeclaration maxintDecl;
+    public ConstDeclaration falseDecl;
+    public ConstDeclaration trueDecl;
+    public ConstDeclaration maxintDecl;
 
-    public static UnaryOperatorDeclaration notDecl;
+    public UnaryOperatorDeclaration notDecl;
 
-    public static BinaryOperatorDeclaration andDecl;
-    public static BinaryOperatorDeclaration orDecl;
-    public static BinaryOperatorDeclaration addDecl;
-    public static BinaryOperatorDeclaration subtractDecl;
-    public static BinaryOperatorDeclaration multiplyDecl;
-    public static BinaryOperatorDeclaration divideDecl;
-    public static BinaryOperatorDeclaration moduloDecl;
-    public static BinaryOperatorDeclaration equalDecl;
-    public static BinaryOperatorDeclaration unequalDecl;
-    public static BinaryOperatorDeclaration lessDecl;
-    public static BinaryOperatorDeclaration notlessDecl;
-    public static BinaryOperatorDeclaration greaterDecl;
-    public static BinaryOperatorDeclaration notgreaterDecl;
+    public BinaryOperatorDeclaration andDecl;
+    public BinaryOperatorDeclaration orDecl;
+    public BinaryOperatorDeclaration addDecl;
+    public BinaryOperatorDeclaration subtractDecl;
+    public BinaryOperatorDeclaration multiplyDecl;
+    public BinaryOperatorDeclaration divideDecl;
+    public BinaryOperatorDeclaration moduloDecl;
+    public BinaryOperatorDeclaration equalDecl;
+    public BinaryOperatorDeclaration unequalDecl;
+    public BinaryOperatorDeclaration lessDecl;
+    public BinaryOperatorDeclaration notlessDecl;
+    public BinaryOperatorDeclaration greaterDecl;
+    public BinaryOperatorDeclaration notgreaterDecl;
 
-    public static ProcDeclaration getDecl;
-    public static ProcDeclaration putDecl;
-    public static ProcDeclaration getintDecl;
-    public static ProcDeclaration putintDecl;
-    public static ProcDeclaration geteolDecl;
-    public static ProcDeclaration puteolDecl;
+    public ProcDeclaration getDecl;
+    public ProcDeclaration putDecl;
+    public ProcDeclaration getintDecl;
+    public ProcDeclaration putintDecl;
+    public ProcDeclaration geteolDecl;
+    public ProcDeclaration puteolDecl;
 
-    public static FuncDeclaration chrDecl;
-    public static FuncDeclaration ordDecl;
-    public static FuncDeclaration eolDecl;
-    public static FuncDeclaration eofDecl;
+    public FuncDeclaration chrDecl;
+    public FuncDeclaration ordDecl;
+    public FuncDeclaration eolDecl;
+    public FuncDeclaration eofDecl;
 }
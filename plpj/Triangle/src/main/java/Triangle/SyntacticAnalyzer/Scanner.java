@@ -18,6 +18,11 @@ package Triangle.SyntacticAnalyzer;
  * Since the source  program text actually consists of individual characters, and a token
  * may consist of several characters, scanning is needed to group the characters into tokens,
  * and to discard other text such as blank space and comments.
+ * <p/>
+ * A token's spelling is taken as a slice of the source text, which is held
+ * whole by the {@link SourceFile}. Reserved words and punctuation have fixed
+ * spellings, and every other spelling is interned, so that a name used many
+ * times is allocated only once.
  */
 public final class Scanner {
 
@@ -26,8 +31,9 @@ public final class Scanner {
     private char currentChar;
     private boolean debug;
 
-    private StringBuffer currentSpelling;
-    private boolean currentlyScanningToken;
+    // interned spellings, by open addressing on their hash codes
+    private String[] spellings = new String[256];
+    private int spellingCount;
 
     public Scanner(SourceFile source) {
         this.sourceFile = source;
@@ -39,25 +45,22 @@ public final class Scanner {
 
         Token token;
         SourcePosition pos;
-        int kind;
-
-        currentlyScanningToken = false;
+        int kind, start;
 
         // part of the scanner's function is to discard blank space and comments
         while (currentChar == '!' || currentChar == ' ' || currentChar == '\n' || currentChar == '\r' || currentChar == '\t') {
             scanSeparator();
         }
 
-        currentlyScanningToken = true;
-        currentSpelling = new StringBuffer("");
-
         pos = new SourcePosition();
         pos.start = sourceFile.getCurrentLineNumber();
 
+        // the current character is always at next - 1
+        start = sourceFile.next - 1;
         kind = scanToken();
 
         pos.finish = sourceFile.getCurrentLineNumber();
-        token = new Token(kind, currentSpelling.toString(), pos);
+        token = new Token(kind, spelling(kind, start, sourceFile.next - 1 - start), pos);
 
         if (debug) {
             System.out.println(token);
@@ -66,6 +69,88 @@ public final class Scanner {
         return token;
     }
 
+    // Returns the spelling of a token of the given kind, the length
+    // characters of the source text from start.
+    private String spelling(int kind, int start, int length) {
+
+        switch (kind) {
+
+            case Token.IDENTIFIER:
+                int reserved = Token.classify(sourceFile.text, start, length);
+                return (reserved == Token.IDENTIFIER) ? intern(start, length) : Token.spell(reserved);
+
+            case Token.INTLITERAL:
+            case Token.CHARLITERAL:
+            case Token.OPERATOR:
+                return intern(start, length);
+
+            case Token.ERROR:
+                // a character literal cut short may run past the end of the text
+                return new String(sourceFile.text, start, Math.min(length, sourceFile.text.length - start));
+
+            default:
+                return Token.spell(kind);
+        }
+    }
+
+    // Returns the one string with the given spelling, making it if this is
+    // the first time it is seen.
+    private String intern(int start, int length) {
+
+        char[] text = sourceFile.text;
+        int hash = 0;
+
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + text[i];
+        }
+
+        int mask = spellings.length - 1;
+        int slot = hash & mask;
+        String spelling;
+
+        while ((spelling = spellings[slot]) != null) {
+            if (spelling.length() == length && matches(spelling, start)) {
+                return spelling;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        spelling = new String(text, start, length);
+        spellings[slot] = spelling;
+        spellingCount++;
+
+        // keep the table at most half full
+        if (2 * spellingCount > spellings.length) {
+            String[] old = spellings;
+            spellings = new String[2 * old.length];
+            mask = spellings.length - 1;
+            for (String s : old) {
+                if (s != null) {
+                    slot = s.hashCode() & mask;
+                    while (spellings[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    spellings[slot] = s;
+                }
+            }
+        }
+
+        return spelling;
+    }
+
+    private boolean matches(String spelling, int start) {
+
+        char[] text = sourceFile.text;
+
+        for (int i = 0; i < spelling.length(); i++) {
+            if (spelling.charAt(i) != text[start + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public Scanner withDebugging() {
         debug = true;
         return this;
@@ -100,15 +185,10 @@ public final class Scanner {
 
 
     /**
-     * Appends the current character to the current token, and gets
+     * Takes the current character into the current token, and gets
      * the next character from the source program.
      */
     private void takeIt() {
-
-        if (currentlyScanningToken) {
-            currentSpelling.append(currentChar);
-        }
-
         currentChar = sourceFile.getSource();
     }
 
@@ -16,48 +16,64 @@ package Triangle.SyntacticAnalyzer;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+/**
+ * The text of a source program, read whole into memory when it is opened,
+ * so that the {@link Scanner} can take each token's spelling as a slice of
+ * it. Each byte of the source is one character.
+ */
 public class SourceFile {
 
     public static final char EOL = '\n';      // end of line
     public static final char EOT = '\u0000';  // end of transition
 
     File sourceFile;
-    BufferedInputStream source;
+
+    // the whole source, and the index of the character after the current one
+    final char[] text;
+    int next;
 
     int currentLine;
     private boolean debug = false;
 
     public SourceFile(String filename) {
 
+        char[] text;
+
         try {
             this.sourceFile = new File(filename);
-            this.source = new BufferedInputStream(new FileInputStream(sourceFile));
+            text = decode(Files.readAllBytes(sourceFile.toPath()));
 
             this.currentLine = 1;
 
         } catch (IOException _) {
             this.sourceFile = null;
-            this.source = null;
+            text = new char[0];
 
             this.currentLine = 0;
         }
+
+        this.text = text;
     }
 
     public SourceFile(String snippet, boolean debug) {
 
-        try {
-            this.source = new BufferedInputStream(new ByteArrayInputStream(snippet.getBytes(StandardCharsets.UTF_8)));
-            this.currentLine = 1;
+        this.text = decode(snippet.getBytes(StandardCharsets.UTF_8));
+        this.currentLine = 1;
 
-            this.debug = debug;
+        this.debug = debug;
+    }
 
-        } catch (Exception _) {
-            this.sourceFile = null;
-            this.source = null;
+    public SourceFile(byte[] source) {
 
-            this.currentLine = 0;
-        }
+        this.text = decode(source);
+        this.currentLine = 1;
+    }
+
+    private static char[] decode(byte[] bytes) {
+        // as read a byte at a time
+        return new String(bytes, StandardCharsets.ISO_8859_1).toCharArray();
     }
 
     /**
@@ -68,47 +84,34 @@ public class SourceFile {
      */
     char getSource() {
 
-        try {
-            int c = source.read();
-
-            if (c == -1) {
-                c = EOT;
-
-            } else if (c == EOL) {
-                currentLine++;
-            }
+        // next moves on at the end too, so that the current character is
+        // always at next - 1
+        char c = (next < text.length) ? text[next] : EOT;
+        next++;
 
-            if (debug) {
-                System.out.println("symbol: " + (char) c);
-            }
-
-            return (char) c;
+        if (c == EOL) {
+            currentLine++;
+        }
 
-        } catch (IOException _) {
-            return EOT;
+        if (debug) {
+            System.out.println("symbol: " + c);
         }
+
+        return c;
     }
 
     /**
      * Just takes the next symbol to check it but do not move the source pointer
      */
-    char getProbe() throws IOException {
-
-        source.mark(2);
+    char getProbe() {
 
-        int c = source.read();
-
-        if (c == -1) {
-            c = EOT;
-        }
+        char c = (next < text.length) ? text[next] : EOT;
 
         if (debug) {
-            System.out.println("     next char probe: " + (char) c);
+            System.out.println("     next char probe: " + c);
         }
 
-        source.reset();
-
-        return (char) c;
+        return c;
     }
 
     int getCurrentLineNumber() {
@@ -14,12 +14,14 @@
 
 package Triangle.SyntacticAnalyzer;
 
+import java.util.Arrays;
+
 /**
  * The interface between the scanner and the parser is a stream of tokens.
  * A token is an atomic symbol of the source program. The interface between
  * the scanner and the parser is a stream of tokens.
  */
-final class Token {
+public final class Token {
 
     private final static int firstReservedWord = Token.ARRAY;
     private final static int lastReservedWord  = Token.WHILE;
@@ -74,30 +76,38 @@ final class Token {
     protected final String spelling;
     protected final SourcePosition position;
 
+    // Reserved words by the perfect hash of their spelling, IDENTIFIER where
+    // there is none: the first and last characters tell them all apart.
+    private final static int[] reservedWords = new int[32];
+
+    static {
+        Arrays.fill(reservedWords, Token.IDENTIFIER);
+        for (int kind = firstReservedWord; kind <= lastReservedWord; kind++) {
+            String word = spellingTable[kind];
+            int slot = slot(word.charAt(0), word.charAt(word.length() - 1));
+            if (reservedWords[slot] != Token.IDENTIFIER)
+                throw new IllegalStateException("reserved words " + word + " and "
+                        + spellingTable[reservedWords[slot]] + " collide");
+            reservedWords[slot] = kind;
+        }
+    }
+
+    private static int slot(char first, char last) {
+        return (first + 7 * last) & 31;
+    }
+
     // Each token is completely described by its kind and spelling
     public Token(int kind, String spelling, SourcePosition position) {
 
         // The lexical grammar did not distinguish between identifiers and keywords.
         // Nevertheless, the scanner must properly classify these tokens.
         if (kind == Token.IDENTIFIER) {
+            this.kind = Token.IDENTIFIER;
 
-            int currentKind = firstReservedWord;
-            boolean searching = true;
-
-            while (searching) {
-                int comparison = spellingTable[currentKind].compareTo(spelling);
-
-                if (comparison == 0) {
-                    this.kind = currentKind;
-                    searching = false;
-
-                } else if (comparison > 0 || currentKind == lastReservedWord) {
-                    this.kind = Token.IDENTIFIER;
-                    searching = false;
-
-                } else {
-                    currentKind++;
-                }
+            if (spelling.length() > 0) {
+                int reserved = reservedWords[slot(spelling.charAt(0), spelling.charAt(spelling.length() - 1))];
+                if (spellingTable[reserved].equals(spelling))
+                    this.kind = reserved;
             }
 
         } else {
@@ -109,6 +119,30 @@ final class Token {
         this.position = position;
     }
 
+    /**
+     * Returns the kind of the reserved word spelt by the length characters
+     * of text from start, or IDENTIFIER if they spell none.
+     */
+    static int classify(char[] text, int start, int length) {
+        int reserved = reservedWords[slot(text[start], text[start + length - 1])];
+        String word = spellingTable[reserved];
+
+        if (reserved == Token.IDENTIFIER || word.length() != length)
+            return Token.IDENTIFIER;
+        for (int i = 0; i < length; i++)
+            if (word.charAt(i) != text[start + i])
+                return Token.IDENTIFIER;
+        return reserved;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public String getSpelling() {
+        return spelling;
+    }
+
     public static String spell(int kind) {
         return spellingTable[kind];
     }
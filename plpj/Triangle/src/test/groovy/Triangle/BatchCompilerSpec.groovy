@@ -0,0 +1,35 @@
+package Triangle
+
+import spock.lang.Specification
+import spock.lang.Title
+
+import java.nio.file.Files
+import java.util.concurrent.ForkJoinPool
+
+@Title('Compiling a tree of programs')
+class BatchCompilerSpec extends Specification {
+
+    def 'A symbol table is written only when asked for'() {
+
+        given:
+        def directory = Files.createTempDirectory('batch').toFile()
+        def source = new File(directory, 'prog.tri')
+        source.text = 'let func twice (n: Integer) : Integer ~ n + n in putint(twice(21))'
+        def pool = new ForkJoinPool(2)
+
+        when:
+        def results = BatchCompiler.compileAll([source], pool, null, savingSymbols)
+
+        then:
+        results[0].successful
+        new File(directory, 'prog.tam').isFile()
+        new File(directory, 'prog.sym').isFile() == savingSymbols
+
+        cleanup:
+        pool.shutdown()
+        directory.deleteDir()
+
+        where:
+        savingSymbols << [false, true]
+    }
+}
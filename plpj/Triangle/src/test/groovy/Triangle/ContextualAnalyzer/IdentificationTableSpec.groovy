@@ -0,0 +1,84 @@
+package Triangle.ContextualAnalyzer
+
+import Triangle.AbstractSyntaxTrees.Declaration
+import Triangle.AbstractSyntaxTrees.Identifier
+import Triangle.AbstractSyntaxTrees.VarDeclaration
+import Triangle.SyntacticAnalyzer.SourcePosition
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Contextual analyzer')
+class IdentificationTableSpec extends Specification {
+
+    private static Declaration declaration(String name) {
+        def position = new SourcePosition()
+        new VarDeclaration(new Identifier(name, position), null, position)
+    }
+
+    def 'Inner declarations hide outer ones until their scope is closed'() {
+
+        given: 'x declared at level 0 and again at level 1'
+        def table = new IdentificationTable()
+        def outer = declaration('x')
+        def inner = declaration('x')
+        def y = declaration('y')
+
+        table.enter('x', outer)
+        table.openScope()
+        table.enter('x', inner)
+        table.enter('y', y)
+
+        expect: 'The innermost is found'
+        table.retrieve('x').is(inner)
+        table.retrieve('y').is(y)
+        table.retrieve('z') == null
+
+        when: 'The inner scope is closed'
+        table.closeScope()
+
+        then: 'The outer x is found again, and y not at all'
+        table.retrieve('x').is(outer)
+        table.retrieve('y') == null
+    }
+
+    def 'Only a declaration in the same scope is a duplicate'() {
+
+        given:
+        def table = new IdentificationTable()
+        def first = declaration('x')
+        def hiding = declaration('x')
+        def again = declaration('x')
+
+        when:
+        table.enter('x', first)
+        table.openScope()
+        table.enter('x', hiding)
+        table.enter('x', again)
+
+        then:
+        !first.duplicated
+        !hiding.duplicated
+        again.duplicated
+        table.retrieve('x').is(again)
+
+        when: 'The scope is closed'
+        table.closeScope()
+
+        then:
+        table.retrieve('x').is(first)
+    }
+
+    def 'Each of many declarations in one scope is found, and none is a duplicate'() {
+
+        given:
+        def table = new IdentificationTable()
+        def declarations = (0..<20000).collect { declaration('v' + it) }
+
+        when:
+        declarations.eachWithIndex { d, i -> table.enter('v' + i, d) }
+
+        then:
+        (0..<20000).every { table.retrieve('v' + it).is(declarations[it]) }
+        !declarations.any { it.duplicated }
+    }
+}
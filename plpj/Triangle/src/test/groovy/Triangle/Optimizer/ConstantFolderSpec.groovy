@@ -0,0 +1,78 @@
+package Triangle.Optimizer
+
+import TAM.TamVM
+import Triangle.AbstractSyntaxTrees.IntegerExpression
+import Triangle.AbstractSyntaxTrees.LetCommand
+import Triangle.AbstractSyntaxTrees.VnameExpression
+import Triangle.CompilationSession
+import Triangle.SourceRunner
+import Triangle.SyntacticAnalyzer.SourceFile
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Folding constants before code generation')
+class ConstantFolderSpec extends Specification {
+
+    private static CompilationSession compile(String sourceText) {
+        def session = new CompilationSession(new PrintStream(new ByteArrayOutputStream()))
+        assert session.compile(new SourceFile(sourceText, false))
+        session
+    }
+
+    def 'A constant expression is folded into a literal'() {
+
+        when:
+        def session = compile('let const k ~ (6 * 7) + (maxint / 4681) in putint(k)')
+        def k = ((LetCommand) session.AST.C).D.E
+
+        then: 'The constant takes no space at run time'
+        k instanceof IntegerExpression
+        k.IL.spelling == '49'
+        SourceRunner.run('let const k ~ (6 * 7) + (maxint / 4681) in putint(k)', new byte[0]).output == '49'
+    }
+
+    def 'Comparisons and boolean operators are folded into true or false'() {
+
+        when:
+        def session = compile("let const b ~ ('a' = 'a') /\\ \\ (2 > 3) in if b then putint(1) else putint(2)")
+        def b = ((LetCommand) session.AST.C).D.E
+
+        then:
+        b instanceof VnameExpression
+        b.V.I.decl.is(session.stdEnvironment.trueDecl)
+    }
+
+    def 'The branch not taken is pruned'() {
+
+        expect:
+        compile('if 1 < 2 then putint(1) else putint(2)').codeSize < compile('let var x : Integer in if x < 2 then putint(1) else putint(2)').codeSize
+        compile('while 1 > 2 do putint(1)').codeSize == 1
+    }
+
+    def 'Programs behave as they did without folding'() {
+
+        expect:
+        SourceRunner.run(program, new byte[0]).output == output
+
+        where:
+        program                                                                  | output
+        'putint((0 - 17) / 5)'                                                   | '-3'
+        'putint((0 - 17) // 5)'                                                  | '-2'
+        'putint(if maxint > 0 then 1 else 2)'                                    | '1'
+        'let var x : Integer in begin x := 5; putint((x + 2) * 1) end'           | '7'
+        'let var a : array 4 of Integer in begin a[1 + 2] := 9; putint(a[3]) end' | '9'
+    }
+
+    def 'Overflow and division by zero still fail at run time'() {
+
+        expect:
+        SourceRunner.run(program, new byte[0]).status == status
+
+        where:
+        program                                                           | status
+        'putint(maxint + 1)'                                              | TamVM.failedOverflow
+        'let const z ~ 0 in putint(7 // z)'                               | TamVM.failedZeroDivide
+        'let var x : Integer in begin x := 40000; putint(x * 1) end'      | TamVM.failedOverflow
+        'let var x : Integer in begin x := 40000; putint(x + 0) end'      | TamVM.failedOverflow
+    }
+}
@@ -0,0 +1,83 @@
+package Triangle
+
+import TAM.BatchRunner
+import TAM.TamVM
+import spock.lang.Specification
+import spock.lang.Title
+
+@Title('Compiling and running in memory')
+class SourceRunnerSpec extends Specification {
+
+    private static final String FACTORIAL = '''
+let
+  func fact (n: Integer) : Integer ~
+    if n <= 1 then 1 else n * fact(n - 1);
+  var i : Integer
+in
+  begin
+    i := 1;
+    while i <= 5 do begin putint(fact(i)); puteol(); i := i + 1 end
+  end
+'''
+
+    private static final String SUM = '''
+let
+  var n : Integer; var x : Integer; var sum : Integer
+in
+  begin
+    sum := 0;
+    getint(var n);
+    while n > 0 do begin getint(var x); sum := sum + x; n := n - 1 end;
+    putint(sum)
+  end
+'''
+
+    def 'Source text is compiled and run without object files'() {
+
+        when: 'A correct program is run'
+        def result = SourceRunner.run(FACTORIAL, new byte[0])
+
+        then: 'Its output and status are returned'
+        result.compiled
+        result.status == TamVM.halted
+        result.output == [1, 2, 6, 24, 120].collect { it + System.lineSeparator() }.join()
+        result.instructions > 0
+    }
+
+    def 'The program reads the input given'() {
+
+        expect:
+        SourceRunner.run(SUM, input.bytes).output == output
+
+        where:
+        input       | output
+        '3 1 2 3\n' | '6'
+        '0\n'       | '0'
+    }
+
+    def 'A program with errors is not run'() {
+
+        when:
+        def result = SourceRunner.run('begin x := 1 end', new byte[0])
+
+        then: 'The errors are reported instead'
+        !result.compiled
+        result.messages.contains('ERROR: "x" is not declared')
+        result.output == ''
+    }
+
+    def 'A program stops when its step budget is used up'() {
+
+        given:
+        def settings = new BatchRunner.Settings()
+        settings.stepBudget = 1000
+
+        when:
+        def result = SourceRunner.run('let var i : Integer in while true do i := 1', new byte[0], settings)
+
+        then:
+        result.compiled
+        result.status == TamVM.running
+        result.instructions == 1000
+    }
+}
@@ -104,4 +104,26 @@ class ScannerSpec extends Specification {
         assert stringLiteral.kind == Token.CHARLITERAL
         assert rightParen.kind == Token.RPAREN
     }
-}
\ No newline at end of file
+
+    def 'reserved words and interned spellings'() {
+        given: 'Scanner and source that uses reserved words and the same names twice'
+        SourceFile sourceFile = new SourceFile('while whilst do x := x + 1; letter let', false)
+        Scanner scanner = new Scanner(sourceFile)
+
+        when: 'Scanning starts'
+        List<Token> tokens = []
+        Token token
+        while ((token = scanner.scan()).kind != Token.EOT) {
+            tokens << token
+        }
+
+        then: 'Only whole reserved words are classified as such'
+        tokens*.kind == [Token.WHILE, Token.IDENTIFIER, Token.DO, Token.IDENTIFIER, Token.BECOMES,
+                         Token.IDENTIFIER, Token.OPERATOR, Token.INTLITERAL, Token.SEMICOLON,
+                         Token.IDENTIFIER, Token.LET]
+        tokens*.spelling == ['while', 'whilst', 'do', 'x', ':=', 'x', '+', '1', ';', 'letter', 'let']
+
+        and: 'A name used twice has one spelling'
+        tokens[3].spelling.is(tokens[5].spelling)
+    }
+}
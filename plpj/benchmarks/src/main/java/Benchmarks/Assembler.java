@@ -0,0 +1,58 @@
+package Benchmarks;
+
+import TAM.Instruction;
+import TAM.Machine;
+import TAM.TamVM;
+
+import java.util.Arrays;
+
+/**
+ * Builds a TAM object program one instruction at a time, for workloads
+ * written directly in TAM code.
+ */
+final class Assembler {
+
+    private Instruction[] code = new Instruction[64];
+    private int length;
+
+    // Returns the address of the next instruction.
+    int here() {
+        return Machine.CB + length;
+    }
+
+    // Appends an instruction, with the given fields, and returns its address.
+    int emit(int op, int n, int r, int d) {
+        Instruction instr = new Instruction();
+        instr.op = op;
+        instr.n = n;
+        instr.r = r;
+        instr.d = d;
+
+        if (length == code.length)
+            code = Arrays.copyOf(code, 2 * code.length);
+        code[length] = instr;
+        length = length + 1;
+        return Machine.CB + length - 1;
+    }
+
+    // Appends a call of the given primitive routine.
+    int callPrimitive(int displacement) {
+        return emit(Machine.CALLop, Machine.SBr, Machine.PBr, displacement);
+    }
+
+    // Sets the d field of the instruction at addr, once it is known.
+    void patch(int addr, int d) {
+        code[addr - Machine.CB].d = d;
+    }
+
+    /**
+     * Returns a machine with the program loaded, and with a data store of
+     * dataStoreSize words.
+     */
+    TamVM load(int dataStoreSize, int compilationThreshold) {
+        TamVM vm = new TamVM(Machine.PB - Machine.CB, dataStoreSize);
+        vm.setCompilationThreshold(compilationThreshold);
+        vm.load(code, length);
+        return vm;
+    }
+}
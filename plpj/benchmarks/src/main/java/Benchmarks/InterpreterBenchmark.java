@@ -0,0 +1,91 @@
+package Benchmarks;
+
+import TAM.TamVM;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the TAM takes to run each of the {@link Workloads},
+ * as {@link TAM.Interpreter} runs them: only interpreting, running
+ * verified code in register form, or with hot code compiled.
+ * <p/>
+ * For example:
+ * <pre>
+ *   mvn -pl benchmarks -am package
+ *   java -jar benchmarks/target/benchmarks-1.0.jar InterpreterBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    // how the machine runs the program
+    @Param({"interpreter", "registers", "compiler"})
+    public String tier;
+
+    private TamVM arithmetic, recursion, records, nonLocal, nested;
+
+    @Setup
+    public void setUp() {
+        arithmetic = load(Workloads.arithmeticLoop(30000), 1024);
+        recursion = load(Workloads.recursion(1000, 100), 1 << 16);
+        records = load(Workloads.recordCopy(8, 30000), 1024);
+        nonLocal = load(Workloads.nonLocalAccess(7, 30000), 1024);
+        nested = load(Workloads.nestedCalls(8, 30000), 1024);
+    }
+
+    private TamVM load(Assembler program, int dataStoreSize) {
+        TamVM vm = program.load(dataStoreSize, tier.equals("compiler") ? 1000 : 0);
+        vm.setRegisterTranslation(tier.equals("registers"));
+        return vm;
+    }
+
+    // Runs the program on vm afresh and returns the number of instructions
+    // executed.
+    static long run(TamVM vm) {
+        vm.reset();
+        if (vm.run() != TamVM.halted)
+            throw new IllegalStateException(TamVM.statusMessage(vm.getStatus()));
+        return vm.getInstructionCount();
+    }
+
+    @Benchmark
+    public long arithmeticLoop() {
+        return run(arithmetic);
+    }
+
+    @Benchmark
+    public long recursion() {
+        return run(recursion);
+    }
+
+    @Benchmark
+    public long recordCopy() {
+        return run(records);
+    }
+
+    @Benchmark
+    public long nonLocalAccess() {
+        return run(nonLocal);
+    }
+
+    @Benchmark
+    public long nestedCalls() {
+        return run(nested);
+    }
+}
@@ -0,0 +1,109 @@
+package Benchmarks;
+
+import Triangle.SyntacticAnalyzer.Scanner;
+import Triangle.SyntacticAnalyzer.SourceFile;
+import Triangle.SyntacticAnalyzer.Token;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the Triangle {@link Scanner} turns a source file of
+ * several megabytes into tokens, from reading the file to the end of the
+ * text. The tokens counter gives the tokens scanned per second.
+ * <p/>
+ * For example:
+ * <pre>
+ *   mvn -pl benchmarks -am package
+ *   java -jar benchmarks/target/benchmarks-1.0.jar ScannerBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+
+    // size of the source, in megabytes
+    @Param({"1", "8"})
+    public int megabytes;
+
+    private File source;
+
+    /**
+     * The tokens scanned, reported per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            tokens = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        source = File.createTempFile("scanner", ".tri");
+        Files.write(source.toPath(), program(megabytes << 20).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.delete();
+    }
+
+    // Returns a Triangle program of at least size characters, with a
+    // thousand names used over and over, comments, literals and operators.
+    static String program(int size) {
+        StringBuilder text = new StringBuilder(size + 256);
+        int i = 0;
+
+        text.append("let\n");
+        while (text.length() < size) {
+            String name = "value" + (i % 1000);
+            text.append("  ! declarations of ").append(name).append('\n')
+                    .append("  var ").append(name).append(" : Integer;\n")
+                    .append("  proc step").append(i).append(" (var n : Integer) ~\n")
+                    .append("    if n <= ").append(i).append(" then n := n + 1 else n := n // 7;\n")
+                    .append("  const c").append(i).append(" ~ '").append((char) ('a' + i % 26)).append("';\n");
+            i = i + 1;
+        }
+        text.append("  var last : Integer\nin\n  putint(last)\n");
+        return text.toString();
+    }
+
+    @Benchmark
+    public int scan(Counters counters) {
+        Scanner scanner = new Scanner(new SourceFile(source.getPath()));
+        int count = 0;
+
+        while (scanner.scan().getKind() != Token.EOT)
+            count = count + 1;
+
+        counters.tokens = counters.tokens + count;
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package Benchmarks;
+
+import TAM.Machine;
+
+/**
+ * Synthetic TAM programs, each stressing one part of the machine. Every
+ * program halts normally.
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * Sums i mod 1000 for i = 0 .. iterations-1: loads of literals and
+     * globals, and calls of arithmetic primitives.
+     */
+    static Assembler arithmeticLoop(int iterations) {
+        Assembler asm = new Assembler();
+
+        asm.emit(Machine.LOADLop, 0, 0, 0);                      // i at SB+0
+        asm.emit(Machine.LOADLop, 0, 0, 0);                      // s at SB+1
+        int loop = asm.emit(Machine.LOADop, 1, Machine.SBr, 0);
+        asm.emit(Machine.LOADLop, 0, 0, iterations);
+        asm.callPrimitive(Machine.ltDisplacement);
+        int exit = asm.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0);
+        asm.emit(Machine.LOADop, 1, Machine.SBr, 1);
+        asm.emit(Machine.LOADop, 1, Machine.SBr, 0);
+        asm.callPrimitive(Machine.addDisplacement);
+        asm.emit(Machine.LOADLop, 0, 0, 1000);
+        asm.callPrimitive(Machine.modDisplacement);
+        asm.emit(Machine.STOREop, 1, Machine.SBr, 1);
+        asm.emit(Machine.LOADop, 1, Machine.SBr, 0);
+        asm.callPrimitive(Machine.succDisplacement);
+        asm.emit(Machine.STOREop, 1, Machine.SBr, 0);
+        asm.emit(Machine.JUMPop, 0, Machine.CBr, loop);
+        asm.patch(exit, asm.emit(Machine.HALTop, 0, 0, 0));
+        return asm;
+    }
+
+    /**
+     * Calls a routine that recurses depth times before returning, as often
+     * as repetitions says: stack frames built and torn down by CALL and
+     * RETURN.
+     */
+    static Assembler recursion(int depth, int repetitions) {
+        Assembler asm = new Assembler();
+
+        asm.emit(Machine.LOADLop, 0, 0, repetitions);            // k at SB+0
+        int loop = asm.emit(Machine.LOADop, 1, Machine.SBr, 0);
+        int exit = asm.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0);
+        asm.emit(Machine.LOADLop, 0, 0, depth);
+        int call = asm.emit(Machine.CALLop, Machine.SBr, Machine.CBr, 0);
+        asm.emit(Machine.POPop, 0, 0, 1);
+        asm.emit(Machine.LOADop, 1, Machine.SBr, 0);
+        asm.callPrimitive(Machine.predDisplacement);
+        asm.emit(Machine.STOREop, 1, Machine.SBr, 0);
+        asm.emit(Machine.JUMPop, 0, Machine.CBr, loop);
+        asm.patch(exit, asm.emit(Machine.HALTop, 0, 0, 0));
+
+        // func down (n: Integer) : Integer ~ if n = 0 then 0 else down(n-1) + 1
+        int down = asm.emit(Machine.LOADop, 1, Machine.LBr, -1);
+        asm.patch(call, down);
+        int base = asm.emit(Machine.JUMPIFop, 0, Machine.CBr, 0);
+        asm.emit(Machine.LOADop, 1, Machine.LBr, -1);
+        asm.callPrimitive(Machine.predDisplacement);
+        asm.emit(Machine.CALLop, Machine.SBr, Machine.CBr, down);
+        asm.callPrimitive(Machine.succDisplacement);
+        asm.emit(Machine.RETURNop, 1, 0, 1);
+        asm.patch(base, asm.emit(Machine.LOADLop, 0, 0, 0));
+        asm.emit(Machine.RETURNop, 1, 0, 1);
+        return asm;
+    }
+
+    /**
+     * Copies one record of size words to another and back, as often as
+     * iterations says: multi-word LOAD and STORE.
+     */
+    static Assembler recordCopy(int size, int iterations) {
+        Assembler asm = new Assembler();
+
+        asm.emit(Machine.PUSHop, 0, 0, 2 * size);                // records at SB+0, SB+size
+        asm.emit(Machine.LOADLop, 0, 0, iterations);             // k at SB+2*size
+        int loop = asm.emit(Machine.LOADop, 1, Machine.SBr, 2 * size);
+        int exit = asm.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0);
+        asm.emit(Machine.LOADop, size, Machine.SBr, 0);
+        asm.emit(Machine.STOREop, size, Machine.SBr, size);
+        asm.emit(Machine.LOADop, size, Machine.SBr, size);
+        asm.emit(Machine.STOREop, size, Machine.SBr, 0);
+        asm.emit(Machine.LOADop, 1, Machine.SBr, 2 * size);
+        asm.callPrimitive(Machine.predDisplacement);
+        asm.emit(Machine.STOREop, 1, Machine.SBr, 2 * size);
+        asm.emit(Machine.JUMPop, 0, Machine.CBr, loop);
+        asm.patch(exit, asm.emit(Machine.HALTop, 0, 0, 0));
+        return asm;
+    }
+
+    /**
+     * Calls routines nested levels deep, each with one local variable,
+     * and then has the innermost one add up the variables of all its
+     * enclosing routines, as often as iterations says: non-local access
+     * through L1 .. L6 and beyond.
+     */
+    static Assembler nonLocalAccess(int levels, int iterations) {
+        Assembler asm = new Assembler();
+        int call, loop, exit;
+
+        call = asm.emit(Machine.CALLop, Machine.SBr, Machine.CBr, 0);
+        asm.emit(Machine.HALTop, 0, 0, 0);
+
+        // Routine k declares a variable at LB+3 and calls routine k+1,
+        // which is nested inside it.
+        for (int level = 1; level < levels; level++) {
+            asm.patch(call, asm.emit(Machine.LOADLop, 0, 0, level));
+            call = asm.emit(Machine.CALLop, Machine.LBr, Machine.CBr, 0);
+            asm.emit(Machine.RETURNop, 0, 0, 0);
+        }
+
+        // The innermost routine counts with i at LB+3.
+        asm.patch(call, asm.emit(Machine.LOADLop, 0, 0, 0));
+        loop = asm.emit(Machine.LOADop, 1, Machine.LBr, 3);
+        asm.emit(Machine.LOADLop, 0, 0, iterations);
+        asm.callPrimitive(Machine.ltDisplacement);
+        exit = asm.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0);
+        asm.emit(Machine.LOADLop, 0, 0, 0);
+        for (int up = 1; up < levels; up++) {
+            if (up <= Machine.L6r - Machine.LBr)
+                asm.emit(Machine.LOADop, 1, Machine.LBr + up, 3);
+            else {
+                // beyond L6, follow the static links explicitly
+                asm.emit(Machine.LOADop, 1, Machine.L6r, 0);
+                for (int link = Machine.L6r - Machine.LBr + 1; link < up; link++)
+                    asm.emit(Machine.LOADIop, 1, 0, 0);
+                asm.emit(Machine.LOADLop, 0, 0, 3);
+                asm.callPrimitive(Machine.addDisplacement);
+                asm.emit(Machine.LOADIop, 1, 0, 0);
+            }
+            asm.callPrimitive(Machine.addDisplacement);
+        }
+        asm.emit(Machine.POPop, 0, 0, 1);
+        asm.emit(Machine.LOADop, 1, Machine.LBr, 3);
+        asm.callPrimitive(Machine.succDisplacement);
+        asm.emit(Machine.STOREop, 1, Machine.LBr, 3);
+        asm.emit(Machine.JUMPop, 0, Machine.CBr, loop);
+        asm.patch(exit, asm.emit(Machine.RETURNop, 0, 0, 0));
+        return asm;
+    }
+
+    /**
+     * Calls a routine nested levels deep from within its enclosing routine,
+     * as often as iterations says, and has it add up two variables of
+     * routines five and six levels out: CALL and RETURN at depth, with
+     * non-local access through L5 and L6.
+     */
+    static Assembler nestedCalls(int levels, int iterations) {
+        Assembler asm = new Assembler();
+        int call, loop, exit, inner;
+
+        call = asm.emit(Machine.CALLop, Machine.SBr, Machine.CBr, 0);
+        asm.emit(Machine.HALTop, 0, 0, 0);
+
+        for (int level = 1; level < levels - 1; level++) {
+            asm.patch(call, asm.emit(Machine.LOADLop, 0, 0, level));
+            call = asm.emit(Machine.CALLop, Machine.LBr, Machine.CBr, 0);
+            asm.emit(Machine.RETURNop, 0, 0, 0);
+        }
+
+        // The innermost routine but one counts with i at LB+3 ...
+        asm.patch(call, asm.emit(Machine.LOADLop, 0, 0, 0));
+        loop = asm.emit(Machine.LOADop, 1, Machine.LBr, 3);
+        asm.emit(Machine.LOADLop, 0, 0, iterations);
+        asm.callPrimitive(Machine.ltDisplacement);
+        exit = asm.emit(Machine.JUMPIFop, Machine.falseRep, Machine.CBr, 0);
+        call = asm.emit(Machine.CALLop, Machine.LBr, Machine.CBr, 0);
+        asm.emit(Machine.POPop, 0, 0, 1);
+        asm.emit(Machine.LOADop, 1, Machine.LBr, 3);
+        asm.callPrimitive(Machine.succDisplacement);
+        asm.emit(Machine.STOREop, 1, Machine.LBr, 3);
+        asm.emit(Machine.JUMPop, 0, Machine.CBr, loop);
+        asm.patch(exit, asm.emit(Machine.RETURNop, 0, 0, 0));
+
+        // ... calling the innermost one each time round.
+        inner = asm.emit(Machine.LOADop, 1, Machine.L5r, 3);
+        asm.patch(call, inner);
+        asm.emit(Machine.LOADop, 1, Machine.L6r, 3);
+        asm.callPrimitive(Machine.addDisplacement);
+        asm.emit(Machine.RETURNop, 1, 0, 0);
+        return asm;
+    }
+}